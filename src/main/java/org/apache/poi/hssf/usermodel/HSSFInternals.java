@@ -0,0 +1,163 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.record.CommonObjectDataSubRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.NoteRecord;
+import org.apache.poi.hssf.record.ObjRecord;
+import org.apache.poi.hssf.record.TextObjectRecord;
+import org.apache.poi.hssf.record.UnicodeString;
+import org.apache.poi.hssf.record.aggregates.FormulaRecordAggregate;
+import org.apache.poi.hssf.record.formula.Ptg;
+
+/**
+ * Gives templateIt access to package private parts of POI usermodel
+ * which are not exposed through the public API.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public final class HSSFInternals
+{
+	private HSSFInternals()
+	{
+	}
+
+	/**
+	 * Creates an unbound copy of the rich text string including its
+	 * formatting runs.
+	 * <br>
+	 * {@link HSSFCell#setCellValue(HSSFRichTextString)} binds the passed
+	 * string to the target cell, so passing a string taken from a template
+	 * cell would modify the template. The copy can be passed instead.
+	 */
+	public static HSSFRichTextString copy(HSSFRichTextString source)
+	{
+		HSSFRichTextString copy = new HSSFRichTextString();
+		copy.setUnicodeString((UnicodeString) source.getRawUnicodeString().clone());
+		return copy;
+	}
+
+	/**
+	 * @return <code>true</code> if the workbook uses 1904 date system
+	 */
+	public static boolean isUsing1904DateWindowing(HSSFWorkbook workbook)
+	{
+		return workbook.getWorkbook().isUsing1904DateWindowing();
+	}
+
+	/**
+	 * Same as {@link HSSFCell#setCellFormula(String)} for an already parsed
+	 * formula. The tokens are stored in the cell as they are and must not be
+	 * shared with other cells.
+	 */
+	public static void setCellFormula(HSSFCell cell, Ptg[] ptgs)
+	{
+		if (cell.getCellType() != HSSFCell.CELL_TYPE_FORMULA)
+		{
+			cell.setCellType(HSSFCell.CELL_TYPE_FORMULA);
+		}
+		FormulaRecordAggregate rec = (FormulaRecordAggregate) cell.getCellValueRecord();
+		FormulaRecord frec = rec.getFormulaRecord();
+		frec.setOptions((short) 2);
+		frec.setValue(0);
+		if (rec.getXFIndex() == 0)
+		{
+			rec.setXFIndex((short) 15);
+		}
+		frec.setParsedExpression(ptgs);
+	}
+
+	/**
+	 * Finds all cell comments of the sheet walking its records once.
+	 * {@link HSSFSheet#getCellComment(int, int)} walks all the records
+	 * of the sheet for every call.
+	 *
+	 * @return comments ordered by row and column
+	 */
+	public static List<HSSFComment> getCellComments(HSSFSheet sheet)
+	{
+		List<HSSFComment> comments = new ArrayList<HSSFComment>();
+		Map<Integer,TextObjectRecord> txshapes = new HashMap<Integer,TextObjectRecord>();
+		Iterator<?> it = sheet.getSheet().getRecords().iterator();
+		while (it.hasNext())
+		{
+			Object rec = it.next();
+			if (rec instanceof NoteRecord)
+			{
+				NoteRecord note = (NoteRecord) rec;
+				TextObjectRecord txo = txshapes.get(Integer.valueOf(note.getShapeId()));
+				if (txo != null)
+				{
+					HSSFComment comment = new HSSFComment(note, txo);
+					comment.setRow(note.getRow());
+					comment.setColumn(note.getColumn());
+					comment.setAuthor(note.getAuthor());
+					comment.setVisible(note.getFlags() == NoteRecord.NOTE_VISIBLE);
+					comment.setString(txo.getStr());
+					comments.add(comment);
+				}
+			}
+			else if (rec instanceof ObjRecord)
+			{
+				Object sub = ((ObjRecord) rec).getSubRecords().get(0);
+				if (sub instanceof CommonObjectDataSubRecord
+						&& ((CommonObjectDataSubRecord) sub).getObjectType() == CommonObjectDataSubRecord.OBJECT_TYPE_COMMENT)
+				{
+					// the text of the comment follows its object record
+					while (it.hasNext())
+					{
+						Object next = it.next();
+						if (next instanceof TextObjectRecord)
+						{
+							txshapes.put(Integer.valueOf(((CommonObjectDataSubRecord) sub).getObjectId()),
+									(TextObjectRecord) next);
+							break;
+						}
+					}
+				}
+			}
+		}
+		Collections.sort(comments, new Comparator<HSSFComment>()
+		{
+			public int compare(HSSFComment c1, HSSFComment c2)
+			{
+				int d = c1.getRow() - c2.getRow();
+				return d != 0 ? d : c1.getColumn() - c2.getColumn();
+			}
+		});
+		// like getCellComment, keep the first of the comments of a cell
+		for (int i = comments.size()-1; i > 0; i--)
+		{
+			HSSFComment c1 = comments.get(i-1);
+			HSSFComment c2 = comments.get(i);
+			if (c1.getRow() == c2.getRow() && c1.getColumn() == c2.getColumn())
+			{
+				comments.remove(i);
+			}
+		}
+		return comments;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,470 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.model.Sheet;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.DBCellRecord;
+import org.apache.poi.hssf.record.IndexRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordBase;
+import org.apache.poi.hssf.record.aggregates.RecordAggregate;
+import org.apache.poi.hssf.record.aggregates.RowRecordsAggregate;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSWriterEvent;
+import org.apache.poi.poifs.filesystem.POIFSWriterListener;
+
+/**
+ * Workbook writing the rows of the sheets it creates to temporary files
+ * while they are generated, so the rows do not stay in memory.
+ * <br>
+ * Rows of a created sheet must be created with {@link #createRow(HSSFSheet, int)}
+ * in ascending order, a row is final when the next one is created. Every 32 rows,
+ * a BIFF8 row block, are serialized as POI serializes them (row records, cell records
+ * and the DBCELL record) and removed from the sheet. Everything else stays in memory:
+ * the workbook records with the shared strings, the sheet records with merged cells
+ * and page breaks.
+ * <br>
+ * {@link #write(OutputStream)} writes the same bytes as HSSFWorkbook, the row blocks
+ * are copied from the files to the output and the INDEX records pointing to the DBCELL
+ * records are computed from the sizes of the blocks. The workbook stream is written
+ * straight to the output, it is never held in memory as a whole.
+ * <br>
+ * {@link #close()} deletes the files.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public class HSSFStreamingWorkbook extends HSSFWorkbook implements Closeable
+{
+	private static final int ROWS_PER_BLOCK = 32;
+
+	private final Map<HSSFSheet,RowStream> streams = new IdentityHashMap<HSSFSheet,RowStream>();
+
+	private boolean closed = false;
+
+	/**
+	 * Reads the workbook as {@link HSSFWorkbook#HSSFWorkbook(InputStream)} does,
+	 * other nodes of the file system are preserved.
+	 */
+	public HSSFStreamingWorkbook(InputStream s) throws IOException
+	{
+		super(s, true);
+	}
+
+	/**
+	 * Creates a sheet whose rows are written to a temporary file.
+	 */
+	@Override
+	public HSSFSheet createSheet(String sheetname)
+	{
+		checkNotClosed();
+		HSSFSheet sheet = super.createSheet(sheetname);
+		try
+		{
+			streams.put(sheet, new RowStream(sheet));
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		return sheet;
+	}
+
+	/**
+	 * Creates a row of the sheet. Rows of sheets created by this workbook are
+	 * created in ascending order, the previous rows are written out in blocks.
+	 *
+	 * @throws UncheckedIOException if the rows cannot be written
+	 */
+	public HSSFRow createRow(HSSFSheet sheet, int rownum)
+	{
+		RowStream stream = streams.get(sheet);
+		if( stream != null )
+		{
+			checkNotClosed();
+			try
+			{
+				stream.beforeRow(rownum);
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+		return sheet.createRow(rownum);
+	}
+
+	@Override
+	public void write(OutputStream stream) throws IOException
+	{
+		checkNotClosed();
+		int nSheets = getNumberOfSheets();
+		SheetWriter[] sheetWriters = new SheetWriter[nSheets];
+		for (int i = 0; i < nSheets; i++)
+		{
+			getSheetAt(i).getSheet().preSerialize();
+		}
+		final int globalsSize = getWorkbook().getSize();
+		int totalSize = globalsSize;
+		for (int i = 0; i < nSheets; i++)
+		{
+			getWorkbook().setSheetBof(i, totalSize);
+			HSSFSheet sheet = getSheetAt(i);
+			RowStream rowStream = streams.get(sheet);
+			if( rowStream != null )
+			{
+				rowStream.finish();
+			}
+			sheetWriters[i] = new SheetWriter(sheet.getSheet(), rowStream, totalSize);
+			totalSize += sheetWriters[i].size;
+		}
+
+		POIFSFileSystem fs = new POIFSFileSystem();
+		fs.createDocument("Workbook", totalSize, new POIFSWriterListener()
+		{
+			public void processPOIFSWriterEvent(POIFSWriterEvent event)
+			{
+				try
+				{
+					byte[] globals = new byte[globalsSize];
+					getWorkbook().serialize(0, globals);
+					event.getStream().write(globals);
+					for (SheetWriter sheetWriter : sheetWriters)
+					{
+						sheetWriter.write(event.getStream());
+					}
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+		});
+		List<String> excepts = new ArrayList<String>(3);
+		writeProperties(fs, excepts);
+		excepts.add("Workbook");
+		excepts.add("WORKBOOK");
+		copyNodes(filesystem, fs, excepts);
+		try
+		{
+			fs.writeFilesystem(stream);
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Deletes the temporary files. The workbook cannot be written after that.
+	 */
+	public void close()
+	{
+		if( !closed )
+		{
+			closed = true;
+			for (RowStream rowStream : streams.values())
+			{
+				rowStream.delete();
+			}
+		}
+	}
+
+	private void checkNotClosed()
+	{
+		if( closed )
+		{
+			throw new IllegalStateException("The workbook is closed");
+		}
+	}
+
+	/**
+	 * Row blocks of a sheet written to a temporary file.
+	 */
+	private static final class RowStream
+	{
+		private final HSSFSheet sheet;
+
+		private final File file;
+
+		private OutputStream out;
+
+		private long size = 0;
+
+		/** positions of DBCELL records in the file */
+		private long[] dbCells = new long[16];
+
+		private int nBlocks = 0;
+
+		private int lastRow = -1;
+
+		private byte[] buffer = new byte[8192];
+
+		private RowStream(HSSFSheet sheet) throws IOException
+		{
+			this.sheet = sheet;
+			this.file = File.createTempFile("templateit", ".rows");
+			this.out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+		}
+
+		private void beforeRow(int rownum) throws IOException
+		{
+			if( out == null )
+			{
+				throw new IllegalStateException("The rows of the sheet are already written");
+			}
+			if( rownum <= lastRow )
+			{
+				throw new IllegalStateException("Row " + rownum + " is created after row " + lastRow);
+			}
+			if( sheet.getPhysicalNumberOfRows() == ROWS_PER_BLOCK )
+			{
+				writeBlock();
+			}
+			lastRow = rownum;
+		}
+
+		/**
+		 * Writes the rows of the sheet as a row block and removes them from the sheet.
+		 */
+		private void writeBlock() throws IOException
+		{
+			sheet.getSheet().getRowsAggregate().visitContainedRecords(new RecordAggregate.RecordVisitor()
+			{
+				public void visitRecord(Record r)
+				{
+					if( r instanceof DBCellRecord )
+					{
+						if( nBlocks == dbCells.length )
+						{
+							dbCells = Arrays.copyOf(dbCells, nBlocks*2);
+						}
+						dbCells[nBlocks++] = size;
+					}
+					try
+					{
+						size += write(r, out);
+					}
+					catch (IOException e)
+					{
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+			List<HSSFRow> rows = new ArrayList<HSSFRow>(ROWS_PER_BLOCK);
+			for (Iterator<?> it = sheet.rowIterator(); it.hasNext();)
+			{
+				rows.add((HSSFRow) it.next());
+			}
+			for (HSSFRow row : rows)
+			{
+				sheet.removeRow(row);
+			}
+		}
+
+		private void finish() throws IOException
+		{
+			if( out != null )
+			{
+				if( sheet.getPhysicalNumberOfRows() > 0 )
+				{
+					writeBlock();
+				}
+				out.close();
+				out = null;
+			}
+		}
+
+		private int write(Record r, OutputStream out) throws IOException
+		{
+			int n = r.getRecordSize();
+			if( n > buffer.length )
+			{
+				buffer = new byte[Math.max(n, buffer.length*2)];
+			}
+			r.serialize(0, buffer);
+			out.write(buffer, 0, n);
+			return n;
+		}
+
+		private void delete()
+		{
+			try
+			{
+				if( out != null )
+				{
+					out.close();
+				}
+			}
+			catch (IOException ignore)
+			{
+			}
+			file.delete();
+		}
+	}
+
+	/**
+	 * Records of a sheet as Sheet.visitContainedRecords visits them. The rows of
+	 * a streamed sheet are copied from its file, they are preceded by its INDEX record.
+	 */
+	private static final class SheetWriter
+	{
+		private final List<Record> head = new ArrayList<Record>();
+
+		private final List<Record> tail = new ArrayList<Record>();
+
+		private final RowStream rowStream;
+
+		private final int size;
+
+		private SheetWriter(Sheet sheet, RowStream rowStream, int offset)
+		{
+			this.rowStream = rowStream;
+			if( rowStream == null )
+			{
+				sheet.visitContainedRecords(new Collector(head), offset);
+				this.size = size(head);
+				return;
+			}
+			List<Record> records = head;
+			int indexPosition = -1;
+			for (Object o : sheet.getRecords())
+			{
+				RecordBase record = (RecordBase) o;
+				if( record instanceof RowRecordsAggregate )
+				{
+					records = tail;
+				}
+				else if( record instanceof RecordAggregate )
+				{
+					((RecordAggregate) record).visitContainedRecords(new Collector(records));
+				}
+				else
+				{
+					records.add((Record) record);
+				}
+				if( record instanceof BOFRecord && indexPosition < 0 )
+				{
+					indexPosition = records.size();
+				}
+			}
+			int initialSize = size(head.subList(indexPosition, head.size()));
+			int indexOffset = offset + size(head.subList(0, indexPosition));
+			int rowsOffset = indexOffset + IndexRecord.getRecordSizeForBlockCount(rowStream.nBlocks) + initialSize;
+			if( rowStream.size + rowsOffset > Integer.MAX_VALUE )
+			{
+				throw new IllegalStateException("The workbook stream exceeds 2 GB");
+			}
+			RowRecordsAggregate rows = sheet.getRowsAggregate();
+			IndexRecord index = new IndexRecord();
+			index.setFirstRow(rows.getFirstRowNum());
+			index.setLastRowAdd1(rows.getLastRowNum() + 1);
+			for (int i = 0; i < rowStream.nBlocks; i++)
+			{
+				index.addDbcell((int) (rowsOffset + rowStream.dbCells[i]));
+			}
+			head.add(indexPosition, index);
+			this.size = size(head) + (int) rowStream.size + size(tail);
+		}
+
+		private void write(OutputStream out) throws IOException
+		{
+			byte[] buffer = new byte[65536];
+			for (Record r : head)
+			{
+				buffer = write(r, out, buffer);
+			}
+			if( rowStream != null )
+			{
+				InputStream in = new FileInputStream(rowStream.file);
+				try
+				{
+					for (int n; (n = in.read(buffer)) > 0;)
+					{
+						out.write(buffer, 0, n);
+					}
+				}
+				finally
+				{
+					in.close();
+				}
+				for (Record r : tail)
+				{
+					buffer = write(r, out, buffer);
+				}
+			}
+		}
+
+		private static byte[] write(Record r, OutputStream out, byte[] buffer) throws IOException
+		{
+			int n = r.getRecordSize();
+			if( n > buffer.length )
+			{
+				buffer = new byte[n];
+			}
+			int written = r.serialize(0, buffer);
+			if( written != n )
+			{
+				throw new IllegalStateException("Actual serialized record size (" + written
+						+ ") differs from pre-calculated size (" + n + ")");
+			}
+			out.write(buffer, 0, n);
+			return buffer;
+		}
+
+		private static int size(List<Record> records)
+		{
+			int size = 0;
+			for (Record r : records)
+			{
+				size += r.getRecordSize();
+			}
+			return size;
+		}
+	}
+
+	private static final class Collector implements RecordAggregate.RecordVisitor
+	{
+		private final List<Record> records;
+
+		private Collector(List<Record> records)
+		{
+			this.records = records;
+		}
+
+		public void visitRecord(Record r)
+		{
+			records.add(r);
+		}
+	}
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+import org.templateit.util.DelimitedFileReader;
+
+/**
+ * Renders a batch of documents on a pool of worker threads. Every entry of the batch
+ * is a template workbook, a tab-separated data file and an output file name without
+ * extension, each requested format is written to the output name followed by the
+ * format extension.
+ * <br>
+ * A template workbook used by several entries is compiled once, by the first entry
+ * using it, with {@link CompiledTemplate#load(File)}, so the compiled template
+ * is also stored next to the template workbook for the next batch.
+ * <br>
+ * A failed entry is logged and does not stop the batch.
+ * <br>
+ * Example:
+ * <pre>
+ *    BatchRenderer renderer = new BatchRenderer(4, EnumSet.of(OutputFormat.pdf));
+ *    BatchRenderer.Result result = renderer.render(BatchRenderer.readManifest(new File("nightly.txt")));
+ *    System.out.println(result);
+ * </pre>
+ *
+ * @author Dmitriy Kumshayev
+ */
+public final class BatchRenderer
+{
+	private static final Logger logger = Logger.getLogger(BatchRenderer.class);
+
+	private final int threads;
+	private final Set<OutputFormat> formats;
+	private final ConcurrentMap<File,FutureTask<CompiledTemplate>> templates = new ConcurrentHashMap<File,FutureTask<CompiledTemplate>>();
+
+	/**
+	 * Entry of a batch.
+	 */
+	public static final class Entry
+	{
+		private final File template;
+		private final File data;
+		private final File output;
+
+		/**
+		 * @param output - output file without extension
+		 */
+		public Entry(File template, File data, File output)
+		{
+			this.template = template;
+			this.data = data;
+			this.output = output;
+		}
+
+		public File getTemplate()
+		{
+			return template;
+		}
+
+		public File getData()
+		{
+			return data;
+		}
+
+		public File getOutput()
+		{
+			return output;
+		}
+
+		/**
+		 * @return output file of the format
+		 */
+		public File getOutput(OutputFormat format)
+		{
+			return new File(output.getPath() + "." + format.name());
+		}
+
+		@Override
+		public String toString()
+		{
+			return output.getPath();
+		}
+	}
+
+	/**
+	 * Totals of a rendered batch.
+	 */
+	public static final class Result
+	{
+		private final int entries;
+		private final int failed;
+		private final int documents;
+		private final long bytes;
+		private final long millis;
+
+		private Result(int entries, int failed, int documents, long bytes, long millis)
+		{
+			this.entries = entries;
+			this.failed = failed;
+			this.documents = documents;
+			this.bytes = bytes;
+			this.millis = millis;
+		}
+
+		public int getEntries()
+		{
+			return entries;
+		}
+
+		public int getFailed()
+		{
+			return failed;
+		}
+
+		/**
+		 * @return number of the written files
+		 */
+		public int getDocuments()
+		{
+			return documents;
+		}
+
+		/**
+		 * @return total size of the written files
+		 */
+		public long getBytes()
+		{
+			return bytes;
+		}
+
+		public long getMillis()
+		{
+			return millis;
+		}
+
+		@Override
+		public String toString()
+		{
+			double seconds = Math.max(millis, 1) / 1000.0;
+			return String.format("%d entries (%d failed), %d documents, %d KB in %.1f s: "
+					+ "%.1f entries/s, %.1f documents/s, %.1f MB/s", entries, failed, documents,
+					bytes / 1024, seconds, (entries - failed) / seconds, documents / seconds,
+					bytes / seconds / (1024 * 1024));
+		}
+	}
+
+	/**
+	 * @param threads - number of the worker threads
+	 * @param formats - formats written for every entry
+	 */
+	public BatchRenderer(int threads, Set<OutputFormat> formats)
+	{
+		if( threads < 1 )
+		{
+			throw new IllegalArgumentException("Number of threads " + threads);
+		}
+		if( formats.isEmpty() )
+		{
+			throw new IllegalArgumentException("No output format");
+		}
+		this.threads = threads;
+		this.formats = Collections.unmodifiableSet(EnumSet.copyOf(formats));
+	}
+
+	/**
+	 * Reads a manifest: a tab-separated file of three columns, the template workbook,
+	 * the data file and the output file without extension. Relative file names are
+	 * relative to the directory of the manifest, empty lines are skipped.
+	 */
+	public static List<Entry> readManifest(File manifest) throws IOException
+	{
+		File directory = manifest.getAbsoluteFile().getParentFile();
+		List<Entry> entries = new ArrayList<Entry>();
+		DelimitedFileReader reader = new DelimitedFileReader(manifest, "\t");
+		try
+		{
+			int line = 0;
+			while (reader.hasNext())
+			{
+				String[] fields = reader.next();
+				line++;
+				if( fields.length == 1 && fields[0].trim().length() == 0 )
+				{
+					continue;
+				}
+				if( fields.length < 3 )
+				{
+					throw new IOException(manifest + ", line " + line
+							+ ": expected template, data and output file names");
+				}
+				entries.add(new Entry(resolve(directory, fields[0]), resolve(directory, fields[1]),
+						resolve(directory, fields[2])));
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return entries;
+	}
+
+	private static File resolve(File directory, String name)
+	{
+		File file = new File(name.trim());
+		return file.isAbsolute() ? file : new File(directory, file.getPath());
+	}
+
+	/**
+	 * Renders all entries and waits for them.
+	 */
+	public Result render(List<Entry> entries) throws InterruptedException
+	{
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(entries.size(), 1)));
+		try
+		{
+			List<Future<Long>> futures = new ArrayList<Future<Long>>(entries.size());
+			for (final Entry entry : entries)
+			{
+				futures.add(executor.submit(new Callable<Long>()
+				{
+					public Long call() throws IOException
+					{
+						return render(entry);
+					}
+				}));
+			}
+			int failed = 0;
+			long bytes = 0;
+			for (int i = 0; i < futures.size(); i++)
+			{
+				try
+				{
+					bytes += futures.get(i).get();
+				}
+				catch (ExecutionException e)
+				{
+					failed++;
+					logger.error("Cannot render <" + entries.get(i) + ">: " + e.getCause().getMessage(), e.getCause());
+				}
+			}
+			int documents = (entries.size() - failed) * formats.size();
+			Result result = new Result(entries.size(), failed, documents, bytes, System.currentTimeMillis() - start);
+			logger.info(result);
+			return result;
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return total size of the written files
+	 */
+	private long render(Entry entry) throws IOException
+	{
+		CompiledTemplate ct = getCompiledTemplate(entry.getTemplate());
+		Set<OutputFormat> remaining = EnumSet.copyOf(formats);
+		long bytes = 0;
+		if( remaining.contains(OutputFormat.xls) && remaining.contains(OutputFormat.pdf) )
+		{
+			// one workbook written as .xls and rendered as PDF
+			File xls = entry.getOutput(OutputFormat.xls);
+			File pdf = entry.getOutput(OutputFormat.pdf);
+			DelimitedFileReader data = new DelimitedFileReader(entry.getData(), "\t");
+			try
+			{
+				new TemplateProcessor(ct).process(data, xls, pdf);
+			}
+			finally
+			{
+				data.close();
+			}
+			bytes += xls.length() + pdf.length();
+			remaining.remove(OutputFormat.xls);
+			remaining.remove(OutputFormat.pdf);
+		}
+		for (OutputFormat format : remaining)
+		{
+			File output = entry.getOutput(format);
+			TemplateProcessor tp = new TemplateProcessor(ct);
+			tp.setOutputFormat(format);
+			DelimitedFileReader data = new DelimitedFileReader(entry.getData(), "\t");
+			try
+			{
+				tp.process(data, output);
+			}
+			finally
+			{
+				data.close();
+			}
+			bytes += output.length();
+		}
+		logger.debug("Rendered <" + entry + ">");
+		return bytes;
+	}
+
+	private CompiledTemplate getCompiledTemplate(final File template) throws IOException
+	{
+		File key = template.getAbsoluteFile();
+		FutureTask<CompiledTemplate> task = templates.get(key);
+		if( task == null )
+		{
+			FutureTask<CompiledTemplate> newTask = new FutureTask<CompiledTemplate>(new Callable<CompiledTemplate>()
+			{
+				public CompiledTemplate call() throws IOException
+				{
+					return CompiledTemplate.load(template);
+				}
+			});
+			task = templates.putIfAbsent(key, newTask);
+			if( task == null )
+			{
+				task = newTask;
+				task.run();
+			}
+		}
+		try
+		{
+			return task.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading <" + template + ">");
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if( cause instanceof IOException )
+			{
+				throw (IOException) cause;
+			}
+			if( cause instanceof RuntimeException )
+			{
+				throw (RuntimeException) cause;
+			}
+			if( cause instanceof Error )
+			{
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFStreamingWorkbook;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * Template workbook parsed once and ready to be rendered many times.
+ * <br>
+ * Holds the template workbook together with the {@link TemplateWorkbook}
+ * gathered from it (templates, parameters, merge regions and styles)
+ * and a copy of the template workbook with all template sheets removed.
+ * Every render binds to a fresh output workbook created from that copy,
+ * so it shares cell styles, fonts and formats with the template while
+ * the compiled template itself is never modified.
+ * <br>
+ * Instances are immutable and can be shared between threads.
+ * <br>
+ * Example:
+ * <pre>
+ *    CompiledTemplate ct = CompiledTemplate.compile(new File("MyTemplate.xls"));
+ *    new TemplateProcessor(ct).process(data1, new File("MyResult1.xls"));
+ *    new TemplateProcessor(ct).process(data2, new File("MyResult2.xls"));
+ * </pre>
+ * A compiled template can be stored next to the template workbook with
+ * {@link #load(File)}, so that the next start reads it instead of parsing
+ * the template workbook again.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public final class CompiledTemplate
+{
+	private static final Logger logger = Logger.getLogger(CompiledTemplate.class);
+
+	/** Suffix added to the names of template sheets */
+	static final String SUFFIX = "Template";
+
+	/** Suffix added to the name of the template workbook to get the name of the compiled template file */
+	public static final String FILE_SUFFIX = ".compiled";
+
+	private static final int MAGIC = 0x54495443;
+	private static final int VERSION = 1;
+
+	private final HSSFWorkbook workbook;
+	private final TemplateWorkbook tWorkbook;
+	private final byte[] outputWorkbook;
+	/** size of the template workbook file */
+	private final int templateSize;
+
+	private CompiledTemplate(HSSFWorkbook workbook, TemplateWorkbook tWorkbook,
+			byte[] outputWorkbook, int templateSize)
+	{
+		this.workbook = workbook;
+		this.tWorkbook = tWorkbook;
+		this.outputWorkbook = outputWorkbook;
+		this.templateSize = templateSize;
+	}
+
+	public static CompiledTemplate compile(File templateWorkbook) throws IOException
+	{
+		return compile(templateWorkbook, Collections.<String>emptySet());
+	}
+
+	/**
+	 * @param keptSheetNames sheets which are not templates and are kept
+	 *          untouched in every generated workbook
+	 */
+	public static CompiledTemplate compile(File templateWorkbook, Set<String> keptSheetNames)
+	throws IOException
+	{
+		return compile(templateWorkbook, keptSheetNames, false);
+	}
+
+	/**
+	 * @param keptSheetNames sheets which are not templates and are kept
+	 *          untouched in every generated workbook
+	 * @param lazy - parse each template sheet when it is used for the first time,
+	 *          template sheets which are never used are never parsed
+	 */
+	public static CompiledTemplate compile(File templateWorkbook, Set<String> keptSheetNames,
+			boolean lazy) throws IOException
+	{
+		InputStream in = new BufferedInputStream(new FileInputStream(templateWorkbook));
+		try
+		{
+			return compile(in, keptSheetNames, lazy);
+		}
+		finally
+		{
+			try{ in.close(); } catch (Exception ignore) {}
+		}
+	}
+
+	public static CompiledTemplate compile(InputStream templateWorkbookStream) throws IOException
+	{
+		return compile(templateWorkbookStream, Collections.<String>emptySet());
+	}
+
+	/**
+	 * @param keptSheetNames sheets which are not templates and are kept
+	 *          untouched in every generated workbook
+	 */
+	public static CompiledTemplate compile(InputStream templateWorkbookStream,
+			Set<String> keptSheetNames) throws IOException
+	{
+		return compile(templateWorkbookStream, keptSheetNames, false);
+	}
+
+	/**
+	 * @param keptSheetNames sheets which are not templates and are kept
+	 *          untouched in every generated workbook
+	 * @param lazy - parse each template sheet when it is used for the first time,
+	 *          template sheets which are never used are never parsed
+	 */
+	public static CompiledTemplate compile(InputStream templateWorkbookStream,
+			Set<String> keptSheetNames, boolean lazy) throws IOException
+	{
+		return compile(toByteArray(templateWorkbookStream), new HashSet<String>(keptSheetNames), lazy);
+	}
+
+	private static CompiledTemplate compile(byte[] bytes, Set<String> kept, boolean lazy)
+	throws IOException
+	{
+		HSSFWorkbook workbook = new HSSFWorkbook(new ByteArrayInputStream(bytes));
+		renameTemplateSheets(workbook, kept);
+		WorkbookParser parser = new WorkbookParser(workbook);
+		TemplateWorkbook tWorkbook = lazy ? parser.parseLazily(kept) : parser.parse(kept);
+		prepareForSharing(workbook);
+
+		return new CompiledTemplate(workbook, tWorkbook, removeTemplateSheets(bytes, kept),
+				bytes.length);
+	}
+
+	public static CompiledTemplate load(File templateWorkbook) throws IOException
+	{
+		return load(templateWorkbook, Collections.<String>emptySet());
+	}
+
+	/**
+	 * Loads the compiled template stored in the file next to the template workbook,
+	 * its name is the name of the template workbook followed by {@link #FILE_SUFFIX}.
+	 * 
+	 * @see #load(File, File, Set)
+	 */
+	public static CompiledTemplate load(File templateWorkbook, Set<String> keptSheetNames)
+	throws IOException
+	{
+		File compiledFile = new File(templateWorkbook.getPath() + FILE_SUFFIX);
+		return load(templateWorkbook, compiledFile, keptSheetNames);
+	}
+
+	/**
+	 * Loads the compiled template from the compiled file if the file was written 
+	 * for the same content of the template workbook and the same kept sheets.
+	 * Otherwise compiles the template workbook and writes the compiled file.
+	 * <br>
+	 * Loading skips scanning of the comments, parsing of the formulas
+	 * and building of the output workbook, the template workbook itself
+	 * is still read to provide cells, styles and sheet settings.
+	 * 
+	 * @param compiledFile - file the compiled template is stored in
+	 * @param keptSheetNames sheets which are not templates and are kept
+	 *          untouched in every generated workbook
+	 */
+	public static CompiledTemplate load(File templateWorkbook, File compiledFile,
+			Set<String> keptSheetNames) throws IOException
+	{
+		byte[] bytes = readFile(templateWorkbook);
+		Set<String> kept = new HashSet<String>(keptSheetNames);
+		byte[] checksum = checksum(bytes, kept);
+
+		if( compiledFile.isFile() )
+		{
+			try
+			{
+				CompiledTemplate ct = read(compiledFile, checksum, bytes, kept);
+				if( ct != null )
+				{
+					logger.debug("Loaded <" + compiledFile + ">");
+					return ct;
+				}
+			}
+			catch (IOException e)
+			{
+				logger.warn("Cannot read <" + compiledFile + ">: " + e.getMessage());
+			}
+			catch (RuntimeException e)
+			{
+				logger.warn("Cannot read <" + compiledFile + ">: " + e.getMessage());
+			}
+		}
+
+		CompiledTemplate ct = compile(bytes, kept, false);
+		try
+		{
+			ct.write(compiledFile, checksum);
+		}
+		catch (IOException e)
+		{
+			logger.warn("Cannot write <" + compiledFile + ">: " + e.getMessage());
+		}
+		return ct;
+	}
+
+	/**
+	 * @return the compiled template or null if the file was written for another template workbook
+	 */
+	private static CompiledTemplate read(File compiledFile, byte[] checksum, byte[] bytes,
+			Set<String> kept) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(compiledFile)));
+		try
+		{
+			if( in.readInt() != MAGIC || in.readInt() != VERSION )
+			{
+				return null;
+			}
+			byte[] storedChecksum = new byte[in.readInt()];
+			in.readFully(storedChecksum);
+			if( !Arrays.equals(checksum, storedChecksum) )
+			{
+				return null;
+			}
+			byte[] outputWorkbook = new byte[in.readInt()];
+			in.readFully(outputWorkbook);
+
+			HSSFWorkbook workbook = new HSSFWorkbook(new ByteArrayInputStream(bytes));
+			renameTemplateSheets(workbook, kept);
+			TemplateWorkbook tWorkbook = TemplateWorkbookSerializer.read(in, workbook);
+			prepareForSharing(workbook);
+			return new CompiledTemplate(workbook, tWorkbook, outputWorkbook, bytes.length);
+		}
+		finally
+		{
+			try{ in.close(); } catch (Exception ignore) {}
+		}
+	}
+
+	/**
+	 * Writes a temporary file and renames it, so that concurrent loads 
+	 * never read a partially written file.
+	 */
+	private void write(File compiledFile, byte[] checksum) throws IOException
+	{
+		File dir = compiledFile.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(compiledFile.getName(), ".tmp", dir);
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(checksum.length);
+				out.write(checksum);
+				out.writeInt(outputWorkbook.length);
+				out.write(outputWorkbook);
+				TemplateWorkbookSerializer.write(tWorkbook, out);
+			}
+			finally
+			{
+				out.close();
+			}
+			try
+			{
+				Files.move(tmp.toPath(), compiledFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(tmp.toPath(), compiledFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * @return SHA-256 of the template workbook content and the kept sheet names
+	 */
+	private static byte[] checksum(byte[] bytes, Set<String> kept)
+	{
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(bytes);
+			for (String name : new TreeSet<String>(kept))
+			{
+				md.update((byte) 0);
+				md.update(name.getBytes(StandardCharsets.UTF_8));
+			}
+			return md.digest();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException
+	{
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try
+		{
+			return toByteArray(in);
+		}
+		finally
+		{
+			try{ in.close(); } catch (Exception ignore) {}
+		}
+	}
+
+	/**
+	 * Estimates the memory held by this compiled template: the template
+	 * workbook loaded by POI with the templates gathered from it takes about
+	 * three times the size of the template workbook file, and the output
+	 * workbook is held as it is written.
+	 * 
+	 * @return estimated number of bytes
+	 */
+	public long getFootprint()
+	{
+		return 3L*templateSize + outputWorkbook.length;
+	}
+
+	TemplateSheet getTemplateSheet(String sheetName)
+	{
+		return tWorkbook.getTemplateSheet(sheetName);
+	}
+
+	/**
+	 * @return number of the template sheets parsed so far
+	 */
+	int getParsedSheetsNumber()
+	{
+		return tWorkbook.getParsedSheetsNumber();
+	}
+
+	/**
+	 * Creates a new output workbook. The workbook contains kept sheets only
+	 * and has the same cell styles as the template workbook.
+	 */
+	HSSFWorkbook createWorkbook() throws IOException
+	{
+		return createWorkbook(false);
+	}
+
+	/**
+	 * Creates a new output workbook as {@link #createWorkbook()} does.
+	 * 
+	 * @param streaming - <code>true</code> to create a workbook writing the rows
+	 *   of the sheets created in it to temporary files
+	 * @see HSSFStreamingWorkbook
+	 */
+	HSSFWorkbook createWorkbook(boolean streaming) throws IOException
+	{
+		if( streaming )
+		{
+			return new HSSFStreamingWorkbook(new ByteArrayInputStream(outputWorkbook));
+		}
+		return new HSSFWorkbook(new ByteArrayInputStream(outputWorkbook));
+	}
+
+	/**
+	 * Rename all template sheets in the template workbook. Add a SUFFIX to each name.
+	 */
+	private static void renameTemplateSheets(HSSFWorkbook workbook, Set<String> keptSheetNames)
+	{
+		for (int i = 0; i != workbook.getNumberOfSheets(); i++)
+		{
+			String name = workbook.getSheetName(i);
+
+			// exclude protected sheets from processing
+			if( !keptSheetNames.contains(name) )
+			{
+				workbook.setSheetName(i, name + SUFFIX);
+			}
+		}
+	}
+
+	/**
+	 * POI creates some of the sheet records lazily on the first access.
+	 * Touch them once so that reading the template from several threads
+	 * does not modify it.
+	 */
+	private static void prepareForSharing(HSSFWorkbook workbook)
+	{
+		for (int i = 0; i != workbook.getNumberOfSheets(); i++)
+		{
+			HSSFSheet sheet = workbook.getSheetAt(i);
+			sheet.getPrintSetup();
+			sheet.getSheetConditionalFormatting();
+		}
+	}
+
+	private static byte[] removeTemplateSheets(byte[] bytes, Set<String> keptSheetNames)
+	throws IOException
+	{
+		HSSFWorkbook workbook = new HSSFWorkbook(new ByteArrayInputStream(bytes));
+		for (int i = workbook.getNumberOfSheets() - 1; i >= 0; i--)
+		{
+			if( !keptSheetNames.contains(workbook.getSheetName(i)) )
+			{
+				workbook.removeSheetAt(i);
+			}
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length);
+		workbook.write(bos);
+		return bos.toByteArray();
+	}
+
+	private static byte[] toByteArray(InputStream is) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] b = new byte[4096];
+		int len = 0;
+		while( (len = is.read(b, 0, b.length)) != -1 )
+		{
+			bos.write(b, 0, len);
+		}
+		return bos.toByteArray();
+	}
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand written scanner of template directives. It reads a cell comment once
+ * and returns all directives found in it: <em>@template_begin</em>,
+ * <em>@template_end</em>, parameter and <em>@style</em>.
+ * The syntax and the precedence of the directives are the same
+ * as of the {@link OpMatcher} regular expressions.
+ *
+ * @author Dmitriy Kumshayev
+ */
+final class DirectiveLexer
+{
+	private static final String TBEGIN1 = "@template_begin";
+	private static final String TBEGIN2 = "@tbegin";
+	private static final String TEND1 = "@template_end";
+	private static final String TEND2 = "@tend";
+	private static final String STYLE = "@style";
+
+	/**
+	 * Directives of a comment.
+	 */
+	static final class Directives
+	{
+		private final String[] templateBegin;
+		private final boolean templateEnd;
+		private final Parameter parameter;
+		private final NamedStyle style;
+
+		private Directives(String[] templateBegin, boolean templateEnd, Parameter parameter,
+				NamedStyle style)
+		{
+			this.templateBegin = templateBegin;
+			this.templateEnd = templateEnd;
+			this.parameter = parameter;
+			this.style = style;
+		}
+
+		/**
+		 * @see OpMatcher#matchTemplateBegin(String)
+		 */
+		public String[] getTemplateBegin()
+		{
+			return templateBegin;
+		}
+
+		/**
+		 * @see OpMatcher#matchTemplateEnd(String)
+		 */
+		public boolean isTemplateEnd()
+		{
+			return templateEnd;
+		}
+
+		/**
+		 * @see OpMatcher#matchTemplateParameter(String)
+		 */
+		public Parameter getParameter()
+		{
+			return parameter;
+		}
+
+		/**
+		 * @see OpMatcher#matchStyle(String)
+		 */
+		public NamedStyle getStyle()
+		{
+			return style;
+		}
+	}
+
+	private DirectiveLexer()
+	{
+	}
+
+	/**
+	 * Scans the comment for directives.
+	 */
+	public static Directives lex(String text)
+	{
+		if (text == null)
+		{
+			return new Directives(null, false, null, null);
+		}
+		int n = text.length();
+		boolean tbegin1Found = false;
+		String[] tbegin1 = null;
+		String[] tbegin2 = null;
+		boolean templateEnd = false;
+		int namedParameter = -1;
+		int numberedParameter = -1;
+		NamedStyle style = null;
+		NamedStyle styleWithParam = null;
+
+		for (int i = 0; i < n; i++)
+		{
+			char ch = text.charAt(i);
+			if (ch == '@')
+			{
+				if (text.startsWith(TBEGIN1, i))
+				{
+					tbegin1Found = true;
+					if (tbegin1 == null)
+					{
+						tbegin1 = templateBegin(text, i+TBEGIN1.length());
+					}
+				}
+				else if (text.startsWith(TBEGIN2, i))
+				{
+					if (tbegin2 == null)
+					{
+						tbegin2 = templateBegin(text, i+TBEGIN2.length());
+					}
+				}
+				else if (text.startsWith(TEND1, i) || text.startsWith(TEND2, i))
+				{
+					templateEnd = true;
+				}
+				else if (text.startsWith(STYLE, i) && style == null)
+				{
+					style = style(text, i+STYLE.length(), false);
+					if (styleWithParam == null)
+					{
+						styleWithParam = style(text, i+STYLE.length(), true);
+					}
+				}
+			}
+			else if (ch == '#' && namedParameter == -1 && i+1 < n)
+			{
+				char next = text.charAt(i+1);
+				if (isAlpha(next))
+				{
+					namedParameter = i+1;
+				}
+				else if (numberedParameter == -1 && next >= '1' && next <= '9')
+				{
+					numberedParameter = i+1;
+				}
+			}
+		}
+
+		Parameter parameter = null;
+		if (namedParameter != -1)
+		{
+			parameter = parameter(text, namedParameter, name(text, namedParameter));
+		}
+		else if (numberedParameter != -1)
+		{
+			parameter = parameter(text, numberedParameter, number(text, numberedParameter));
+		}
+		return new Directives(tbegin1Found ? tbegin1 : tbegin2, templateEnd, parameter,
+				style != null ? style : styleWithParam);
+	}
+
+	/**
+	 * Regex free equivalent of {@link OpMatcher#matchTemplateName(String)}.
+	 *
+	 * @return true if the text is a name: a letter followed by letters, digits and underscores
+	 */
+	public static boolean isName(String text)
+	{
+		return text != null && text.length() > 0 && name(text, 0) == text.length();
+	}
+
+	/**
+	 * <em>\s*\(\s*name(\s*,\s*declaration)*\s*\)</em>
+	 *
+	 * @return template name and parameter declarations or null
+	 */
+	private static String[] templateBegin(String text, int i)
+	{
+		int p = skipSpace(text, i);
+		if (!charAt(text, p, '('))
+		{
+			return null;
+		}
+		p = skipSpace(text, p+1);
+		int e = name(text, p);
+		if (e == -1)
+		{
+			return null;
+		}
+		List<String> names = new ArrayList<String>();
+		names.add(text.substring(p, e));
+		while (true)
+		{
+			p = skipSpace(text, e);
+			if (charAt(text, p, ')'))
+			{
+				return names.toArray(new String[names.size()]);
+			}
+			if (!charAt(text, p, ','))
+			{
+				return null;
+			}
+			p = skipSpace(text, p+1);
+			e = declaration(text, p);
+			if (e == -1)
+			{
+				return null;
+			}
+			names.add(text.substring(p, e));
+		}
+	}
+
+	/**
+	 * <em>name(\s*:\s*type(\s*\(pattern\))?)?</em>
+	 *
+	 * @return end of the declaration or -1
+	 */
+	private static int declaration(String text, int i)
+	{
+		int e = name(text, i);
+		return e != -1 ? type(text, e, null) : -1;
+	}
+
+	/**
+	 * <em>(\s*:\s*type(\s*\(pattern\))?)?</em>, the pattern ends at the first ')' as in {@link OpMatcher}
+	 *
+	 * @param groups - if not null receives start and end of the type and the pattern
+	 * @return end of the type declaration, i if there is none
+	 */
+	private static int type(String text, int i, int[] groups)
+	{
+		int p = skipSpace(text, i);
+		if (!charAt(text, p, ':'))
+		{
+			return i;
+		}
+		int typeStart = skipSpace(text, p+1);
+		int typeEnd = typeStart;
+		while (typeEnd < text.length() && isAlpha(text.charAt(typeEnd)))
+		{
+			typeEnd++;
+		}
+		if (typeEnd == typeStart)
+		{
+			return i;
+		}
+		if (groups != null)
+		{
+			groups[0] = typeStart;
+			groups[1] = typeEnd;
+		}
+		p = skipSpace(text, typeEnd);
+		if (charAt(text, p, '('))
+		{
+			int close = text.indexOf(')', p+1);
+			if (close != -1)
+			{
+				if (groups != null)
+				{
+					groups[2] = p+1;
+					groups[3] = close;
+				}
+				return close+1;
+			}
+		}
+		return typeEnd;
+	}
+
+	/**
+	 * @param i - start of the parameter name or number
+	 * @param e - end of the parameter name or number
+	 */
+	private static Parameter parameter(String text, int i, int e)
+	{
+		int[] groups = {-1, -1, -1, -1};
+		type(text, e, groups);
+		return OpMatcher.createParameter(text.substring(i, e),
+				groups[0] != -1 ? text.substring(groups[0], groups[1]) : null,
+				groups[2] != -1 ? text.substring(groups[2], groups[3]) : null);
+	}
+
+	/**
+	 * <em>\s*\(\s*name\s*\)</em> or, with the parameter flag,
+	 * <em>\s*\(\s*name\s*,\s*(true|false)\s*\)</em>
+	 *
+	 * @return the style or null
+	 */
+	private static NamedStyle style(String text, int i, boolean withParam)
+	{
+		int p = skipSpace(text, i);
+		if (!charAt(text, p, '('))
+		{
+			return null;
+		}
+		p = skipSpace(text, p+1);
+		int e = name(text, p);
+		if (e == -1)
+		{
+			return null;
+		}
+		String name = text.substring(p, e);
+		p = skipSpace(text, e);
+		if (!withParam)
+		{
+			return charAt(text, p, ')') ? new NamedStyle(name, false) : null;
+		}
+		if (!charAt(text, p, ','))
+		{
+			return null;
+		}
+		p = skipSpace(text, p+1);
+		boolean flag;
+		if (text.startsWith("true", p))
+		{
+			flag = true;
+			p += 4;
+		}
+		else if (text.startsWith("false", p))
+		{
+			flag = false;
+			p += 5;
+		}
+		else
+		{
+			return null;
+		}
+		p = skipSpace(text, p);
+		return charAt(text, p, ')') ? new NamedStyle(name, flag) : null;
+	}
+
+	/**
+	 * @return end of the name starting at i or -1
+	 */
+	private static int name(String text, int i)
+	{
+		if (i >= text.length() || !isAlpha(text.charAt(i)))
+		{
+			return -1;
+		}
+		int p = i+1;
+		while (p < text.length() && isWord(text.charAt(p)))
+		{
+			p++;
+		}
+		return p;
+	}
+
+	/**
+	 * @return end of the digits starting at i
+	 */
+	private static int number(String text, int i)
+	{
+		int p = i;
+		while (p < text.length() && text.charAt(p) >= '0' && text.charAt(p) <= '9')
+		{
+			p++;
+		}
+		return p;
+	}
+
+	private static int skipSpace(String text, int i)
+	{
+		int p = i;
+		while (p < text.length() && isSpace(text.charAt(p)))
+		{
+			p++;
+		}
+		return p;
+	}
+
+	private static boolean charAt(String text, int i, char ch)
+	{
+		return i < text.length() && text.charAt(i) == ch;
+	}
+
+	/** \p{Alpha} */
+	private static boolean isAlpha(char ch)
+	{
+		return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+	}
+
+	/** \w */
+	private static boolean isWord(char ch)
+	{
+		return isAlpha(ch) || (ch >= '0' && ch <= '9') || ch == '_';
+	}
+
+	/** \s */
+	private static boolean isSpace(char ch)
+	{
+		return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+
+/**
+ * Everything needed to fill a template into the output sheet, collected
+ * once from the template sheet: row heights and breaks, and for every cell
+ * its type, style, constant value, formula and parameter.
+ * Filling a template walks the plan without looking into the template sheet.
+ * <br>
+ * A plan is immutable and can be shared by concurrent renders.
+ *
+ * @author Dmitriy Kumshayev
+ */
+final class FillPlan
+{
+	private static final Logger logger = Logger.getLogger(FillPlan.class);
+
+	/**
+	 * Template cell as it is copied to the output sheet.
+	 */
+	static final class CellFill
+	{
+		/** cell type, one of HSSFCell.CELL_TYPE_* */
+		final int type;
+		/** index of the cell style in the template workbook */
+		final short styleIndex;
+		/** Boolean, Double or HSSFRichTextString value of the template cell or null */
+		final Object value;
+		/** formula of the template cell or null */
+		final TemplateFormula formula;
+		/** absolute row and column of the template cell, formula references are relative to them */
+		final int row;
+		final int column;
+		/** 1-based index of the value in the data row or -1 */
+		final int paramIndex;
+		final Parameter param;
+
+		private CellFill(HSSFCell cell, TemplateFormula formula, Reference absRef, int paramIndex, Parameter param)
+		{
+			this.type = cell.getCellType();
+			this.styleIndex = cell.getCellStyle().getIndex();
+			this.value = cellValue(cell, type);
+			this.formula = formula;
+			this.row = absRef.row();
+			this.column = absRef.column();
+			this.paramIndex = paramIndex;
+			this.param = param;
+		}
+
+		private static Object cellValue(HSSFCell cell, int type)
+		{
+			switch (type)
+			{
+				case HSSFCell.CELL_TYPE_BOOLEAN:
+					return Boolean.valueOf(cell.getBooleanCellValue());
+				case HSSFCell.CELL_TYPE_NUMERIC:
+					return Double.valueOf(cell.getNumericCellValue());
+				case HSSFCell.CELL_TYPE_STRING:
+					return cell.getRichStringCellValue();
+			}
+			return null;
+		}
+	}
+
+	private final int height;
+	private final int width;
+	private final short[] rowHeights;
+	private final boolean[] rowBreaks;
+	private final CellFill[] cells;
+	private final int[] mergeRegions;
+
+	private FillPlan(int height, int width, short[] rowHeights, boolean[] rowBreaks,
+			CellFill[] cells, int[] mergeRegions)
+	{
+		this.height = height;
+		this.width = width;
+		this.rowHeights = rowHeights;
+		this.rowBreaks = rowBreaks;
+		this.cells = cells;
+		this.mergeRegions = mergeRegions;
+	}
+
+	public static FillPlan compile(Template t, TemplateSheet tSheet)
+	{
+		int h = t.height();
+		int w = t.width();
+		short[] rowHeights = new short[h];
+		boolean[] rowBreaks = new boolean[h];
+		CellFill[] cells = new CellFill[h*w];
+		for (int r = 0; r < h; r++)
+		{
+			rowHeights[r] = (short) t.getRowHeight(r);
+			rowBreaks[r] = t.isRowBroken(r);
+			for (int c = 0; c < w; c++)
+			{
+				HSSFCell tCell = t.getCell(r, c);
+				if( tCell != null )
+				{
+					Reference absRef = t.absoluteReference(r, c);
+					TemplateFormula formula = null;
+					if( tCell.getCellType() == HSSFCell.CELL_TYPE_FORMULA )
+					{
+						formula = tSheet.getFormula(absRef.row(), absRef.column());
+						if( formula == null )
+						{
+							logger.warn("Formula @(" + absRef + ") was not compiled");
+						}
+					}
+					int idx = t.getParameterIndex(r, c);
+					Parameter param = idx > 0 ? t.getParameterAt(r, c) : null;
+					cells[r*w+c] = new CellFill(tCell, formula, absRef, idx, param);
+				}
+			}
+		}
+		int[] mergeRegions = t instanceof StaticTemplate
+				? compileMergeRegions((StaticTemplate) t) : new int[0];
+		return new FillPlan(h, w, rowHeights, rowBreaks, cells, mergeRegions);
+	}
+
+	/**
+	 * @return first row, last row, first column and last column of each
+	 * merge region relative to the template as it is rendered
+	 */
+	private static int[] compileMergeRegions(StaticTemplate t)
+	{
+		List<int[]> regions = new ArrayList<int[]>();
+		for (MergeRegion m : t.getMergeRegions())
+		{
+			if (t.contains(m.start()) && (m.end().row() != Reference.INFINITY)
+					&& (m.end().column() != Reference.INFINITY))
+			{
+				int firstRow = m.start().row() - t.start().row();
+				int lastRow = firstRow + m.end().row() - m.start().row();
+
+				int w = t.width();
+				int firstCol=w;
+				int lastCol=0;
+				for (int c=0; c < w ; c++)
+				{
+					if(t.absoluteColumn(c) >= m.start().column() &&
+							t.absoluteColumn(c) <= m.end().column() )
+					{
+						firstCol = Math.min(firstCol, c);
+						lastCol = Math.max(lastCol, c);
+					}
+				}
+				regions.add(new int[] {firstRow, lastRow, firstCol, lastCol});
+			}
+		}
+		int[] flat = new int[regions.size()*4];
+		for (int i = 0; i < regions.size(); i++)
+		{
+			System.arraycopy(regions.get(i), 0, flat, i*4, 4);
+		}
+		return flat;
+	}
+
+	public int height()
+	{
+		return height;
+	}
+
+	public int width()
+	{
+		return width;
+	}
+
+	public short getRowHeight(int r)
+	{
+		return rowHeights[r];
+	}
+
+	public boolean isRowBroken(int r)
+	{
+		return rowBreaks[r];
+	}
+
+	/**
+	 * @return the cell or null if there is no cell in the template
+	 */
+	public CellFill getCell(int r, int c)
+	{
+		return cells[r*width+c];
+	}
+
+	/**
+	 * @return number of merge regions
+	 */
+	public int getMergeRegionsNumber()
+	{
+		return mergeRegions.length/4;
+	}
+
+	/**
+	 * @return first row, last row, first column and last column
+	 * of the i-th merge region relative to the template
+	 */
+	public int getMergeRegion(int i, int part)
+	{
+		return mergeRegions[i*4+part];
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.util.CellRangeAddress;
+
+/**
+ * Index of the merged regions of a sheet. The regions are sorted by their
+ * first row and column, so the region starting at a cell, the region
+ * containing a cell and the regions starting in a rectangle are found
+ * by a binary search instead of checking all regions of the sheet.
+ * <br>
+ * The index is immutable.
+ *
+ * @author Dmitriy Kumshayev
+ */
+final class MergeRegionIndex
+{
+	private final CellRangeAddress[] regions;
+	/** region numbers in the sheet ordered by first row and first column */
+	private final int[] order;
+	private final int[] firstRows;
+	private final int[] firstColumns;
+	/** maximum last row of the regions up to the position in the order */
+	private final int[] maxLastRows;
+
+	public MergeRegionIndex(HSSFSheet sheet)
+	{
+		this(mergedRegions(sheet));
+	}
+
+	public MergeRegionIndex(List<CellRangeAddress> regions)
+	{
+		final int n = regions.size();
+		this.regions = regions.toArray(new CellRangeAddress[n]);
+		Integer[] sorted = new Integer[n];
+		for (int i = 0; i < n; i++)
+		{
+			sorted[i] = Integer.valueOf(i);
+		}
+		final CellRangeAddress[] rs = this.regions;
+		Arrays.sort(sorted, new Comparator<Integer>()
+		{
+			public int compare(Integer i1, Integer i2)
+			{
+				CellRangeAddress r1 = rs[i1.intValue()];
+				CellRangeAddress r2 = rs[i2.intValue()];
+				int d = r1.getFirstRow() - r2.getFirstRow();
+				if( d == 0 )
+				{
+					d = r1.getFirstColumn() - r2.getFirstColumn();
+				}
+				return d != 0 ? d : i1.intValue() - i2.intValue();
+			}
+		});
+		this.order = new int[n];
+		this.firstRows = new int[n];
+		this.firstColumns = new int[n];
+		this.maxLastRows = new int[n];
+		int maxLastRow = -1;
+		for (int i = 0; i < n; i++)
+		{
+			CellRangeAddress region = rs[sorted[i].intValue()];
+			order[i] = sorted[i].intValue();
+			firstRows[i] = region.getFirstRow();
+			firstColumns[i] = region.getFirstColumn();
+			maxLastRow = Math.max(maxLastRow, lastRow(region));
+			maxLastRows[i] = maxLastRow;
+		}
+	}
+
+	private static List<CellRangeAddress> mergedRegions(HSSFSheet sheet)
+	{
+		int n = sheet.getNumMergedRegions();
+		List<CellRangeAddress> regions = new ArrayList<CellRangeAddress>(n);
+		for (int i = 0; i < n; i++)
+		{
+			regions.add(sheet.getMergedRegion(i));
+		}
+		return regions;
+	}
+
+	public int size()
+	{
+		return regions.length;
+	}
+
+	/**
+	 * @return the region with the top left cell at (r,c) or null.
+	 * If there are several such regions the last one of the sheet is returned.
+	 */
+	public CellRangeAddress getRegionStartingAt(int r, int c)
+	{
+		int i = upperBound(r, c)-1;
+		if( i >= 0 && firstRows[i] == r && firstColumns[i] == c )
+		{
+			return regions[order[i]];
+		}
+		return null;
+	}
+
+	/**
+	 * @return the region containing the cell (r,c) or null.
+	 * If there are several such regions the first one of the sheet is returned.
+	 */
+	public CellRangeAddress getRegionContaining(int r, int c)
+	{
+		int found = -1;
+		// regions starting at or above row r, going up while they may reach row r
+		for (int i = upperBound(r, Integer.MAX_VALUE)-1; i >= 0 && maxLastRows[i] >= r; i--)
+		{
+			CellRangeAddress region = regions[order[i]];
+			if( lastRow(region) >= r && firstColumns[i] <= c && c <= lastColumn(region) )
+			{
+				if( found == -1 || order[i] < found )
+				{
+					found = order[i];
+				}
+			}
+		}
+		return found != -1 ? regions[found] : null;
+	}
+
+	/**
+	 * @return regions with the top left cell in the rectangle, in the order of the sheet
+	 */
+	public List<CellRangeAddress> getRegionsStartingIn(int firstRow, int firstColumn,
+			int lastRow, int lastColumn)
+	{
+		List<Integer> found = new ArrayList<Integer>();
+		for (int i = upperBound(firstRow-1, Integer.MAX_VALUE); i < order.length && firstRows[i] <= lastRow; i++)
+		{
+			if( firstColumn <= firstColumns[i] && firstColumns[i] <= lastColumn )
+			{
+				found.add(Integer.valueOf(order[i]));
+			}
+		}
+		Collections.sort(found);
+		List<CellRangeAddress> result = new ArrayList<CellRangeAddress>(found.size());
+		for (Integer i : found)
+		{
+			result.add(regions[i.intValue()]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return number of regions starting before or at (r,c) in the order
+	 */
+	private int upperBound(int r, int c)
+	{
+		int lo = 0;
+		int hi = order.length;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if( firstRows[mid] < r || (firstRows[mid] == r && firstColumns[mid] <= c) )
+			{
+				lo = mid + 1;
+			}
+			else
+			{
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static int lastRow(CellRangeAddress region)
+	{
+		return region.getLastRow() == Reference.INFINITY ? Integer.MAX_VALUE : region.getLastRow();
+	}
+
+	private static int lastColumn(CellRangeAddress region)
+	{
+		return region.getLastColumn() == Reference.INFINITY ? Integer.MAX_VALUE : region.getLastColumn();
+	}
+}
@@ -1,160 +1,250 @@
-/*
- * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.templateit;
-
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-final class OpMatcher
-{
-	private static final String TBEGIN1 = "@template_begin";
-	private static final String TBEGIN2 = "@tbegin";
-	private static final String beginParams = "\\s*\\(\\s*((\\p{Alpha}\\w*)(\\s*,\\s*\\p{Alpha}\\w*)*)\\s*\\)";
-	
-	private static final Pattern templateBeginPattern1 = Pattern.compile(TBEGIN1+beginParams);
-	private static final Pattern templateBeginPattern2 = Pattern.compile(TBEGIN2+beginParams);
-
-	/**
-	 * Match a string with
-	 * <em>#template_begin(name, param1, param2, ..., paramN)</em> instruction.
-	 * 
-	 * @param text
-	 *          being matched
-	 * 
-	 * @return if matched, return a String array, where the first element is
-	 */
-	public static String[] matchTemplateBegin(String text)
-	{
-		String[] names = null;
-		if (text != null)
-		{
-			Matcher m = null;
-			if( text.indexOf(TBEGIN1) != -1 )
-			{
-				m = templateBeginPattern1.matcher(text);
-			}
-			else if ( text.indexOf(TBEGIN2) != -1)
-			{
-				m = templateBeginPattern2.matcher(text);
-			}
-			if( m != null )
-			{
-				if (m.groupCount() == 3)
-				{
-					boolean matches = m.find();
-					if (matches)
-					{
-						String group = m.group(1);
-						if (group != null)
-						{
-							names = group.split("\\s*,\\s*");
-						}
-					}
-				}
-			}
-		}
-		return names;
-	}
-
-	public static boolean matchTemplateEnd(String text)
-	{
-		return text != null && (text.indexOf("@template_end") != -1)
-				|| (text.indexOf("@tend") != -1);
-	}
-
-	private static final Pattern parameterNumberPattern = Pattern
-			.compile("#([1-9]\\p{Digit}*)");
-
-	private static final Pattern parameterNamePattern = Pattern
-			.compile("#(\\p{Alpha}\\w*)");
-
-	public static String matchTemplateParameter(String text)
-	{
-		String parameterName = null;
-		if (text != null)
-		{
-			if (text.indexOf("#") != -1)
-			{
-				Matcher fieldNameMatcher = parameterNamePattern.matcher(text);
-				boolean found = fieldNameMatcher.find();
-				if (found && fieldNameMatcher.groupCount() == 1)
-				{
-					parameterName = fieldNameMatcher.group(1);
-				}
-				else
-				{
-					Matcher fieldNumberMatcher = parameterNumberPattern.matcher(text);
-					found = fieldNumberMatcher.find();
-					if (found && fieldNumberMatcher.groupCount() == 1)
-					{
-						parameterName = fieldNumberMatcher.group(1);
-					}
-				}
-			}
-		}
-		return parameterName;
-	}
-
-	private static final Pattern templateNamePattern = Pattern
-			.compile("\\p{Alpha}\\w*");
-
-	public static boolean matchTemplateName(String text)
-	{
-		if (text != null)
-		{
-			return templateNamePattern.matcher(text).matches();
-		}
-		else
-		{
-			return false;
-		}
-	}
-	
-	private static final Pattern stylePattern = Pattern.compile("@style\\s*\\(\\s*(\\p{Alpha}\\w*)\\s*\\)");
-	private static final Pattern styleWithParamPattern = Pattern.compile("@style\\s*\\(\\s*(\\p{Alpha}\\w*)\\s*,\\s*((true)|(false))\\s*\\)");
-
-	public static NamedStyle matchStyle(String text)
-	{
-		NamedStyle style = null;
-		String styleName = null;
-		if (text != null)
-		{
-			Matcher matcher = stylePattern.matcher(text);
-			boolean found = matcher.find();
-			if (found && matcher.groupCount() == 1)
-			{
-				styleName = matcher.group(1);
-				style = new NamedStyle(styleName,false);
-			}
-			else
-			{
-				matcher = styleWithParamPattern.matcher(text);
-				found = matcher.find();
-				if (found && matcher.groupCount() == 4)
-				{
-					styleName = matcher.group(1);
-					String paramFlag = matcher.group(2);
-					boolean flag = Boolean.parseBoolean(paramFlag);
-					style = new NamedStyle(styleName,flag);
-				}
-			}
-		}
-		return style;
-	}
-	
-
-}
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+final class OpMatcher
+{
+	private static final Logger logger = Logger.getLogger(OpMatcher.class);
+
+	private static final String TBEGIN1 = "@template_begin";
+	private static final String TBEGIN2 = "@tbegin";
+	/** Optional parameter type: <em>:type</em> or <em>:type(pattern)</em>, the pattern ends at the first ')' */
+	private static final String paramType = "(?:\\s*:\\s*(\\p{Alpha}+)(?:\\s*\\(([^)]*)\\))?)?";
+	private static final String paramDeclaration = "\\p{Alpha}\\w*(?:\\s*:\\s*\\p{Alpha}+(?:\\s*\\([^)]*\\))?)?";
+	private static final String beginParams = "\\s*\\(\\s*((\\p{Alpha}\\w*)(\\s*,\\s*"+paramDeclaration+")*)\\s*\\)";
+	
+	private static final Pattern templateBeginPattern1 = Pattern.compile(TBEGIN1+beginParams);
+	private static final Pattern templateBeginPattern2 = Pattern.compile(TBEGIN2+beginParams);
+
+	/**
+	 * Match a string with
+	 * <em>#template_begin(name, param1, param2, ..., paramN)</em> instruction.
+	 * A parameter may declare its type, see {@link #matchParameterDeclaration(String)}.
+	 * 
+	 * @param text
+	 *          being matched
+	 * 
+	 * @return if matched, return a String array, where the first element is
+	 *          the template name followed by the parameter declarations
+	 */
+	public static String[] matchTemplateBegin(String text)
+	{
+		String[] names = null;
+		if (text != null)
+		{
+			Matcher m = null;
+			if( text.indexOf(TBEGIN1) != -1 )
+			{
+				m = templateBeginPattern1.matcher(text);
+			}
+			else if ( text.indexOf(TBEGIN2) != -1)
+			{
+				m = templateBeginPattern2.matcher(text);
+			}
+			if( m != null )
+			{
+				if (m.groupCount() == 3)
+				{
+					boolean matches = m.find();
+					if (matches)
+					{
+						String group = m.group(1);
+						if (group != null)
+						{
+							// split on commas outside of date patterns
+							List<String> list = new ArrayList<String>();
+							Matcher dm = parameterDeclarationPattern.matcher(group);
+							while (dm.find())
+							{
+								list.add(dm.group());
+							}
+							names = list.toArray(new String[list.size()]);
+						}
+					}
+				}
+			}
+		}
+		return names;
+	}
+
+	public static boolean matchTemplateEnd(String text)
+	{
+		return text != null && (text.indexOf("@template_end") != -1)
+				|| (text.indexOf("@tend") != -1);
+	}
+
+	private static final Pattern parameterNumberPattern = Pattern
+			.compile("#([1-9]\\p{Digit}*)"+paramType);
+
+	private static final Pattern parameterNamePattern = Pattern
+			.compile("#(\\p{Alpha}\\w*)"+paramType);
+
+	private static final Pattern parameterDeclarationPattern = Pattern
+			.compile("(\\p{Alpha}\\w*)"+paramType);
+
+	/**
+	 * Match a string with <em>#name</em> or <em>#N</em> parameter
+	 * optionally followed by the parameter type.
+	 * 
+	 * @return parameter with name (or number) and type or <code>null</code>
+	 */
+	public static Parameter matchTemplateParameter(String text)
+	{
+		Parameter parameter = null;
+		if (text != null)
+		{
+			if (text.indexOf("#") != -1)
+			{
+				Matcher fieldNameMatcher = parameterNamePattern.matcher(text);
+				boolean found = fieldNameMatcher.find();
+				if (found && fieldNameMatcher.groupCount() == 3)
+				{
+					parameter = createParameter(fieldNameMatcher);
+				}
+				else
+				{
+					Matcher fieldNumberMatcher = parameterNumberPattern.matcher(text);
+					found = fieldNumberMatcher.find();
+					if (found && fieldNumberMatcher.groupCount() == 3)
+					{
+						parameter = createParameter(fieldNumberMatcher);
+					}
+				}
+			}
+		}
+		return parameter;
+	}
+
+	/**
+	 * Match a parameter declaration of <em>@template_begin</em>:
+	 * <em>name</em>, <em>name:number</em>, <em>name:text</em>,
+	 * <em>name:boolean</em>, <em>name:date</em> or <em>name:date(pattern)</em>,
+	 * where pattern is a {@link DateTimeFormatter} pattern.
+	 * 
+	 * @return parameter with name and type or <code>null</code>
+	 */
+	public static Parameter matchParameterDeclaration(String text)
+	{
+		if (text != null)
+		{
+			Matcher m = parameterDeclarationPattern.matcher(text.trim());
+			if (m.matches())
+			{
+				return createParameter(m);
+			}
+		}
+		return null;
+	}
+
+	private static Parameter createParameter(Matcher m)
+	{
+		return createParameter(m.group(1), m.group(2), m.group(3));
+	}
+
+	/**
+	 * @param name - name or number of the parameter
+	 * @param typeName - name of the parameter type or null
+	 * @param pattern - date pattern or null
+	 */
+	static Parameter createParameter(String name, String typeName, String pattern)
+	{
+		Parameter parameter = new Parameter();
+		parameter.setName(name);
+		if (typeName != null)
+		{
+			ParameterType type = ParameterType.forName(typeName);
+			if (type == null)
+			{
+				logger.warn("Unknown type '" + typeName + "' of parameter '" + name + "'");
+			}
+			else
+			{
+				parameter.setType(type);
+				if (type == ParameterType.date && pattern != null && pattern.trim().length() > 0)
+				{
+					try
+					{
+						parameter.setFormat(pattern.trim());
+					}
+					catch (IllegalArgumentException e)
+					{
+						logger.warn("Invalid date pattern '" + pattern + "' of parameter '"
+								+ name + "'", e);
+					}
+				}
+			}
+		}
+		return parameter;
+	}
+
+	private static final Pattern templateNamePattern = Pattern
+			.compile("\\p{Alpha}\\w*");
+
+	public static boolean matchTemplateName(String text)
+	{
+		if (text != null)
+		{
+			return templateNamePattern.matcher(text).matches();
+		}
+		else
+		{
+			return false;
+		}
+	}
+	
+	private static final Pattern stylePattern = Pattern.compile("@style\\s*\\(\\s*(\\p{Alpha}\\w*)\\s*\\)");
+	private static final Pattern styleWithParamPattern = Pattern.compile("@style\\s*\\(\\s*(\\p{Alpha}\\w*)\\s*,\\s*((true)|(false))\\s*\\)");
+
+	public static NamedStyle matchStyle(String text)
+	{
+		NamedStyle style = null;
+		String styleName = null;
+		if (text != null)
+		{
+			Matcher matcher = stylePattern.matcher(text);
+			boolean found = matcher.find();
+			if (found && matcher.groupCount() == 1)
+			{
+				styleName = matcher.group(1);
+				style = new NamedStyle(styleName,false);
+			}
+			else
+			{
+				matcher = styleWithParamPattern.matcher(text);
+				found = matcher.find();
+				if (found && matcher.groupCount() == 4)
+				{
+					styleName = matcher.group(1);
+					String paramFlag = matcher.group(2);
+					boolean flag = Boolean.parseBoolean(paramFlag);
+					style = new NamedStyle(styleName,flag);
+				}
+			}
+		}
+		return style;
+	}
+	
+
+}
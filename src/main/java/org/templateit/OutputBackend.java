@@ -0,0 +1,54 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.IOException;
+
+/**
+ * Format specific part of a render: creates the generated sheets and writes
+ * the workbook to the output stream of the render. The template workbook and
+ * the output workbook created from it are HSSF workbooks whatever the format is,
+ * the backend translates the generated rows into its format.
+ * 
+ * @see XlsBackend
+ * @see XlsxBackend
+ * @see PdfBackend
+ * @author Dmitriy Kumshayev
+ */
+interface OutputBackend
+{
+	/**
+	 * Creates a new sheet with the settings of the template sheet:
+	 * column widths, panes, print setup. The rows of the previous sheet are complete.
+	 */
+	SheetOutput createSheet(TemplateSheet tSheet, String sheetName);
+
+	/**
+	 * @return number of rows a sheet of the format may have
+	 */
+	int getMaxRows();
+
+	/**
+	 * Writes the workbook to the output stream, the stream is not closed.
+	 */
+	void write() throws IOException;
+
+	/**
+	 * Releases the resources of the render, written or not.
+	 */
+	void close();
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Format of the generated workbook. Templates are .xls workbooks in all cases.
+ * <br>
+ * <em>xls</em> is the BIFF8 format of Excel 97-2003, sheets have up to 65,536 rows.
+ * <em>xlsx</em> is the SpreadsheetML format of Excel 2007, sheets have up to 1,048,576 rows
+ * and the rows are written while they are generated.
+ * <em>pdf</em> is a PDF document rendered from the generated workbook in memory.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public enum OutputFormat
+{
+	xls, xlsx, pdf;
+
+	/**
+	 * @return <em>xlsx</em> for a file named *.xlsx, <em>pdf</em> for *.pdf,
+	 * <em>xls</em> for any other file
+	 */
+	public static OutputFormat forFile(File file)
+	{
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		return name.endsWith(".xlsx") ? xlsx : name.endsWith(".pdf") ? pdf : xls;
+	}
+}
@@ -1,65 +1,107 @@
-/*
- * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.templateit;
-
-class Parameter
-{
-	private String name;
-	private int index;
-	private int row = -1;
-	private int column = -1;
-	
-	public String getName()
-	{
-		return name;
-	}
-	
-	public void setName(String name)
-	{
-		this.name = name;
-	}
-	
-	public int getRow()
-	{
-		return row;
-	}
-	
-	public void setRow(int row)
-	{
-		this.row = row;
-	}
-	
-	public int getColumn()
-	{
-		return column;
-	}
-	
-	public void setColumn(int column)
-	{
-		this.column = column;
-	}
-	
-	public int getIndex()
-	{
-		return index;
-	}
-	
-	public void setIndex(int index)
-	{
-		this.index = index;
-	}
-}
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.time.format.DateTimeFormatter;
+
+class Parameter
+{
+	private String name;
+	private int index;
+	private int row = -1;
+	private int column = -1;
+	private ParameterType type = ParameterType.auto;
+	private String formatPattern;
+	private DateTimeFormatter format;
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	public void setName(String name)
+	{
+		this.name = name;
+	}
+	
+	public int getRow()
+	{
+		return row;
+	}
+	
+	public void setRow(int row)
+	{
+		this.row = row;
+	}
+	
+	public int getColumn()
+	{
+		return column;
+	}
+	
+	public void setColumn(int column)
+	{
+		this.column = column;
+	}
+	
+	public int getIndex()
+	{
+		return index;
+	}
+	
+	public void setIndex(int index)
+	{
+		this.index = index;
+	}
+
+	public ParameterType getType()
+	{
+		return type;
+	}
+
+	public void setType(ParameterType type)
+	{
+		this.type = type;
+	}
+
+	/**
+	 * @return format of a <em>date</em> parameter or <code>null</code>
+	 * if the value can be in any of the default date formats
+	 */
+	public DateTimeFormatter getFormat()
+	{
+		return format;
+	}
+
+	/**
+	 * @return pattern of the format of a <em>date</em> parameter or <code>null</code>
+	 */
+	public String getFormatPattern()
+	{
+		return formatPattern;
+	}
+
+	/**
+	 * @param pattern - {@link DateTimeFormatter} pattern or <code>null</code>
+	 * @throws IllegalArgumentException if the pattern is invalid
+	 */
+	public void setFormat(String pattern)
+	{
+		this.format = pattern != null ? DateTimeFormatter.ofPattern(pattern) : null;
+		this.formatPattern = pattern;
+	}
+}
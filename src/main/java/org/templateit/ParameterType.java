@@ -0,0 +1,54 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.Locale;
+
+/**
+ * Type of the values of a template parameter as declared in the template,
+ * e.g. <em>price:number</em> or <em>#3:date(dd/MM/yyyy)</em>.
+ * <br>
+ * Values of <em>auto</em> parameters (no type declared) are tried as a number,
+ * then as a date and are set as text if neither works.
+ *
+ * @author Dmitriy Kumshayev
+ */
+enum ParameterType
+{
+	auto, number, date, text, bool;
+
+	/**
+	 * @param name - type name used in templates: number, date, text or boolean
+	 * @return the type or <code>null</code> if the name is unknown
+	 */
+	public static ParameterType forName(String name)
+	{
+		String n = name.toLowerCase(Locale.ROOT);
+		if( n.equals("boolean") )
+		{
+			return bool;
+		}
+		for (ParameterType type : values())
+		{
+			if( type != bool && type.name().equals(n) )
+			{
+				return type;
+			}
+		}
+		return null;
+	}
+}
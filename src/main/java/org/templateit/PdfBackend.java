@@ -0,0 +1,114 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+import com.lowagie.text.DocumentException;
+
+/**
+ * Backend rendering the generated workbook as a PDF document. The sheets are
+ * generated in memory as for .xls and handed to {@link PdfWriter} directly,
+ * the workbook is neither written nor parsed again. The same workbook may also be 
+ * written as .xls, the sheets are generated once for both.
+ * 
+ * @author Dmitriy Kumshayev
+ */
+final class PdfBackend implements OutputBackend
+{
+	private final HSSFWorkbook workbook;
+	private final OutputStream out;
+	private final OutputStream xlsOut;
+	private final XlsBackend sheets;
+
+	/**
+	 * @param workbook - the output workbook, all its rows are kept in memory
+	 */
+	PdfBackend(HSSFWorkbook workbook, OutputStream out)
+	{
+		this(workbook, out, null);
+	}
+
+	/**
+	 * @param workbook - the output workbook, all its rows are kept in memory
+	 * @param xlsOut - stream the workbook is written to as .xls before the PDF
+	 *   is rendered, or null
+	 */
+	PdfBackend(HSSFWorkbook workbook, OutputStream out, OutputStream xlsOut)
+	{
+		this.workbook = workbook;
+		this.out = out;
+		this.xlsOut = xlsOut;
+		this.sheets = new XlsBackend(workbook, xlsOut);
+	}
+
+	public SheetOutput createSheet(TemplateSheet tSheet, String sheetName)
+	{
+		return sheets.createSheet(tSheet, sheetName);
+	}
+
+	public int getMaxRows()
+	{
+		return sheets.getMaxRows();
+	}
+
+	public void write() throws IOException
+	{
+		if( xlsOut != null )
+		{
+			sheets.write();
+		}
+		try
+		{
+			// the document closes its stream
+			new PdfWriter(workbook).writePdf(new UnclosedOutputStream(out));
+		}
+		catch (DocumentException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	public void close()
+	{
+		sheets.close();
+	}
+
+	private static final class UnclosedOutputStream extends FilterOutputStream
+	{
+		private UnclosedOutputStream(OutputStream out)
+		{
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			out.flush();
+		}
+	}
+}
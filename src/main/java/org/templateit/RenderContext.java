@@ -0,0 +1,209 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.poi.hssf.usermodel.HSSFInternals;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * State of a single render: the output workbook, its backend and the templates
+ * defined (#template) or narrowed (#select) by the data stream.
+ * <br>
+ * A new context is created for every {@link TemplateProcessor} process call,
+ * so concurrent calls sharing one processor never see each other's state.
+ *
+ * @author Dmitriy Kumshayev
+ */
+final class RenderContext
+{
+	private final CompiledTemplate template;
+	private final HSSFWorkbook workbook;
+	private final OutputBackend backend;
+	private final boolean use1904windowing;
+	private final Set<String> repeatedTemplates;
+	/** names of the continued sheets by the lower case names of their continuation sheets */
+	private final Map<String,String> continuedSheets = new HashMap<String,String>();
+	private final Map<TemplateSheet,Map<String,Template>> dynamicTemplates = new HashMap<TemplateSheet, Map<String,Template>>();
+	private final Map<TemplateSheet,Map<String,StaticTemplate>> selectedTemplates = new HashMap<TemplateSheet, Map<String,StaticTemplate>>();
+
+	/**
+	 * @param format - format of the written workbook
+	 * @param streaming - <code>true</code> to write the rows of the generated
+	 *   .xls sheets to temporary files, {@link #close()} deletes the files
+	 * @param repeatedTemplates - names of the templates repeated at the top 
+	 *   of a sheet continuing a full sheet
+	 * @param out - stream the workbook is written to
+	 */
+	public RenderContext(CompiledTemplate template, OutputFormat format, boolean streaming,
+			Set<String> repeatedTemplates, OutputStream out) throws IOException
+	{
+		this(template, template.createWorkbook(streaming && format == OutputFormat.xls), format,
+				repeatedTemplates, out, null);
+	}
+
+	/**
+	 * Context of a render written both as .xls and as PDF from the same workbook.
+	 * 
+	 * @param repeatedTemplates - names of the templates repeated at the top 
+	 *   of a sheet continuing a full sheet
+	 */
+	public RenderContext(CompiledTemplate template, Set<String> repeatedTemplates,
+			OutputStream xlsOut, OutputStream pdfOut) throws IOException
+	{
+		this(template, template.createWorkbook(false), OutputFormat.pdf, repeatedTemplates, pdfOut, xlsOut);
+	}
+
+	private RenderContext(CompiledTemplate template, HSSFWorkbook workbook, OutputFormat format,
+			Set<String> repeatedTemplates, OutputStream out, OutputStream xlsOut)
+	{
+		this.template = template;
+		this.workbook = workbook;
+		this.repeatedTemplates = repeatedTemplates;
+		if( format == OutputFormat.xlsx )
+		{
+			this.backend = new XlsxBackend(workbook, out);
+		}
+		else if( format == OutputFormat.pdf )
+		{
+			this.backend = new PdfBackend(workbook, out, xlsOut);
+		}
+		else
+		{
+			this.backend = new XlsBackend(workbook, out);
+		}
+		this.use1904windowing = HSSFInternals.isUsing1904DateWindowing(workbook);
+	}
+
+	/**
+	 * @return the output workbook, it has the generated sheets unless the format is .xlsx
+	 */
+	public HSSFWorkbook workbook()
+	{
+		return workbook;
+	}
+
+	public OutputBackend backend()
+	{
+		return backend;
+	}
+
+	/**
+	 * Releases the resources of the backend.
+	 */
+	public void close()
+	{
+		backend.close();
+	}
+
+	/**
+	 * @return <code>true</code> if dates of the output workbook are in 1904 date system
+	 */
+	public boolean isUsing1904DateWindowing()
+	{
+		return use1904windowing;
+	}
+
+	/**
+	 * @return <code>true</code> if the rows of the template are repeated at the top
+	 *   of a sheet continuing a full sheet
+	 */
+	public boolean isRepeatedTemplate(String templateName)
+	{
+		return repeatedTemplates.contains(templateName);
+	}
+
+	/**
+	 * Records a sheet continuing a full sheet.
+	 */
+	public void addContinuationSheet(String sheetName, String continuedSheetName)
+	{
+		continuedSheets.put(sheetName.toLowerCase(Locale.ROOT), continuedSheetName);
+	}
+
+	/**
+	 * @return name of the sheet continued by the sheet of the given name, sheet names
+	 *   are compared ignoring case as Excel does, or null if the name is not taken
+	 */
+	public String getContinuedSheet(String sheetName)
+	{
+		return continuedSheets.get(sheetName.toLowerCase(Locale.ROOT));
+	}
+
+	public TemplateSheet getTemplateSheet(String sheetName)
+	{
+		return template.getTemplateSheet(sheetName);
+	}
+
+	/**
+	 * Looks up a template visible to the current render. Dynamic templates
+	 * take precedence over static ones, selected views of static templates
+	 * take precedence over the templates themselves.
+	 */
+	public Template getTemplate(TemplateSheet tSheet, String templateName)
+	{
+		Template t = getTemplates(dynamicTemplates,tSheet).get(templateName);
+		if( t == null )
+		{
+			t = getTemplates(selectedTemplates,tSheet).get(templateName);
+		}
+		if( t == null )
+		{
+			t = tSheet.getStaticTemplate(templateName);
+		}
+		return t;
+	}
+
+	public void addDynamicTemplate(TemplateSheet tSheet, DynamicTemplate t)
+	{
+		getTemplates(dynamicTemplates,tSheet).put(t.getName(), t);
+	}
+
+	/**
+	 * Replaces the static template with its selected view for the rest of the render.
+	 * <code>null</code> view restores the original template.
+	 */
+	public void setSelectedTemplate(TemplateSheet tSheet, String templateName, StaticTemplate view)
+	{
+		if( view != null )
+		{
+			getTemplates(selectedTemplates,tSheet).put(templateName, view);
+		}
+		else
+		{
+			getTemplates(selectedTemplates,tSheet).remove(templateName);
+		}
+	}
+
+	private static <T> Map<String,T> getTemplates(Map<TemplateSheet,Map<String,T>> templates,
+			TemplateSheet tSheet)
+	{
+		Map<String,T> sheetTemplates = templates.get(tSheet);
+		if( sheetTemplates == null )
+		{
+			sheetTemplates = new HashMap<String, T>();
+			templates.put(tSheet, sheetTemplates);
+		}
+		return sheetTemplates;
+	}
+}
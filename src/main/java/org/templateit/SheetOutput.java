@@ -0,0 +1,65 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import org.apache.poi.hssf.usermodel.HSSFRichTextString;
+
+/**
+ * Generated sheet of an {@link OutputBackend}. Rows are created in ascending
+ * order and cells of a row in ascending column order. The value methods set
+ * the value of the last created cell, a later value replaces an earlier one.
+ * 
+ * @author Dmitriy Kumshayev
+ */
+interface SheetOutput
+{
+	/**
+	 * Creates the next row.
+	 * 
+	 * @param height - height of the row in twips (1/20 of a point)
+	 */
+	void createRow(int row, short height);
+
+	void setRowBreak(int row);
+
+	/**
+	 * Creates a cell of the last created row.
+	 * 
+	 * @param type - one of HSSFCell.CELL_TYPE_*
+	 * @param styleIndex - index of a cell style in the template workbook
+	 */
+	void createCell(int column, int type, short styleIndex);
+
+	void setCellValue(boolean value);
+
+	void setCellValue(double value);
+
+	void setCellValue(String value);
+
+	/**
+	 * @param value - rich text of a template cell, it is not modified
+	 */
+	void setCellValue(HSSFRichTextString value);
+
+	/**
+	 * Sets the formula of a template cell with relative references offset
+	 * by the given number of rows and columns.
+	 */
+	void setCellFormula(TemplateFormula formula, int roff, int coff);
+
+	void addMergedRegion(int firstRow, int lastRow, int firstColumn, int lastColumn);
+}
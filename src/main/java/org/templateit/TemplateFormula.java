@@ -0,0 +1,103 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.formula.Ptg;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFInternals;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.templateit.util.FormulaUtil;
+
+/**
+ * Formula of a template cell, parsed once when the template workbook is compiled.
+ * Copies of the parsed tokens are relocated and set directly into the generated cells.
+ * Formulas referring to other sheets or to names are kept as text only and parsed 
+ * against the output workbook every time, because their tokens hold indexes into 
+ * the workbook tables.
+ * 
+ * @author Dmitriy Kumshayev
+ */
+final class TemplateFormula
+{
+	private static final Logger logger = Logger.getLogger(TemplateFormula.class);
+
+	private final String formula;
+	private final Ptg[] ptgs;
+
+	/**
+	 * @param ptgs - parsed workbook independent formula or null
+	 */
+	TemplateFormula(String formula, Ptg[] ptgs)
+	{
+		this.formula = formula;
+		this.ptgs = ptgs;
+	}
+
+	public static TemplateFormula compile(HSSFWorkbook workbook, HSSFCell cell)
+	{
+		return compile(workbook, cell.getCellFormula());
+	}
+
+	public static TemplateFormula compile(HSSFWorkbook workbook, String formula)
+	{
+		Ptg[] ptgs = null;
+		try
+		{
+			ptgs = HSSFFormulaParser.parse(formula, workbook);
+			if( !FormulaUtil.isWorkbookIndependent(ptgs) )
+			{
+				ptgs = null;
+			}
+		}
+		catch (RuntimeException e)
+		{
+			logger.warn("Cannot parse formula '"+formula+"': "+e.getMessage());
+		}
+		return new TemplateFormula(formula, ptgs);
+	}
+
+	public String getFormula()
+	{
+		return formula;
+	}
+
+	/**
+	 * @return parsed formula or null if the formula is set as text,
+	 * the tokens are shared and must not be modified
+	 */
+	Ptg[] getTokens()
+	{
+		return ptgs;
+	}
+
+	/**
+	 * Set the formula offset by given number of rows and columns into the cell.
+	 */
+	public void setCellFormula(HSSFCell cell, HSSFWorkbook workbook, int roff, int coff)
+	{
+		if( ptgs!=null )
+		{
+			HSSFInternals.setCellFormula(cell, FormulaUtil.offsetRelativeReferences(ptgs, roff, coff));
+		}
+		else
+		{
+			cell.setCellFormula(FormulaUtil.offsetRelativeReferences(workbook, formula, roff, coff));
+		}
+	}
+}
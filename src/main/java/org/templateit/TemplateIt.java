@@ -1,79 +1,150 @@
-/*
- * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.templateit;
-
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.Iterator;
-
-import org.apache.log4j.Logger;
-import org.templateit.util.DelimitedFileReader;
-
-import com.lowagie.text.DocumentException;
-
-public class TemplateIt
-{
-	private static final Logger logger = Logger
-			.getLogger(TemplateIt.class);
-
-	public static void main(String[] args) throws IOException, DocumentException
-	{
-		if (args.length > 0)
-		{
-			File directory = new File(args[0]);
-			if (args.length > 1)
-			{
-				for (int i = 1; i < args.length; i++)
-				{
-					String name = args[i];
-					File csvFile = new File(directory, name + ".csv");
-					File templateFile = new File(directory, name + "Template.xls");
-					File outputFile = new File(directory, name + ".xls");
-					Iterator<String[]> iterator = new DelimitedFileReader(csvFile, "\t");
-					TemplateProcessor tp = new TemplateProcessor(templateFile);
-					tp.process(iterator, outputFile);
-
-					PdfWriter writer = new PdfWriter(new FileInputStream(outputFile));
-					writer.writePdf(new FileOutputStream(new File(name + ".pdf")));			
-				}
-			}
-			else
-			{
-				logger.error("Missing Template name argument");
-				usage();
-			}
-		}
-		else
-		{
-			logger.error("Missing <directory> argument");
-			usage();
-		}
-
-		logger.debug("Done");
-	}
-
-	private static void usage()
-	{
-		System.out.println("Usage: Main <directory> <Name1> [<Name2> ...]");
-		System.out.println("");
-		System.out.println("    <directory> - location of <NameN>Template.xls template files\n");
-		System.out.println("                  and corresponding tab-separated data files (<NameN>.csv)");
-		System.exit(2);
-	}
-}
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.templateit.util.DelimitedFileReader;
+
+public class TemplateIt
+{
+	private static final Logger logger = Logger
+			.getLogger(TemplateIt.class);
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		Set<OutputFormat> formats = EnumSet.of(OutputFormat.xls, OutputFormat.pdf);
+		int threads = Runtime.getRuntime().availableProcessors();
+		File manifest = null;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("--"); i++)
+		{
+			String option = args[i];
+			if ("--xls-only".equals(option))
+			{
+				formats = EnumSet.of(OutputFormat.xls);
+			}
+			else if ("--pdf-only".equals(option))
+			{
+				formats = EnumSet.of(OutputFormat.pdf);
+			}
+			else if ("--threads".equals(option) && i + 1 < args.length)
+			{
+				try
+				{
+					threads = Integer.parseInt(args[++i]);
+				}
+				catch (NumberFormatException e)
+				{
+					logger.error("Invalid number of threads: " + args[i]);
+					usage();
+				}
+			}
+			else if ("--batch".equals(option) && i + 1 < args.length)
+			{
+				manifest = new File(args[++i]);
+			}
+			else
+			{
+				logger.error("Unknown option " + option);
+				usage();
+			}
+		}
+
+		if (manifest != null)
+		{
+			BatchRenderer renderer = new BatchRenderer(threads, formats);
+			BatchRenderer.Result result = renderer.render(BatchRenderer.readManifest(manifest));
+			System.out.println(result);
+			if (result.getFailed() > 0)
+			{
+				System.exit(1);
+			}
+		}
+		else if (i < args.length)
+		{
+			File directory = new File(args[i]);
+			if (i + 1 < args.length)
+			{
+				for (i++; i < args.length; i++)
+				{
+					String name = args[i];
+					File csvFile = new File(directory, name + ".csv");
+					File templateFile = new File(directory, name + "Template.xls");
+					File outputFile = new File(directory, name + ".xls");
+					File pdfFile = new File(name + ".pdf");
+					TemplateProcessor tp = new TemplateProcessor(templateFile);
+					DelimitedFileReader data = new DelimitedFileReader(csvFile, "\t");
+					try
+					{
+						if (!formats.contains(OutputFormat.pdf))
+						{
+							tp.process(data, outputFile);
+						}
+						else if (!formats.contains(OutputFormat.xls))
+						{
+							tp.setOutputFormat(OutputFormat.pdf);
+							tp.process(data, pdfFile);
+						}
+						else
+						{
+							// one workbook written as .xls and rendered as PDF
+							tp.process(data, outputFile, pdfFile);
+						}
+					}
+					finally
+					{
+						data.close();
+					}
+				}
+			}
+			else
+			{
+				logger.error("Missing Template name argument");
+				usage();
+			}
+		}
+		else
+		{
+			logger.error("Missing <directory> argument");
+			usage();
+		}
+
+		logger.debug("Done");
+	}
+
+	private static void usage()
+	{
+		System.out.println("Usage: Main [<options>] <directory> <Name1> [<Name2> ...]");
+		System.out.println("       Main [<options>] --batch <manifest>");
+		System.out.println("");
+		System.out.println("    <directory> - location of <NameN>Template.xls template files\n");
+		System.out.println("                  and corresponding tab-separated data files (<NameN>.csv)");
+		System.out.println("    <manifest>  - tab-separated file of template workbook, data file and output file");
+		System.out.println("                  without extension per line, relative to the manifest directory");
+		System.out.println("");
+		System.out.println("    --xls-only    write .xls files only");
+		System.out.println("    --pdf-only    write .pdf files only");
+		System.out.println("    --threads <N> number of documents rendered at the same time in batch mode,");
+		System.out.println("                  the number of processors by default");
+		System.exit(2);
+	}
+}
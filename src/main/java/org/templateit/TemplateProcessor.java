@@ -1,759 +1,1029 @@
-/*
- * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.templateit;
-
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
-
-import org.apache.log4j.Logger;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFConditionalFormatting;
-import org.apache.poi.hssf.usermodel.HSSFPrintSetup;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFSheetConditionalFormatting;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.hssf.util.CellRangeAddress;
-import org.apache.poi.hssf.util.PaneInformation;
-import org.templateit.util.FormulaUtil;
-/**
- * Template processor - the core class of the library.
- * <br>
- * Example:
- * <pre>
- *    TemplateProcessor tp = new TemplateProcessor(new File("MyTemplate.xls"));
- *    Iterator<String[]> data1 = new DelimitedFileReader(new File("MyData1.csv"));
- *    Iterator<String[]> data1 = new DelimitedFileReader(new File("MyData2.csv"));
- *    // Keep Sheet2. This way Sheet2 will remain untouched in the output document   
- *    tp.keepSheet("Sheet2");
- *    // You can call process multiple times on the same template
- *    // with different data, to generate different files
- *    tp.process(data1,new File("MyResult1.xls"));
- *    tp.process(data2,new File("MyResult2.xls"));
- * </pre>
- * 
- * @author Dmitriy Kumshayev
- *
- */
-public class TemplateProcessor
-{
-
-	private static final Logger logger = Logger.getLogger(TemplateProcessor.class);
-
-	private final ByteArrayOutputStream bos;
-	private final Set<String> protectedSheetNames;
-
-	private HSSFWorkbook workbook;
-	private List<String> sheetNames;
-	protected TemplateWorkbook tWorkbook;
-
-	public TemplateProcessor(File templateWorkbook) throws IOException
-	{
-		this(new BufferedInputStream(new FileInputStream(templateWorkbook)),true);
-	}
-
-	public TemplateProcessor(InputStream templateWorkbookStream) throws IOException
-	{
-		this(templateWorkbookStream,false);
-	}
-	
-	public TemplateProcessor(InputStream templateWorkbookStream, boolean close)
-	throws IOException
-	{
-		try
-		{
-			bos = toByteArrayOutputStream(templateWorkbookStream);
-			protectedSheetNames = new HashSet<String>();
-		}
-		finally
-		{
-			if( close )
-			{
-				try{ templateWorkbookStream.close(); } catch (Exception ignore) {}
-			}
-		}
-	}
-	
-	public void process(Iterator<String[]> di, File outputWorkbook)
-			throws IOException
-	{
-		FileOutputStream out = new FileOutputStream(outputWorkbook);
-		try
-		{
-			process(di, out);
-		}
-		finally
-		{
-			try
-			{
-				out.close();
-			}
-			catch (Exception ignore)
-			{
-			}
-		}
-	}
-
-	public void process(Iterator<String[]> di, OutputStream out)
-			throws IOException
-	{
-		// Parse workbook
-		ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
-		workbook = new HSSFWorkbook(bis);
-		
-		// prepare processing
-		sheetNames = renameTemplateSheets();
-		tWorkbook = new WorkbookParser(workbook).parse(protectedSheetNames);
-		
-		processData(di);
-		
-		// finalize processing
-		removeTemplateSheets();
-		workbook.write(out);
-	}
-
-	/**
-	 * Excludes the specified sheet from being considered as a template sheet.
-	 * Keeps the sheet in the generated workbook after the processing.
-	 *  
-	 * @param sheetName
-	 */
-	public void keepSheet(String sheetName)
-	{
-		protectedSheetNames.add(sheetName);
-	}
-
-	private enum Operation
-	{
-		invalid, empty, sheet, select, data, end, template
-	}
-
-	private void processData(Iterator<String[]> di)
-	{
-		while (di.hasNext())
-		{
-			String[] data = di.next();
-			while( data != null )
-			{
-				Operation op = parseOperation(data);
-				switch (op)
-				{
-					case sheet:
-					{
-						String templateSheetName = data[1] + SUFFIX;
-						String newSheetName = data[1];
-						if (data.length>2 && data[2] != null && data[2].length() > 0)
-						{
-							newSheetName = data[2];
-						}
-						data = generateNewSheet(templateSheetName, newSheetName, di);
-					}
-					break;
-					case empty:
-					{
-		
-					}
-					default:
-					{
-						throw new RuntimeException("unexpected operation (only #sheet is allowed here)");
-					}
-				}
-			}
-		}
-	}
-
-	public String [] generateNewSheet(String templateSheetName, String newSheetName,
-			Iterator<String[]> di)
-	{
-		TemplateSheet tSheet = tWorkbook.getTemplateSheet(templateSheetName);
-		if (tSheet != null)
-		{
-			return new SheetGenerator(tSheet, newSheetName).generateNewSheet(di);
-		}
-		else
-		{
-			logger.warn("Sheet " + templateSheetName + " not found.");
-			return null;
-		}
-	}
-
-	private static String extractTemplateName(String[] data)
-	{
-		String op = data[0];
-		if (data != null && data.length > 0 && OpMatcher.matchTemplateName(op))
-		{
-			return op;
-		}
-		return null;
-	}
-	
-	private static Operation parseOperation(String[] data)
-	{
-		String op = data[0];
-		if (data == null || data.length == 0)
-		{
-			return Operation.empty;
-		}
-		if (op != null && op.equals("#sheet") && data[1] != null
-				&& data[1].length() > 0)
-		{
-			return Operation.sheet;
-		}
-		if (OpMatcher.matchTemplateName(op) )
-		{
-			return Operation.data;
-		}
-		if (op != null && op.equals("#end"))
-		{
-			return Operation.end;
-		}
-		if (op != null && op.equals("#select"))
-		{
-			return Operation.select;
-		}
-		if (op != null && op.equals("#template"))
-		{
-			return Operation.template;
-		}
-
-		return Operation.invalid;
-	}
-
-	private final String SUFFIX = "Template";
-
-	/**
-	 * Rename all sheets in the template workbook. Add a SUFFIX to each name.
-	 * 
-	 * @return list of renamed sheet names
-	 */
-	private List<String> renameTemplateSheets()
-	{
-		List<String> names = new LinkedList<String>();
-		for (int i = 0; i != workbook.getNumberOfSheets(); i++)
-		{
-			String name = workbook.getSheetName(i);
-
-			// exclude protected sheets from processing
-			if( !protectedSheetNames.contains(name) )
-			{
-				name += SUFFIX;
-				workbook.setSheetName(i, name);
-				names.add(name);
-			}
-			
-		}
-		return names;
-	}
-
-	private void removeTemplateSheets()
-	{
-		for (String sheetName : sheetNames)
-		{
-			workbook.removeSheetAt(workbook.getSheetIndex(sheetName));
-		}
-		sheetNames.clear();
-	}
-
-	private class SheetGenerator
-	{
-		private final TemplateSheet tSheet;
-
-		private final HSSFSheet newSheet;
-		
-		private int outRow = 0; 
-
-		private SheetGenerator(TemplateSheet tSheet, String newSheetName)
-		{
-			this.tSheet = tSheet;
-			this.newSheet = workbook.createSheet(newSheetName);
-		}
-
-		private String [] generateNewSheet(Iterator<String[]> di)
-		{
-			copySheetSettings();
-			copyPaneInformation();
-			copyConditionalFormatting();
-			copyPrintSetup();
-			
-			String ret[] = null;
-			for( boolean end=false; !end && di.hasNext(); )
-			{
-				String data[] = di.next();
-				Operation op = parseOperation(data);
-				switch (op)
-				{
-					case select:	{ selectList(data);				}	break;
-					case data:    { processTemplate(data);	}	break;
-					case empty:		{ ;/* Skip */							}	break;
-					case sheet:		{ ret = data; end = true;	}	break;
-					case end:			{	end = true;							}	break;
-					case template:	{	createDynamicTemplate(data);} 	break;
-					case invalid:	{	logger.warn("invalid operation");	}
-				}
-			}
-			return ret;
-		}
-
-		private void createDynamicTemplate(String[] data)
-		{
-			String name = data[1];
-			int nr = Integer.parseInt(data[2]);
-			
-			int nc = (data.length-3)/nr;
-			List<NamedStyle> styles = new ArrayList<NamedStyle>(nc);
-			for( int i=3; i<data.length; i++ )
-			{
-				String styleName = data[i];
-				NamedStyle style = tSheet.getStyle(styleName);
-				if( style == null )
-				{
-					throw new RuntimeException("Style '"+styleName+"' not found");
-				}
-				styles.add(style);
-			}
-			tSheet.addDynamicTemplate(new DynamicTemplate(name,tSheet.sheet(),nr,styles));
-		}
-
-		private void processTemplate(String[] data)
-		{
-			String templateName = extractTemplateName(data);
-			Template t = tSheet.getTemplate(templateName);
-			if( t != null)
-			{
-				int startRow = outRow;
-				int height = t.height();
-				for( int r = 0; r < height; r++,outRow++)
-				{
-					HSSFRow newRow = createNewRow(t,r,outRow);
-					if( newRow != null )
-					{
-						copyTemplateRow(t,r,newRow,outRow, data);
-					}
-				}
-				if (t instanceof StaticTemplate)
-				{
-					copyMergeRegions((StaticTemplate) t, startRow);
-				}
-			}
-		}
-
-		private void selectList(String[] data)
-		{
-			if( data.length>1 && data[1]!= null && data[1].trim().length()>0 )
-			{
-				String templateName = data[1];
-				StaticTemplate t = tSheet.getStaticTemplate(templateName);
-				if( t!= null )
-				{
-					List<Integer> selectList = new ArrayList<Integer>(data.length-2);
-					try
-					{
-						for( int i=2; i<data.length; i++)
-						{
-							selectList.add(Integer.valueOf(data[i])-1);
-						}
-					}
-					catch (NumberFormatException e) 
-					{
-						logger.warn("Invalid #select list: "+Arrays.asList(data));
-						selectList.clear();
-					}
-					
-					if( selectList.size()>0)
-					{
-						t.setSelectList(selectList);
-					}
-					else
-					{
-						t.setSelectList(null);
-					}
-				}
-			}
-			else
-			{
-				logger.warn("No template name in #select");
-			}
-		}
-
-		
-		public HSSFRow createNewRow(Template t,int r, int rOut)
-		{
-			HSSFRow newRow = newSheet.createRow(rOut);
-			newRow.setHeight((short)t.getRowHeight(r));
-			if (t.isRowBroken(r))
-			{
-				newSheet.setRowBreak(rOut);
-			}
-			return newRow;
-		}
-		
-		private void copyTemplateRow(Template t, int r, HSSFRow newRow,
-				int currentRow, String[] data)
-		{
-			int currentCol = 0;
-			int width = t.width();
-			for (int c = 0; c < width; c++, currentCol++)
-			{
-				copyTemplateCell(t, r, c, newRow, currentRow,currentCol, data);
-			}
-		}
-
-		private void copyTemplateCell(Template t, int r, int c, HSSFRow newRow,
-				int currentRow, int currentCol, String[] data)
-		{
-			HSSFCell tCell = t.getCell(r, c);
-			if( tCell != null )
-			{
-				HSSFCell newCell = newRow.createCell(currentCol);
-				int cellType = tCell.getCellType();
-				newCell.setCellType(cellType);
-				newCell.setCellStyle(tCell.getCellStyle());
-				
-				switch (cellType)
-				{
-					case HSSFCell.CELL_TYPE_BOOLEAN:
-					{
-						newCell.setCellValue(tCell.getBooleanCellValue());
-					}
-					break;
-					case HSSFCell.CELL_TYPE_FORMULA:
-					{
-						String newFormula = recalculateRelativeRefs(t, r, c, currentRow,
-								currentCol);
-						newCell.setCellFormula(newFormula);
-					}
-					break;
-					case HSSFCell.CELL_TYPE_NUMERIC:
-					{
-						newCell.setCellValue(tCell.getNumericCellValue());
-					}
-					break;
-					case HSSFCell.CELL_TYPE_STRING:
-					{
-						newCell.setCellValue(tCell.getRichStringCellValue());
-					}
-					break;
-				}
-				
-				substituteParameters(t, r, c, currentRow, currentCol, newCell, data);
-				
-			}
-		}
-
-		/**
-		 * Offset all relative references to correspond the new location of the cell.
-		 * 
-		 * @param tCell
-		 * @param originalRow - relative row number within given template
-		 * @param originalCol - relative column number within given template
-		 * @param newRow - new/target absolute row number of the cell 
-		 * @param newCol - new/target absolute row number of the cell
-		 * 
-		 * @return recalculated formula
-		 */
-		private String recalculateRelativeRefs(Template t, int originalRow, int originalCol,
-				int newRow, int newCol)
-		{
-			HSSFCell tCell = t.getCell(originalRow, originalCol);
-			String formula = tCell.getCellFormula();
-			Reference absRef = t.absoluteReference(originalRow,originalCol);
-			int roff = newRow - absRef.row();
-			int coff = newCol - absRef.column();
-			String newFormula = FormulaUtil.offsetRelativeReferences(workbook, formula, roff, coff);
-			
-			if (logger.isTraceEnabled())
-			{
-				logger.trace("Formula @("+originalRow+","+originalCol+") recalculated:: " + formula + " ===("
-						+ roff + "," + coff + ")===> " + newFormula+" @("+newRow+","+newCol+")");
-			}
-			return newFormula;
-		}
-
-		private void substituteParameters(Template t, int r, int c, int outRow,
-				int outCol, HSSFCell newCell, String[] data)
-		{
-			int idx = t.getParameterIndex(r,c);
-			if( idx > 0)
-			{
-				String value = idx<data.length&&data[idx] != null ? data[idx] : "";
-				try
-				{
-					setCellValue(newCell, value);
-				}
-				catch (Exception e)
-				{
-					logger.warn("Failed to set value '" + value + "' to cell("
-							+ outRow + "," + outRow + ")", e);
-				}
-			}
-		}
-
-		@SuppressWarnings("deprecation")
-		private void setCellValue(HSSFCell newCell, String value)
-		{
-			Double dval = tryToParseAsDouble(value);
-			if( dval != null )
-			{
-				newCell.setCellValue(dval);
-			}
-			else
-			{
-				Date date = tryToParseAsDate(value);
-				if (date != null)
-				{
-					newCell.setCellValue(date);
-				}
-				else
-				{
-					newCell.setCellValue(value);
-				}
-			}
-		}
-
-		private void copyMergeRegions(StaticTemplate t, int absTemplateOutputStartRow)
-		{
-			for (MergeRegion m : t.getMergeRegions())
-			{
-				if (t.contains(m.start()) && (m.end().row() != Reference.INFINITY)
-						&& (m.end().column() != Reference.INFINITY))
-				{
-					int vTopOffset = m.start().row() - t.start().row();
-					int mh = m.end().row() - m.start().row();
-
-					int firstRow = absTemplateOutputStartRow + vTopOffset;
-					int lastRow = firstRow+mh;
-					
-					int w = t.width();
-					int firstCol=w;
-					int lastCol=0;
-					for (int c=0; c < w ; c++)
-					{
-						if(t.absoluteColumn(c) >= m.start().column() && 
-								t.absoluteColumn(c) <= m.end().column() )
-						{
-							firstCol = Math.min(firstCol, c);
-							lastCol = Math.max(lastCol, c);
-						}
-					}
-					newSheet.addMergedRegion(new CellRangeAddress(firstRow,lastRow,firstCol,lastCol));
-				}
-			}
-		}
-
-		private void copyConditionalFormatting()
-		{
-			HSSFSheet sheet = tSheet.sheet();
-			HSSFSheetConditionalFormatting sheetCf = sheet
-					.getSheetConditionalFormatting();
-			HSSFSheetConditionalFormatting newSheetcf = newSheet
-					.getSheetConditionalFormatting();
-
-			int n = sheetCf.getNumConditionalFormattings();
-			for (int i = 0; i != n; i++)
-			{
-				HSSFConditionalFormatting cf = sheetCf.getConditionalFormattingAt(i);
-				if (cf != null)
-				{
-					newSheetcf.addConditionalFormatting(cf);
-				}
-			}
-		}
-
-		private void copySheetSettings()
-		{
-			HSSFSheet sheet = tSheet.sheet();
-			newSheet.setDisplayFormulas(sheet.isDisplayFormulas());
-			newSheet.setDisplayGridlines(sheet.isDisplayGridlines());
-			newSheet.setDisplayRowColHeadings(sheet.isDisplayRowColHeadings());
-			newSheet.setGridsPrinted(sheet.isGridsPrinted());
-			newSheet.setPrintGridlines(sheet.isPrintGridlines());
-			
-			int fc = tSheet.getFirstColumn();
-			int lc = tSheet.getLastColumn();
-			
-			for (int c = fc; c <= lc; c++)
-			{
-				int nc = c - fc;
-				newSheet.setColumnWidth(nc, sheet.getColumnWidth(c));
-				if (sheet.isColumnBroken((short) c))
-				{
-					newSheet.setColumnBreak((short) nc);
-				}
-				if (sheet.isColumnHidden(c))
-				{
-					newSheet.setColumnHidden(nc, true);
-				}
-			}
-		}
-
-		private void copyPaneInformation()
-		{
-			PaneInformation paneInfo = tSheet.sheet().getPaneInformation();
-			if (paneInfo != null)
-			{
-				short vSplitPos = paneInfo.getVerticalSplitPosition();
-				short hSplitPos = paneInfo.getHorizontalSplitPosition();
-				short vSplitLeftColumn = paneInfo.getVerticalSplitLeftColumn();
-				short hSplitTopRow = paneInfo.getHorizontalSplitTopRow();
-				byte activePane = paneInfo.getActivePane();
-				if (paneInfo.isFreezePane())
-				{
-					newSheet.createFreezePane(vSplitPos, hSplitPos, vSplitLeftColumn,
-							hSplitTopRow);
-				}
-				else
-				{
-					newSheet.createSplitPane(vSplitPos, hSplitPos, vSplitLeftColumn,
-							hSplitTopRow, activePane);
-				}
-			}
-		}
-
-		private void copyPrintSetup()
-		{
-			HSSFPrintSetup ps = tSheet.sheet().getPrintSetup();
-			if( ps != null )
-			{
-				// Have to surround the code below with try/catch block
-				// since POI throws NPE in cases when the sheet
-				// does not contain Print Setup Record.
-				// POI also does not provide any means to determine if
-				// PrintSetupRecord is present except throwing NPE.
-				// TODO: patch POI to fix NPE at HSSFPrintSetup.getXXX methods
-				
-				try
-				{
-					short nCopies = ps.getCopies();
-					boolean draft = ps.getDraft();
-					short fitHeight = ps.getFitHeight();
-					short fitWidth = ps.getFitWidth();
-					double footerMargin = ps.getFooterMargin();
-					double headerMargin = ps.getHeaderMargin();
-					short hResolution = ps.getHResolution();
-					boolean landscape = ps.getLandscape();
-					boolean leftToRight = ps.getLeftToRight();
-					boolean noColor = ps.getNoColor();
-					boolean noOrientation = ps.getNoOrientation();
-					boolean notes = ps.getNotes();
-					short options = ps.getOptions();
-					short pageStart = ps.getPageStart();
-					short paperSize = ps.getPaperSize();
-					short scale = ps.getScale();
-					boolean usePage = ps.getUsePage();
-					boolean validSettings = ps.getValidSettings();
-					short vResolution = ps.getVResolution();
-					
-					HSSFPrintSetup newPs = newSheet.getPrintSetup();
-					newPs.setCopies(nCopies);
-					newPs.setDraft(draft);
-					newPs.setFitHeight(fitHeight);
-					newPs.setFitWidth(fitWidth);
-					newPs.setFooterMargin(footerMargin);
-					newPs.setHeaderMargin(headerMargin);
-					newPs.setHResolution(hResolution);
-					newPs.setLandscape(landscape);
-					newPs.setLeftToRight(leftToRight);
-					newPs.setNoColor(noColor);
-					newPs.setNoOrientation(noOrientation);
-					newPs.setNotes(notes);
-					newPs.setOptions(options);
-					newPs.setPageStart(pageStart);
-					newPs.setPaperSize(paperSize);
-					newPs.setScale(scale);
-					newPs.setUsePage(usePage);
-					newPs.setValidSettings(validSettings);
-					newPs.setVResolution(vResolution);
-				}
-				catch (NullPointerException e) 
-				{
-					if( logger.isTraceEnabled())
-					{
-						logger.warn("Print Setup information is missing");
-					}
-				}
-			}
-		}
-	}
-	
-	private static Double tryToParseAsDouble(String value)
-	{
-		try
-		{
-			return Double.parseDouble(value);
-		}
-		catch (NumberFormatException e)
-		{
-			return null;
-		}
-	}
-	
-	private static Date tryToParseAsDate(String value)
-	{
-		for (DateFormat df : new DateFormat[]
-		{
-				new SimpleDateFormat("MM/dd/yyyy HH:mm:ss"),
-				new SimpleDateFormat("MM/dd/yyyy HH:mm"),
-				new SimpleDateFormat("MM/dd/yyyy"),
-				new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss"),
-				new SimpleDateFormat("dd-MMM-yyyy HH:mm"),
-				new SimpleDateFormat("dd-MMM-yyyy")
-		})
-		{
-			try
-			{
-				return df.parse(value);
-			}
-			catch (ParseException pe)
-			{
-			}
-		}
-		return null;
-	}
-	
-	private static ByteArrayOutputStream toByteArrayOutputStream(InputStream is) throws IOException
-	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		byte[] b = new byte[4096];
-		int off = 0;
-		int len = 0;
-		while( (len = is.read(b, off, b.length)) != -1 )
-		{
-			bos.write(b, off, len);
-		}
-		bos.flush();
-		return bos;
-	}
-
-}
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRichTextString;
+import org.templateit.util.PipelinedIterator;
+import org.templateit.util.ValueParser;
+/**
+ * Template processor - the core class of the library.
+ * <br>
+ * Example:
+ * <pre>
+ *    TemplateProcessor tp = new TemplateProcessor(new File("MyTemplate.xls"));
+ *    Iterator<String[]> data1 = new DelimitedFileReader(new File("MyData1.csv"));
+ *    Iterator<String[]> data1 = new DelimitedFileReader(new File("MyData2.csv"));
+ *    // Rows may also hold typed values: numbers, booleans and dates
+ *    List<Object[]> data3 = new ArrayList<Object[]>();
+ *    data3.add(new Object[] {"item", "Item 1", 10.5, LocalDate.of(2009, 1, 12)});
+ *    // Keep Sheet2. This way Sheet2 will remain untouched in the output document   
+ *    tp.keepSheet("Sheet2");
+ *    // You can call process multiple times on the same template
+ *    // with different data, to generate different files
+ *    tp.process(data1,new File("MyResult1.xls"));
+ *    tp.process(data2,new File("MyResult2.xls"));
+ *    tp.process(data3.iterator(),new File("MyResult3.xls"));
+ * </pre>
+ * <br>
+ * The template is parsed once, on the first call of process.
+ * All state of a process call is kept in a context of its own,
+ * so a single processor can serve concurrent calls from several threads.
+ * 
+ * @author Dmitriy Kumshayev
+ *
+ */
+public class TemplateProcessor
+{
+
+	private static final Logger logger = Logger.getLogger(TemplateProcessor.class);
+
+	private final ByteArrayOutputStream bos;
+	private final Set<String> protectedSheetNames;
+	private CompiledTemplate compiledTemplate;
+	private boolean lazyParsing = false;
+	private int pipelineDepth = 0;
+	private boolean streamingOutput = false;
+	private OutputFormat outputFormat = OutputFormat.xls;
+	private Set<String> repeatedTemplates = Collections.emptySet();
+
+	public TemplateProcessor(File templateWorkbook) throws IOException
+	{
+		this(new BufferedInputStream(new FileInputStream(templateWorkbook)),true);
+	}
+
+	public TemplateProcessor(InputStream templateWorkbookStream) throws IOException
+	{
+		this(templateWorkbookStream,false);
+	}
+	
+	public TemplateProcessor(InputStream templateWorkbookStream, boolean close)
+	throws IOException
+	{
+		try
+		{
+			bos = toByteArrayOutputStream(templateWorkbookStream);
+			protectedSheetNames = new HashSet<String>();
+		}
+		finally
+		{
+			if( close )
+			{
+				try{ templateWorkbookStream.close(); } catch (Exception ignore) {}
+			}
+		}
+	}
+
+	/**
+	 * Creates a processor for an already compiled template.
+	 * Sheets to keep are defined when the template is compiled.
+	 */
+	public TemplateProcessor(CompiledTemplate compiledTemplate)
+	{
+		this.bos = null;
+		this.protectedSheetNames = null;
+		this.compiledTemplate = compiledTemplate;
+	}
+	
+	public void process(Iterator<? extends Object[]> di, File outputWorkbook)
+			throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(outputWorkbook);
+		try
+		{
+			process(di, out);
+		}
+		finally
+		{
+			try
+			{
+				out.close();
+			}
+			catch (Exception ignore)
+			{
+			}
+		}
+	}
+
+	public void process(Iterator<? extends Object[]> di, OutputStream out)
+			throws IOException
+	{
+		process(di, open(out));
+	}
+
+	/**
+	 * Generates the workbook once, writes it to the .xls file and renders it 
+	 * to the PDF file. The output format of the processor is not used.
+	 */
+	public void process(Iterator<? extends Object[]> di, File outputWorkbook, File outputPdf)
+			throws IOException
+	{
+		FileOutputStream xlsOut = new FileOutputStream(outputWorkbook);
+		try
+		{
+			FileOutputStream pdfOut = new FileOutputStream(outputPdf);
+			try
+			{
+				process(di, new RowSink(new RenderContext(getCompiledTemplate(), getRepeatedTemplates(),
+						xlsOut, pdfOut)));
+			}
+			finally
+			{
+				try
+				{
+					pdfOut.close();
+				}
+				catch (Exception ignore)
+				{
+				}
+			}
+		}
+		finally
+		{
+			try
+			{
+				xlsOut.close();
+			}
+			catch (Exception ignore)
+			{
+			}
+		}
+	}
+
+	private void process(Iterator<? extends Object[]> di, RowSink sink) throws IOException
+	{
+		int depth = getPipelineDepth();
+		if( depth > 0 )
+		{
+			PipelinedIterator<Object[]> pipeline = new PipelinedIterator<Object[]>(di, depth);
+			try
+			{
+				push(pipeline, sink);
+			}
+			finally
+			{
+				pipeline.close();
+			}
+		}
+		else
+		{
+			push(di, sink);
+		}
+	}
+
+	private static void push(Iterator<? extends Object[]> di, RowSink sink) throws IOException
+	{
+		try
+		{
+			while (di.hasNext())
+			{
+				sink.accept(di.next());
+			}
+			sink.end();
+		}
+		finally
+		{
+			sink.close();
+		}
+	}
+
+	/**
+	 * Starts a workbook generated from rows pushed to the returned sink
+	 * instead of rows pulled from an iterator. The workbook is written
+	 * to the stream by {@link RowSink#end()}, the stream is not closed.
+	 * A sink abandoned before its end is closed by {@link RowSink#close()}.
+	 * <pre>
+	 *    RowSink sink = tp.open(out);
+	 *    sink.beginSheet("PriceList", "January");
+	 *    sink.row("header", "January 2009");
+	 *    sink.row("item", "Item 1", 10.5);
+	 *    sink.end();
+	 * </pre>
+	 */
+	public RowSink open(OutputStream out) throws IOException
+	{
+		return new RowSink(new RenderContext(getCompiledTemplate(), getOutputFormat(), isStreamingOutput(),
+				getRepeatedTemplates(), out));
+	}
+
+	/**
+	 * Returns the compiled template. The template workbook is parsed 
+	 * on the first call only and reused by all subsequent calls.
+	 */
+	public synchronized CompiledTemplate getCompiledTemplate() throws IOException
+	{
+		if( compiledTemplate == null )
+		{
+			compiledTemplate = CompiledTemplate.compile(
+					new ByteArrayInputStream(bos.toByteArray()), protectedSheetNames, lazyParsing);
+		}
+		return compiledTemplate;
+	}
+
+	/**
+	 * Excludes the specified sheet from being considered as a template sheet.
+	 * Keeps the sheet in the generated workbook after the processing.
+	 *  
+	 * @param sheetName
+	 */
+	public synchronized void keepSheet(String sheetName)
+	{
+		if( protectedSheetNames == null )
+		{
+			throw new IllegalStateException("Sheets to keep are defined when the template is compiled");
+		}
+		if( protectedSheetNames.add(sheetName) )
+		{
+			compiledTemplate = null;
+		}
+	}
+
+	/**
+	 * Parse each template sheet when the data stream uses it for the first time
+	 * instead of parsing all template sheets before the processing. 
+	 * Template sheets the data stream does not use are never parsed.
+	 * 
+	 * @see CompiledTemplate#compile(InputStream, Set, boolean)
+	 */
+	public synchronized void setLazyParsing(boolean lazyParsing)
+	{
+		if( protectedSheetNames == null )
+		{
+			throw new IllegalStateException("Lazy parsing is defined when the template is compiled");
+		}
+		if( this.lazyParsing != lazyParsing )
+		{
+			this.lazyParsing = lazyParsing;
+			compiledTemplate = null;
+		}
+	}
+
+	/**
+	 * Read the rows on a thread of their own while the sheets are generated,
+	 * so reading and decoding the input overlap with building the cells.
+	 * The rows read ahead are kept in a queue of the given depth.
+	 * An exception thrown by the row iterator is thrown by process.
+	 * 
+	 * @param depth - number of rows read ahead, 0 (the default) reads the rows
+	 *   on the thread calling process
+	 * @see PipelinedIterator
+	 */
+	public synchronized void setPipelineDepth(int depth)
+	{
+		if( depth < 0 )
+		{
+			throw new IllegalArgumentException("Pipeline depth " + depth);
+		}
+		this.pipelineDepth = depth;
+	}
+
+	public synchronized int getPipelineDepth()
+	{
+		return pipelineDepth;
+	}
+
+	/**
+	 * Write the rows of the generated sheets to temporary files as they are generated,
+	 * in blocks of 32 rows, instead of keeping all of them in memory until the workbook 
+	 * is written. Memory used by a process call does not grow with the number of rows,
+	 * only the shared strings, the merged cells and the other sheet records are kept.
+	 * The written workbook is the same as without streaming. Applies to .xls output, 
+	 * .xlsx output is always streamed, PDF output is rendered from the rows in memory.
+	 * 
+	 * @see org.apache.poi.hssf.usermodel.HSSFStreamingWorkbook
+	 */
+	public synchronized void setStreamingOutput(boolean streamingOutput)
+	{
+		this.streamingOutput = streamingOutput;
+	}
+
+	public synchronized boolean isStreamingOutput()
+	{
+		return streamingOutput;
+	}
+
+	/**
+	 * Format of the generated workbooks, .xls by default. The template stays an .xls workbook.
+	 * An .xlsx workbook is written to the output stream while its rows are generated,
+	 * only a window of the last rows is kept in memory, and its sheets may have more 
+	 * than 65,536 rows. Conditional formatting of the template sheets is not written to .xlsx.
+	 * A PDF document is rendered by {@link PdfWriter} from the generated workbook in memory,
+	 * without writing and parsing an .xls file.
+	 */
+	public synchronized void setOutputFormat(OutputFormat outputFormat)
+	{
+		if( outputFormat == null )
+		{
+			throw new IllegalArgumentException("Output format is null");
+		}
+		this.outputFormat = outputFormat;
+	}
+
+	public synchronized OutputFormat getOutputFormat()
+	{
+		return outputFormat;
+	}
+
+	/**
+	 * Templates repeated at the top of a continued sheet. A generated sheet which 
+	 * would have more rows than the output format allows, 65,536 for .xls and PDF,
+	 * is continued on a new sheet with the settings of the same template sheet, 
+	 * the sheet <em>Name</em> is continued on <em>Name (2)</em>, <em>Name (3)</em> and so on.
+	 * The last rows generated for each of the given templates, column headers for example,
+	 * are generated again at the top of the new sheet in the order the templates were 
+	 * first used. Relative references of formulas are not carried over to the new sheet.
+	 * <br>
+	 * The names of the continuation sheets are taken: a later #sheet asking for one of them
+	 * fails. Names of continued sheets should not end with a number in parentheses.
+	 * 
+	 * @param templateNames - names of the templates, none by default
+	 */
+	public synchronized void setRepeatedTemplates(String... templateNames)
+	{
+		this.repeatedTemplates = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(templateNames)));
+	}
+
+	public synchronized Set<String> getRepeatedTemplates()
+	{
+		return repeatedTemplates;
+	}
+
+	private enum Operation
+	{
+		invalid, empty, sheet, select, data, end, template
+	}
+
+	/**
+	 * Receiver of the rows of a generated workbook, the push counterpart of
+	 * the row iterator passed to process. Rows are the same as the rows of
+	 * the iterator: {@link #accept(Object[])} takes a row as it is,
+	 * the other methods make the row of an operation from their arguments.
+	 * <br>
+	 * A sink generates a single workbook and is used by a single thread.
+	 */
+	public static class RowSink implements Closeable
+	{
+		private final RenderContext ctx;
+
+		/** generator of the current sheet, null outside of a sheet */
+		private SheetGenerator generator;
+
+		private boolean ended = false;
+
+		private RowSink(RenderContext ctx)
+		{
+			this.ctx = ctx;
+		}
+
+		/**
+		 * Takes a row as the row iterator returns it: an operation
+		 * (#sheet, #select, #template, #end) or the values of a template.
+		 */
+		public void accept(Object[] data)
+		{
+			checkNotEnded();
+			if( data == null )
+			{
+				return;
+			}
+			Operation op = parseOperation(data);
+			if( op == Operation.sheet )
+			{
+				beginSheet(text(data, 1), text(data, 2));
+				return;
+			}
+			if( generator == null )
+			{
+				throw new RuntimeException("unexpected operation (only #sheet is allowed here)");
+			}
+			switch (op)
+			{
+				case select:		{	generator.selectList(data);					}	break;
+				case data:			{	generator.processTemplate(data);			}	break;
+				case end:			{	generator = null;							}	break;
+				case template:		{	generator.createDynamicTemplate(data);		}	break;
+				case invalid:		{	logger.warn("invalid operation");			}	break;
+				default:			{	;/* Skip */									}
+			}
+		}
+
+		/**
+		 * Starts a new sheet generated from a template sheet, ends the current one.
+		 * 
+		 * @param template - name of the template sheet without the template suffix
+		 * @param sheetName - name of the new sheet, the template name if null or empty
+		 */
+		public void beginSheet(String template, String sheetName)
+		{
+			checkNotEnded();
+			String templateSheetName = template + CompiledTemplate.SUFFIX;
+			TemplateSheet tSheet = ctx.getTemplateSheet(templateSheetName);
+			if( tSheet != null )
+			{
+				String newSheetName = sheetName != null && sheetName.length() > 0 ? sheetName : template;
+				String continued = ctx.getContinuedSheet(newSheetName);
+				if( continued != null )
+				{
+					throw new IllegalArgumentException("Sheet name '" + newSheetName 
+							+ "' is taken by the continuation of the full sheet '" + continued + "'");
+				}
+				generator = new SheetGenerator(ctx, tSheet, newSheetName);
+			}
+			else
+			{
+				logger.warn("Sheet " + templateSheetName + " not found.");
+				generator = null;
+			}
+		}
+
+		/**
+		 * Adds the rows of a template of the current sheet.
+		 * 
+		 * @param values - values of the template parameters in the order of declaration
+		 */
+		public void row(String templateName, Object... values)
+		{
+			Object[] data = new Object[values.length + 1];
+			data[0] = templateName;
+			System.arraycopy(values, 0, data, 1, values.length);
+			accept(data);
+		}
+
+		/**
+		 * Selects the rows of a static template to be generated, as #select does.
+		 * 
+		 * @param rows - numbers of the rows starting from 1, no numbers select all rows
+		 */
+		public void select(String templateName, int... rows)
+		{
+			Object[] data = new Object[rows.length + 2];
+			data[0] = "#select";
+			data[1] = templateName;
+			for (int i = 0; i < rows.length; i++)
+			{
+				data[i + 2] = rows[i];
+			}
+			accept(data);
+		}
+
+		/**
+		 * Defines a dynamic template of the current sheet, as #template does.
+		 */
+		public void template(String name, int rows, String... styles)
+		{
+			Object[] data = new Object[styles.length + 3];
+			data[0] = "#template";
+			data[1] = name;
+			data[2] = rows;
+			System.arraycopy(styles, 0, data, 3, styles.length);
+			accept(data);
+		}
+
+		/**
+		 * Ends the current sheet, as #end does.
+		 */
+		public void endSheet()
+		{
+			checkNotEnded();
+			generator = null;
+		}
+
+		/**
+		 * Writes the generated workbook to the output stream.
+		 * The sink takes no rows after that.
+		 */
+		public void end() throws IOException
+		{
+			checkNotEnded();
+			ended = true;
+			generator = null;
+			try
+			{
+				ctx.backend().write();
+			}
+			finally
+			{
+				ctx.close();
+			}
+		}
+
+		/**
+		 * Abandons the workbook if it is not written yet and releases
+		 * its temporary files. Does nothing after {@link #end()}.
+		 */
+		public void close()
+		{
+			if( !ended )
+			{
+				ended = true;
+				generator = null;
+				ctx.close();
+			}
+		}
+
+		private void checkNotEnded()
+		{
+			if( ended )
+			{
+				throw new IllegalStateException("The workbook is already written");
+			}
+		}
+	}
+
+	/**
+	 * @return the i-th value of a row as text or <code>null</code>
+	 */
+	private static String text(Object[] data, int i)
+	{
+		return i < data.length && data[i] != null ? data[i].toString() : null;
+	}
+
+	private static int intValue(Object value)
+	{
+		if( value instanceof Number )
+		{
+			return ((Number) value).intValue();
+		}
+		return Integer.parseInt(String.valueOf(value));
+	}
+
+	private static String extractTemplateName(Object[] data)
+	{
+		String op = text(data, 0);
+		if (data != null && data.length > 0 && DirectiveLexer.isName(op))
+		{
+			return op;
+		}
+		return null;
+	}
+	
+	private static Operation parseOperation(Object[] data)
+	{
+		if (data == null || data.length == 0)
+		{
+			return Operation.empty;
+		}
+		String op = text(data, 0);
+		if (op == null || op.length() == 0)
+		{
+			return Operation.invalid;
+		}
+		if (op.charAt(0) != '#')
+		{
+			return DirectiveLexer.isName(op) ? Operation.data : Operation.invalid;
+		}
+		if (op.equals("#sheet"))
+		{
+			String sheetName = text(data, 1);
+			return sheetName != null && sheetName.length() > 0 ? Operation.sheet : Operation.invalid;
+		}
+		if (op.equals("#end"))
+		{
+			return Operation.end;
+		}
+		if (op.equals("#select"))
+		{
+			return Operation.select;
+		}
+		if (op.equals("#template"))
+		{
+			return Operation.template;
+		}
+		return Operation.invalid;
+	}
+
+	private static class SheetGenerator
+	{
+		/** number of characters of a sheet name */
+		private static final int MAX_SHEET_NAME_LENGTH = 31;
+
+		private final RenderContext ctx;
+
+		private final TemplateSheet tSheet;
+
+		private final String sheetName;
+
+		private SheetOutput newSheet;
+		
+		private int outRow = 0; 
+
+		/** number of the sheets the generated rows are put on */
+		private int sheets = 1;
+
+		/** the last rows of the repeated templates by template name */
+		private final Map<String,Object[]> repeatedRows = new LinkedHashMap<String,Object[]>();
+
+		private SheetGenerator(RenderContext ctx, TemplateSheet tSheet, String newSheetName)
+		{
+			this.ctx = ctx;
+			this.tSheet = tSheet;
+			this.sheetName = newSheetName;
+			this.newSheet = ctx.backend().createSheet(tSheet, newSheetName);
+		}
+
+		private void createDynamicTemplate(Object[] data)
+		{
+			String name = text(data, 1);
+			int nr = intValue(data[2]);
+			
+			int nc = (data.length-3)/nr;
+			List<NamedStyle> styles = new ArrayList<NamedStyle>(nc);
+			for( int i=3; i<data.length; i++ )
+			{
+				String styleName = text(data, i);
+				NamedStyle style = tSheet.getStyle(styleName);
+				if( style == null )
+				{
+					throw new RuntimeException("Style '"+styleName+"' not found");
+				}
+				styles.add(style);
+			}
+			ctx.addDynamicTemplate(tSheet, new DynamicTemplate(name,tSheet.sheet(),nr,styles));
+		}
+
+		private void processTemplate(Object[] data)
+		{
+			String templateName = extractTemplateName(data);
+			Template t = ctx.getTemplate(tSheet, templateName);
+			if( t != null)
+			{
+				FillPlan plan = t.getFillPlan(tSheet);
+				boolean repeated = ctx.isRepeatedTemplate(templateName);
+				if( repeated )
+				{
+					// a template keeps its place among the repeated ones
+					repeatedRows.put(templateName, data.clone());
+				}
+				if( outRow > 0 && outRow + plan.height() > ctx.backend().getMaxRows() )
+				{
+					continueOnNewSheet();
+					if( repeated )
+					{
+						// generated at the top of the new sheet already
+						return;
+					}
+				}
+				fill(plan, data);
+			}
+		}
+
+		private void fill(FillPlan plan, Object[] data)
+		{
+			int startRow = outRow;
+			int height = plan.height();
+			for( int r = 0; r < height; r++,outRow++)
+			{
+				createNewRow(plan,r,outRow);
+				copyTemplateRow(plan,r,outRow, data);
+			}
+			copyMergeRegions(plan, startRow);
+		}
+
+		/**
+		 * Continues the generated sheet on a new sheet of the same template sheet,
+		 * the rows of the repeated templates are generated first.
+		 */
+		private void continueOnNewSheet()
+		{
+			String name;
+			do
+			{
+				sheets++;
+				String suffix = " (" + sheets + ")";
+				name = sheetName.length() + suffix.length() > MAX_SHEET_NAME_LENGTH
+						? sheetName.substring(0, MAX_SHEET_NAME_LENGTH - suffix.length()).trim() + suffix
+						: sheetName + suffix;
+			}
+			while( ctx.workbook().getSheetIndex(name) >= 0 );
+			ctx.addContinuationSheet(name, sheetName);
+			logger.info("Sheet " + sheetName + " is full at " + outRow + " rows, continued on sheet " + name);
+
+			newSheet = ctx.backend().createSheet(tSheet, name);
+			outRow = 0;
+			for (Object[] data : repeatedRows.values())
+			{
+				Template t = ctx.getTemplate(tSheet, extractTemplateName(data));
+				if( t != null )
+				{
+					fill(t.getFillPlan(tSheet), data);
+				}
+			}
+		}
+
+		private void selectList(Object[] data)
+		{
+			if( data.length>1 && data[1]!= null && text(data, 1).trim().length()>0 )
+			{
+				String templateName = text(data, 1);
+				StaticTemplate t = tSheet.getStaticTemplate(templateName);
+				if( t!= null )
+				{
+					List<Integer> selectList = new ArrayList<Integer>(data.length-2);
+					try
+					{
+						for( int i=2; i<data.length; i++)
+						{
+							selectList.add(intValue(data[i])-1);
+						}
+					}
+					catch (NumberFormatException e) 
+					{
+						logger.warn("Invalid #select list: "+Arrays.asList(data));
+						selectList.clear();
+					}
+					
+					if( selectList.size()>0)
+					{
+						ctx.setSelectedTemplate(tSheet, templateName, t.select(selectList));
+					}
+					else
+					{
+						ctx.setSelectedTemplate(tSheet, templateName, null);
+					}
+				}
+			}
+			else
+			{
+				logger.warn("No template name in #select");
+			}
+		}
+
+		
+		public void createNewRow(FillPlan plan,int r, int rOut)
+		{
+			newSheet.createRow(rOut, plan.getRowHeight(r));
+			if (plan.isRowBroken(r))
+			{
+				newSheet.setRowBreak(rOut);
+			}
+		}
+		
+		private void copyTemplateRow(FillPlan plan, int r,
+				int currentRow, Object[] data)
+		{
+			int width = plan.width();
+			for (int c = 0; c < width; c++)
+			{
+				FillPlan.CellFill cell = plan.getCell(r, c);
+				if( cell != null )
+				{
+					copyTemplateCell(cell, currentRow, c, data);
+				}
+			}
+		}
+
+		private void copyTemplateCell(FillPlan.CellFill tCell,
+				int currentRow, int currentCol, Object[] data)
+		{
+			newSheet.createCell(currentCol, tCell.type, tCell.styleIndex);
+			
+			switch (tCell.type)
+			{
+				case HSSFCell.CELL_TYPE_BOOLEAN:
+				{
+					newSheet.setCellValue(((Boolean) tCell.value).booleanValue());
+				}
+				break;
+				case HSSFCell.CELL_TYPE_FORMULA:
+				{
+					recalculateRelativeRefs(tCell, currentRow, currentCol);
+				}
+				break;
+				case HSSFCell.CELL_TYPE_NUMERIC:
+				{
+					newSheet.setCellValue(((Double) tCell.value).doubleValue());
+				}
+				break;
+				case HSSFCell.CELL_TYPE_STRING:
+				{
+					newSheet.setCellValue((HSSFRichTextString) tCell.value);
+				}
+				break;
+			}
+			
+			if( tCell.paramIndex > 0 )
+			{
+				substituteParameter(tCell, currentRow, currentCol, data);
+			}
+		}
+
+		/**
+		 * Set the template formula into the new cell with all relative references 
+		 * offset to correspond the new location of the cell.
+		 * 
+		 * @param newRow - new/target absolute row number of the cell 
+		 * @param newCol - new/target absolute row number of the cell
+		 */
+		private void recalculateRelativeRefs(FillPlan.CellFill tCell, int newRow, int newCol)
+		{
+			if( tCell.formula != null )
+			{
+				newSheet.setCellFormula(tCell.formula, newRow - tCell.row, newCol - tCell.column);
+			}
+		}
+
+		private void substituteParameter(FillPlan.CellFill tCell, int outRow,
+				int outCol, Object[] data)
+		{
+			int idx = tCell.paramIndex;
+			Object value = idx<data.length ? data[idx] : null;
+			try
+			{
+				setCellValue(value, tCell.param);
+			}
+			catch (Exception e)
+			{
+				logger.warn("Failed to set value '" + value + "' to cell("
+						+ outRow + "," + outRow + ")", e);
+			}
+		}
+
+		/**
+		 * Sets a typed value as it is: numbers, booleans and dates
+		 * (java.util.Date, Calendar, LocalDate, LocalDateTime) need no parsing.
+		 * Text values and values of <em>text</em> parameters are set
+		 * as declared by the parameter type.
+		 */
+		private void setCellValue(Object value, Parameter p)
+		{
+			if( value == null || value instanceof String
+					|| (p != null && p.getType() == ParameterType.text) )
+			{
+				parseCellValue(value != null ? value.toString() : "", p);
+			}
+			else if( value instanceof Number )
+			{
+				double number = ((Number) value).doubleValue();
+				if( Double.isNaN(number) || Double.isInfinite(number) )
+				{
+					newSheet.setCellValue(value.toString());
+				}
+				else
+				{
+					newSheet.setCellValue(number);
+				}
+			}
+			else if( value instanceof Boolean )
+			{
+				newSheet.setCellValue(((Boolean) value).booleanValue());
+			}
+			else
+			{
+				double date = ValueParser.toExcelDate(value, ctx.isUsing1904DateWindowing());
+				if( !Double.isNaN(date) )
+				{
+					newSheet.setCellValue(date);
+				}
+				else
+				{
+					parseCellValue(value.toString(), p);
+				}
+			}
+		}
+
+		/**
+		 * Sets the value as declared by the parameter type. Values which
+		 * do not match the declared type are set as text.
+		 */
+		private void parseCellValue(String value, Parameter p)
+		{
+			ParameterType type = p != null ? p.getType() : ParameterType.auto;
+			switch (type)
+			{
+				case text:
+				{
+					newSheet.setCellValue(value);
+					break;
+				}
+				case number:
+				{
+					double number = ValueParser.parseNumber(value);
+					if( !Double.isNaN(number) )
+					{
+						newSheet.setCellValue(number);
+					}
+					else
+					{
+						newSheet.setCellValue(value);
+					}
+					break;
+				}
+				case date:
+				{
+					double date = p.getFormat() != null
+							? ValueParser.parseDate(value, p.getFormat(), ctx.isUsing1904DateWindowing())
+							: ValueParser.parseDate(value, ctx.isUsing1904DateWindowing());
+					if( !Double.isNaN(date) )
+					{
+						newSheet.setCellValue(date);
+					}
+					else
+					{
+						newSheet.setCellValue(value);
+					}
+					break;
+				}
+				case bool:
+				{
+					Boolean b = ValueParser.parseBoolean(value);
+					if( b != null )
+					{
+						newSheet.setCellValue(b.booleanValue());
+					}
+					else
+					{
+						newSheet.setCellValue(value);
+					}
+					break;
+				}
+				default:
+				{
+					setCellValue(value);
+				}
+			}
+		}
+
+		private void setCellValue(String value)
+		{
+			double number = ValueParser.parseNumber(value);
+			if( !Double.isNaN(number) )
+			{
+				newSheet.setCellValue(number);
+			}
+			else
+			{
+				double date = ValueParser.parseDate(value, ctx.isUsing1904DateWindowing());
+				if( !Double.isNaN(date) )
+				{
+					newSheet.setCellValue(date);
+				}
+				else
+				{
+					newSheet.setCellValue(value);
+				}
+			}
+		}
+
+		private void copyMergeRegions(FillPlan plan, int absTemplateOutputStartRow)
+		{
+			int n = plan.getMergeRegionsNumber();
+			for (int i = 0; i < n; i++)
+			{
+				int firstRow = absTemplateOutputStartRow + plan.getMergeRegion(i, 0);
+				int lastRow = absTemplateOutputStartRow + plan.getMergeRegion(i, 1);
+				newSheet.addMergedRegion(firstRow, lastRow,
+						plan.getMergeRegion(i, 2), plan.getMergeRegion(i, 3));
+			}
+		}
+	}
+	
+	private static ByteArrayOutputStream toByteArrayOutputStream(InputStream is) throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] b = new byte[4096];
+		int off = 0;
+		int len = 0;
+		while( (len = is.read(b, off, b.length)) != -1 )
+		{
+			bos.write(b, off, len);
+		}
+		bos.flush();
+		return bos;
+	}
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Compiled templates of a directory of template workbooks, looked up by name.
+ * The template <em>Name</em> is compiled from the file <em>NameTemplate.xls</em>
+ * on the first request and kept until it is evicted or its file changes.
+ * <br>
+ * The total {@link CompiledTemplate#getFootprint() footprint} of the kept templates
+ * is bounded: when a loaded template exceeds the budget, the least recently used
+ * templates are evicted. A changed, created or deleted template workbook is noticed
+ * by watching the directory, the template is dropped and compiled again
+ * on the next request. Renders holding a dropped template finish with it.
+ * <br>
+ * Templates are loaded with {@link CompiledTemplate#load(File, Set)}, so the compiled
+ * templates are also stored next to the template workbooks.
+ * <br>
+ * A registry can be shared between threads. Concurrent requests for a template
+ * being loaded wait for that load, requests for other templates do not wait.
+ * <br>
+ * Example:
+ * <pre>
+ *    TemplateRegistry registry = new TemplateRegistry(new File("templates"), 64*1024*1024);
+ *    new TemplateProcessor(registry.get("PriceList")).process(data, new File("PriceList.xls"));
+ *    ...
+ *    registry.close();
+ * </pre>
+ *
+ * @author Dmitriy Kumshayev
+ */
+public final class TemplateRegistry implements Closeable
+{
+	private static final Logger logger = Logger.getLogger(TemplateRegistry.class);
+
+	/** Suffix added to the template name to get the name of the template workbook */
+	public static final String FILE_SUFFIX = "Template.xls";
+
+	private final File directory;
+	private final long maxFootprint;
+	private final Set<String> keptSheetNames;
+	/** entries in the order of access, the least recently used first */
+	private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true);
+	/** footprint of the loaded entries */
+	private long footprint = 0;
+	private final WatchService watchService;
+	private final Thread watcher;
+
+	/**
+	 * Compiled template of an entry is loaded by the first request.
+	 */
+	private final class Entry
+	{
+		private final String name;
+		private final FutureTask<CompiledTemplate> task;
+		/** footprint of the loaded template, 0 while it is being loaded */
+		private long footprint = 0;
+
+		private Entry(String name, final File file)
+		{
+			this.name = name;
+			this.task = new FutureTask<CompiledTemplate>(new Callable<CompiledTemplate>()
+			{
+				public CompiledTemplate call() throws IOException
+				{
+					CompiledTemplate ct = CompiledTemplate.load(file, keptSheetNames);
+					loaded(Entry.this, ct);
+					return ct;
+				}
+			});
+		}
+	}
+
+	/**
+	 * @param directory - directory of the template workbooks
+	 * @param maxFootprint - budget of the estimated memory held by the compiled templates
+	 */
+	public TemplateRegistry(File directory, long maxFootprint) throws IOException
+	{
+		this(directory, maxFootprint, Collections.<String>emptySet());
+	}
+
+	/**
+	 * @param directory - directory of the template workbooks
+	 * @param maxFootprint - budget of the estimated memory held by the compiled templates
+	 * @param keptSheetNames sheets which are not templates and are kept
+	 *          untouched in every generated workbook
+	 */
+	public TemplateRegistry(File directory, long maxFootprint, Set<String> keptSheetNames)
+	throws IOException
+	{
+		this.directory = directory;
+		this.maxFootprint = maxFootprint;
+		this.keptSheetNames = new HashSet<String>(keptSheetNames);
+		this.watchService = FileSystems.getDefault().newWatchService();
+		directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		this.watcher = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				watch();
+			}
+		}, "TemplateRegistry " + directory);
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * @return the compiled template, it is loaded if it is not in the registry
+	 * @throws IOException if the template workbook cannot be read
+	 */
+	public CompiledTemplate get(String name) throws IOException
+	{
+		File file = getFile(name);
+		Entry entry;
+		boolean load;
+		synchronized (entries)
+		{
+			entry = entries.get(name);
+			load = entry == null;
+			if( load )
+			{
+				entry = new Entry(name, file);
+				entries.put(name, entry);
+			}
+		}
+		if( load )
+		{
+			entry.task.run();
+		}
+		try
+		{
+			return entry.task.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading template " + name);
+		}
+		catch (ExecutionException e)
+		{
+			// let the next request try again
+			remove(entry);
+			Throwable cause = e.getCause();
+			if( cause instanceof IOException )
+			{
+				throw (IOException) cause;
+			}
+			if( cause instanceof RuntimeException )
+			{
+				throw (RuntimeException) cause;
+			}
+			if( cause instanceof Error )
+			{
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Drops the template, the next request loads it again.
+	 */
+	public void invalidate(String name)
+	{
+		synchronized (entries)
+		{
+			Entry entry = entries.remove(name);
+			if( entry != null )
+			{
+				footprint -= entry.footprint;
+				logger.debug("Invalidated template " + name);
+			}
+		}
+	}
+
+	/**
+	 * @return estimated memory held by the loaded templates
+	 */
+	public long getFootprint()
+	{
+		synchronized (entries)
+		{
+			return footprint;
+		}
+	}
+
+	/**
+	 * @return number of the loaded templates and templates being loaded
+	 */
+	public int size()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Stops watching the directory. Loaded templates are still served.
+	 */
+	public void close() throws IOException
+	{
+		watchService.close();
+	}
+
+	private File getFile(String name)
+	{
+		if( name.length() == 0 || !new File(name).getName().equals(name) )
+		{
+			throw new IllegalArgumentException("Invalid template name '" + name + "'");
+		}
+		return new File(directory, name + FILE_SUFFIX);
+	}
+
+	private void loaded(Entry entry, CompiledTemplate ct)
+	{
+		synchronized (entries)
+		{
+			// the entry might have been invalidated while loading
+			if( entries.get(entry.name) == entry )
+			{
+				entry.footprint = ct.getFootprint();
+				footprint += entry.footprint;
+				evict(entry);
+			}
+		}
+	}
+
+	/**
+	 * Evicts the least recently used loaded templates until the footprint is within the budget.
+	 *
+	 * @param loaded - template just loaded, it is never evicted
+	 */
+	private void evict(Entry loaded)
+	{
+		for (Iterator<Entry> it = entries.values().iterator(); footprint > maxFootprint && it.hasNext();)
+		{
+			Entry entry = it.next();
+			if( entry != loaded && entry.footprint > 0 )
+			{
+				it.remove();
+				footprint -= entry.footprint;
+				logger.debug("Evicted template " + entry.name);
+			}
+		}
+	}
+
+	private void remove(Entry entry)
+	{
+		synchronized (entries)
+		{
+			if( entries.get(entry.name) == entry )
+			{
+				entries.remove(entry.name);
+				footprint -= entry.footprint;
+			}
+		}
+	}
+
+	private void watch()
+	{
+		try
+		{
+			while (true)
+			{
+				WatchKey key = watchService.take();
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					if( event.kind() == StandardWatchEventKinds.OVERFLOW )
+					{
+						invalidateAll();
+						continue;
+					}
+					String fileName = event.context().toString();
+					if( fileName.endsWith(FILE_SUFFIX) )
+					{
+						invalidate(fileName.substring(0, fileName.length() - FILE_SUFFIX.length()));
+					}
+				}
+				if( !key.reset() )
+				{
+					logger.warn("Stopped watching " + directory);
+					return;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// stop watching
+		}
+		catch (ClosedWatchServiceException e)
+		{
+			// closed
+		}
+	}
+
+	private void invalidateAll()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+			footprint = 0;
+		}
+	}
+}
@@ -1,62 +1,121 @@
-/*
- * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.templateit;
-
-import java.util.HashMap;
-import java.util.Map;
-
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-
-/**
- * This class encapsulates a map of {@link TemplateSheet} gathered 
- * by {@link WorkbookParser} from the template workbook.
- * @author Dmitriy Kumshayev
- *
- */
-final class TemplateWorkbook
-{
-	private Map<String, TemplateSheet> sheets = new HashMap<String, TemplateSheet>();
-
-	public TemplateSheet getTemplateSheet(String sheetName)
-	{
-		return sheets.get(sheetName);
-	}
-
-	/**
-	 * Set {@link TemplateSheet} 
-	 * @param sheetName
-	 * @param sheetData
-	 * @return
-	 */
-	public TemplateSheet setSheetTemplateData(String sheetName,
-			TemplateSheet sheetData)
-	{
-		return sheets.put(sheetName, sheetData);
-	}
-	
-	public TemplateSheet createTemplateSheet(String sheetName, HSSFSheet sheet)
-	{
-		TemplateSheet tSheet = getTemplateSheet(sheetName);
-		if (tSheet == null)
-		{
-			tSheet = new TemplateSheet(sheetName,sheet);
-			setSheetTemplateData(sheetName, tSheet);
-		}
-		return tSheet;
-	}
-	
-}
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class encapsulates a map of {@link TemplateSheet} gathered 
+ * by {@link WorkbookParser} from the template workbook.
+ * <br>
+ * Sheets may also be added unparsed, such a sheet is parsed 
+ * when it is asked for the first time.
+ * @author Dmitriy Kumshayev
+ *
+ */
+final class TemplateWorkbook
+{
+	private final Map<String, TemplateSheet> sheets = new ConcurrentHashMap<String, TemplateSheet>();
+	/** parser of the unparsed sheets or null */
+	private final WorkbookParser parser;
+	/** names of the sheets not parsed yet */
+	private final Set<String> unparsedSheetNames = new LinkedHashSet<String>();
+
+	public TemplateWorkbook()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param parser - parser of the sheets added unparsed
+	 */
+	public TemplateWorkbook(WorkbookParser parser)
+	{
+		this.parser = parser;
+	}
+
+	public TemplateSheet getTemplateSheet(String sheetName)
+	{
+		TemplateSheet tSheet = sheets.get(sheetName);
+		if( tSheet == null && parser != null )
+		{
+			tSheet = parseSheet(sheetName);
+		}
+		return tSheet;
+	}
+
+	/**
+	 * @return all sheets, the unparsed ones are parsed
+	 */
+	public synchronized Collection<TemplateSheet> sheets()
+	{
+		for (String sheetName : new ArrayList<String>(unparsedSheetNames))
+		{
+			parseSheet(sheetName);
+		}
+		return sheets.values();
+	}
+
+	/**
+	 * @return number of the sheets parsed so far
+	 */
+	public int getParsedSheetsNumber()
+	{
+		return sheets.size();
+	}
+
+	/**
+	 * Adds a sheet to be parsed when it is asked for the first time.
+	 */
+	public synchronized void addUnparsedSheet(String sheetName)
+	{
+		unparsedSheetNames.add(sheetName);
+	}
+
+	/**
+	 * Sheets are parsed one at a time, renders asking for parsed sheets do not wait.
+	 */
+	private synchronized TemplateSheet parseSheet(String sheetName)
+	{
+		TemplateSheet tSheet = sheets.get(sheetName);
+		if( tSheet == null && unparsedSheetNames.contains(sheetName) )
+		{
+			tSheet = parser.parseSheet(sheetName);
+			sheets.put(sheetName, tSheet);
+			unparsedSheetNames.remove(sheetName);
+		}
+		return tSheet;
+	}
+
+	/**
+	 * Set {@link TemplateSheet} 
+	 * @param sheetName
+	 * @param sheetData
+	 * @return
+	 */
+	public TemplateSheet setSheetTemplateData(String sheetName,
+			TemplateSheet sheetData)
+	{
+		return sheets.put(sheetName, sheetData);
+	}
+
+}
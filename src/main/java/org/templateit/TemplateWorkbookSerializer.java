@@ -0,0 +1,293 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.poi.hssf.record.RecordInputStream;
+import org.apache.poi.hssf.record.formula.Ptg;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.templateit.util.FormulaUtil;
+
+/**
+ * Writes a {@link TemplateWorkbook} in a binary form and reads it back:
+ * templates with their regions, parameters and merge regions, named styles
+ * and parsed formulas of every template sheet.
+ * <br>
+ * Cells, cell styles and sheet settings are not written. They are taken from
+ * the template workbook the {@link TemplateWorkbook} is read for, so it must be
+ * the workbook it was parsed from, with the template sheets renamed the same way.
+ *
+ * @author Dmitriy Kumshayev
+ */
+final class TemplateWorkbookSerializer
+{
+	private TemplateWorkbookSerializer()
+	{
+	}
+
+	public static void write(TemplateWorkbook tWorkbook, DataOutput out) throws IOException
+	{
+		Collection<TemplateSheet> sheets = tWorkbook.sheets();
+		out.writeInt(sheets.size());
+		for (TemplateSheet tSheet : sheets)
+		{
+			writeSheet(tSheet, out);
+		}
+	}
+
+	/**
+	 * @param workbook - template workbook the template sheets are bound to
+	 */
+	public static TemplateWorkbook read(DataInput in, HSSFWorkbook workbook) throws IOException
+	{
+		TemplateWorkbook tWorkbook = new TemplateWorkbook();
+		int n = in.readInt();
+		for (int i = 0; i < n; i++)
+		{
+			TemplateSheet tSheet = readSheet(in, workbook);
+			tWorkbook.setSheetTemplateData(tSheet.getSheetName(), tSheet);
+		}
+		return tWorkbook;
+	}
+
+	private static void writeSheet(TemplateSheet tSheet, DataOutput out) throws IOException
+	{
+		out.writeUTF(tSheet.getSheetName());
+		out.writeInt(tSheet.getLastColumn());
+
+		Collection<NamedStyle> styles = tSheet.styles();
+		out.writeInt(styles.size());
+		for (NamedStyle style : styles)
+		{
+			out.writeUTF(style.getName());
+			out.writeBoolean(style.hasParam());
+			out.writeInt(style.getRow());
+			out.writeInt(style.getColumn());
+		}
+
+		Map<Reference,TemplateFormula> formulas = tSheet.formulas();
+		out.writeInt(formulas.size());
+		for (Entry<Reference,TemplateFormula> e : formulas.entrySet())
+		{
+			out.writeInt(e.getKey().row());
+			out.writeInt(e.getKey().column());
+			TemplateFormula formula = e.getValue();
+			out.writeUTF(formula.getFormula());
+			Ptg[] ptgs = formula.getTokens();
+			// tokens are read back from a single record, longer ones are parsed again
+			boolean writeTokens = ptgs != null
+					&& Ptg.getEncodedSize(ptgs) <= RecordInputStream.MAX_RECORD_DATA_SIZE;
+			out.writeBoolean(writeTokens);
+			if( writeTokens )
+			{
+				FormulaUtil.writeTokens(ptgs, out);
+			}
+		}
+
+		Collection<StaticTemplate> templates = tSheet.templates();
+		out.writeInt(templates.size());
+		for (StaticTemplate t : templates)
+		{
+			writeTemplate(t, out);
+		}
+	}
+
+	private static TemplateSheet readSheet(DataInput in, HSSFWorkbook workbook) throws IOException
+	{
+		String sheetName = in.readUTF();
+		HSSFSheet sheet = workbook.getSheet(sheetName);
+		if( sheet == null )
+		{
+			throw new IOException("Missing template sheet '" + sheetName + "'");
+		}
+		TemplateSheet tSheet = new TemplateSheet(sheetName, sheet);
+		tSheet.setLastColumn(in.readInt());
+
+		int nStyles = in.readInt();
+		for (int i = 0; i < nStyles; i++)
+		{
+			NamedStyle style = new NamedStyle(in.readUTF(), in.readBoolean());
+			style.setRow(in.readInt());
+			style.setColumn(in.readInt());
+			tSheet.addStyle(style);
+		}
+
+		int nFormulas = in.readInt();
+		for (int i = 0; i < nFormulas; i++)
+		{
+			int r = in.readInt();
+			int c = in.readInt();
+			String formula = in.readUTF();
+			Ptg[] ptgs = null;
+			if( in.readBoolean() )
+			{
+				ptgs = FormulaUtil.readTokens(in);
+			}
+			else
+			{
+				synchronized (workbook)
+				{
+					ptgs = TemplateFormula.compile(workbook, formula).getTokens();
+				}
+			}
+			tSheet.addFormula(r, c, new TemplateFormula(formula, ptgs));
+		}
+
+		int nTemplates = in.readInt();
+		for (int i = 0; i < nTemplates; i++)
+		{
+			tSheet.addTemplate(readTemplate(in, sheet));
+		}
+		WorkbookParser.compileFillPlans(tSheet);
+		return tSheet;
+	}
+
+	private static void writeTemplate(StaticTemplate t, DataOutput out) throws IOException
+	{
+		out.writeUTF(t.getName());
+		writeReference(t.start(), out);
+		writeReference(t.end(), out);
+
+		List<Parameter> parameters = new ArrayList<Parameter>(t.parameters);
+		out.writeInt(parameters.size());
+		for (Parameter p : parameters)
+		{
+			writeString(p.getName(), out);
+			out.writeInt(p.getIndex());
+			out.writeInt(p.getRow());
+			out.writeInt(p.getColumn());
+			out.writeUTF(p.getType().name());
+			writeString(p.getFormatPattern(), out);
+		}
+
+		// cells may refer to a parameter moved to another cell later
+		Parameter[][] grid = t.getParameterGrid();
+		List<int[]> cells = new ArrayList<int[]>();
+		for (int r = 0; r < grid.length; r++)
+		{
+			for (int c = 0; grid[r] != null && c < grid[r].length; c++)
+			{
+				if( grid[r][c] != null )
+				{
+					cells.add(new int[] {r, c, indexOf(parameters, grid[r][c])});
+				}
+			}
+		}
+		out.writeInt(cells.size());
+		for (int[] cell : cells)
+		{
+			out.writeInt(cell[0]);
+			out.writeInt(cell[1]);
+			out.writeInt(cell[2]);
+		}
+
+		List<MergeRegion> mergeRegions = t.getMergeRegions();
+		out.writeInt(mergeRegions.size());
+		for (MergeRegion m : mergeRegions)
+		{
+			writeReference(m.start(), out);
+			writeReference(m.end(), out);
+		}
+	}
+
+	private static StaticTemplate readTemplate(DataInput in, HSSFSheet sheet) throws IOException
+	{
+		StaticTemplate t = new StaticTemplate(in.readUTF(), sheet);
+		t.setStartReference(readReference(in));
+		t.setEndReference(readReference(in));
+
+		int nParameters = in.readInt();
+		List<Parameter> parameters = new ArrayList<Parameter>(nParameters);
+		for (int i = 0; i < nParameters; i++)
+		{
+			Parameter p = new Parameter();
+			p.setName(readString(in));
+			p.setIndex(in.readInt());
+			p.setRow(in.readInt());
+			p.setColumn(in.readInt());
+			p.setType(ParameterType.valueOf(in.readUTF()));
+			p.setFormat(readString(in));
+			parameters.add(p);
+			t.addParameter(p);
+		}
+
+		int nCells = in.readInt();
+		for (int i = 0; i < nCells; i++)
+		{
+			int r = in.readInt();
+			int c = in.readInt();
+			t.setParameter(r, c, parameters.get(in.readInt()));
+		}
+
+		int nMergeRegions = in.readInt();
+		for (int i = 0; i < nMergeRegions; i++)
+		{
+			t.addMergeRegion(new MergeRegion(readReference(in), readReference(in)));
+		}
+		return t;
+	}
+
+	private static int indexOf(List<Parameter> parameters, Parameter p)
+	{
+		for (int i = 0; i < parameters.size(); i++)
+		{
+			if( parameters.get(i) == p )
+			{
+				return i;
+			}
+		}
+		throw new IllegalStateException("Unknown parameter " + p.getName());
+	}
+
+	private static void writeReference(Reference ref, DataOutput out) throws IOException
+	{
+		out.writeBoolean(ref != null);
+		if( ref != null )
+		{
+			out.writeInt(ref.row());
+			out.writeInt(ref.column());
+		}
+	}
+
+	private static Reference readReference(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? new Reference(in.readInt(), in.readInt()) : null;
+	}
+
+	private static void writeString(String s, DataOutput out) throws IOException
+	{
+		out.writeBoolean(s != null);
+		if( s != null )
+		{
+			out.writeUTF(s);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -1,201 +1,316 @@
-/*
- * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.templateit;
-
-import java.util.Set;
-
-import org.apache.log4j.Logger;
-import org.apache.poi.hssf.usermodel.HSSFComment;
-import org.apache.poi.hssf.usermodel.HSSFRichTextString;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.hssf.util.CellRangeAddress;
-
-class WorkbookParser
-{
-	private static final Logger logger = Logger.getLogger(WorkbookParser.class);
-
-	private final HSSFWorkbook workbook;
-	private final TemplateWorkbook tWorkbook;
-
-	private TemplateSheet tSheet;
-
-	public WorkbookParser(HSSFWorkbook workbook) 
-	{
-		this.workbook = workbook;
-		this.tWorkbook = new TemplateWorkbook();
-	}
-	
-	public TemplateWorkbook parse()
-	{
-		return parse(null);
-	}
-	public TemplateWorkbook parse(Set<String> excludedSheetNames)
-	{
-		int nSheets = workbook.getNumberOfSheets();
-		for (int i = 0; i < nSheets; i++)
-		{
-			HSSFSheet sheet = workbook.getSheetAt(i);
-			String sheetName = workbook.getSheetName(i);
-			if (excludedSheetNames!=null && !excludedSheetNames.contains(sheetName))
-			{
-				parseSheet(sheetName, sheet);
-			}
-		}
-		return tWorkbook;
-	}
-
-	private void parseSheet(String sheetName, HSSFSheet sheet)
-	{
-		logger.debug("Parsing <" + sheetName + ">");
-		tSheet = tWorkbook.createTemplateSheet(sheetName,sheet);
-
-		int lastRow = sheet.getLastRowNum();
-		StaticTemplate template = null;
-
-		for (int r = 0; r <= lastRow; r++)
-		{
-			HSSFRow row = sheet.getRow(r);
-			if (row != null)
-			{
-				tSheet.setLastColumn(Math.max(row.getLastCellNum(), tSheet
-						.getLastColumn()));
-				// POI does not provide a way to walk through 
-				// all available cell comments, so we reserve
-				// first 20 columns 
-				int lastColumn = Math.max(tSheet.getLastColumn(), 20);
-
-				for (int c = 0; c <= lastColumn; c++)
-				{
-					boolean templateEndFound = false;
-					HSSFComment cellComment = sheet.getCellComment(r, c);
-					if (cellComment != null)
-					{
-						HSSFRichTextString hstring = cellComment.getString();
-						if (hstring != null)
-						{
-							String comm = hstring.toString();
-							if (comm != null)
-							{
-								if (logger.isTraceEnabled())
-								{
-									String ct = comm.replace('\n', ' ').trim();
-									logger.trace("comment @(" + r + "," + c + "): '" + ct + "'");
-								}
-								String[] names = null;
-								if ((names = OpMatcher.matchTemplateBegin(comm)) != null)
-								{
-									if (logger.isTraceEnabled())
-									{
-										logger.trace("@template_begin @(" + r + "," + c + ")");
-									}
-									template = tSheet.createTemplate(r, c, names);
-								}
-
-								if (OpMatcher.matchTemplateEnd(comm))
-								{
-									if (logger.isTraceEnabled())
-									{
-										logger.trace("@template_end @(" + r + "," + c + ")");
-									}
-									if( template != null )
-									{
-										template.setEndReference(new Reference(r, c));
-									}
-									else
-									{
-										logger.warn("@template_end without @template_begin");
-									}
-									templateEndFound = true;
-								}
-
-								String paramName = OpMatcher.matchTemplateParameter(comm);
-								if (paramName != null )
-								{
-									if( template != null )
-									{
-										int relRow = r-template.start().row();			
-										int relCol = c-template.start().column();			
-										template.createParameter(paramName, relRow, relCol);
-									}
-									else
-									{
-										logger.warn("Cannot create parameter '"+paramName+"'");
-									}
-								}
-								
-								NamedStyle style = OpMatcher.matchStyle(comm);
-								if( style != null )
-								{
-									style.setRow(r);
-									style.setColumn(c);
-									tSheet.addStyle(style);
-								}
-							}
-
-							if( templateEndFound )
-							{
-								// reset template
-								template = null;
-							}
-						}
-					}
-				}
-			}
-		}
-
-		processMergeRegions(sheet);
-	}
-
-	private void processMergeRegions(HSSFSheet sheet)
-	{
-		// identify MergeRegions and assign them to corresponding template sections
-		int numMergedRegions = sheet.getNumMergedRegions();
-		for (int i = 0; i < numMergedRegions; i++)
-		{
-			CellRangeAddress mr = sheet.getMergedRegion(i);
-			Reference start = new Reference(mr.getFirstRow(), mr.getFirstColumn());
-			Reference end = new Reference(mr.getLastRow(), mr.getLastColumn());
-			MergeRegion mreg = new MergeRegion(start, end);
-			if (logger.isTraceEnabled())
-			{
-				logger.trace("Merge region @(" + mreg + ")");
-			}
-
-			for (StaticTemplate template : tSheet.templates())
-			{
-				if (mreg.contains(template.end()))
-				{
-					template.setEndReference(mreg.end());
-
-					if (logger.isTraceEnabled())
-					{
-						logger.trace("Template " + template.getName() + " extended to ("
-								+ template + ")");
-					}
-				}
-
-				if (template.contains(mreg))
-				{
-					template.addMergeRegion(mreg);
-				}
-			}
-		}
-	}
-
-}
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFComment;
+import org.apache.poi.hssf.usermodel.HSSFInternals;
+import org.apache.poi.hssf.usermodel.HSSFRichTextString;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.CellRangeAddress;
+
+class WorkbookParser
+{
+	private static final Logger logger = Logger.getLogger(WorkbookParser.class);
+
+	private final HSSFWorkbook workbook;
+	private final TemplateWorkbook tWorkbook;
+
+	public WorkbookParser(HSSFWorkbook workbook) 
+	{
+		this.workbook = workbook;
+		this.tWorkbook = new TemplateWorkbook(this);
+	}
+	
+	public TemplateWorkbook parse()
+	{
+		return parse(null);
+	}
+	/**
+	 * Sheets are parsed in parallel on the common fork-join pool, each sheet 
+	 * into its own {@link TemplateSheet}. The result is the same as of
+	 * parsing the sheets one by one.
+	 */
+	public TemplateWorkbook parse(Set<String> excludedSheetNames)
+	{
+		final List<SheetParser> parsers = new ArrayList<SheetParser>();
+		int nSheets = workbook.getNumberOfSheets();
+		for (int i = 0; i < nSheets; i++)
+		{
+			HSSFSheet sheet = workbook.getSheetAt(i);
+			String sheetName = workbook.getSheetName(i);
+			if (excludedSheetNames!=null && !excludedSheetNames.contains(sheetName))
+			{
+				parsers.add(new SheetParser(sheetName, sheet));
+			}
+		}
+
+		if (parsers.size() > 1)
+		{
+			ForkJoinPool.commonPool().invoke(new RecursiveAction()
+			{
+				@Override
+				protected void compute()
+				{
+					invokeAll(parsers);
+				}
+			});
+		}
+		else
+		{
+			for (SheetParser parser : parsers)
+			{
+				parser.invoke();
+			}
+		}
+
+		for (SheetParser parser : parsers)
+		{
+			TemplateSheet tSheet = parser.join();
+			tWorkbook.setSheetTemplateData(tSheet.getSheetName(), tSheet);
+		}
+		return tWorkbook;
+	}
+
+	/**
+	 * Collects the names of the template sheets only. Each sheet is parsed
+	 * when it is asked for the first time, so the sheets a data stream 
+	 * does not use are never parsed.
+	 */
+	public TemplateWorkbook parseLazily(Set<String> excludedSheetNames)
+	{
+		int nSheets = workbook.getNumberOfSheets();
+		for (int i = 0; i < nSheets; i++)
+		{
+			String sheetName = workbook.getSheetName(i);
+			if (excludedSheetNames!=null && !excludedSheetNames.contains(sheetName))
+			{
+				tWorkbook.addUnparsedSheet(sheetName);
+			}
+		}
+		return tWorkbook;
+	}
+
+	/**
+	 * Parses a sheet of a lazily parsed workbook.
+	 */
+	TemplateSheet parseSheet(String sheetName)
+	{
+		return parseSheet(sheetName, workbook.getSheet(sheetName));
+	}
+
+	private final class SheetParser extends RecursiveTask<TemplateSheet>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String sheetName;
+		private final HSSFSheet sheet;
+
+		private SheetParser(String sheetName, HSSFSheet sheet)
+		{
+			this.sheetName = sheetName;
+			this.sheet = sheet;
+		}
+
+		@Override
+		protected TemplateSheet compute()
+		{
+			return parseSheet(sheetName, sheet);
+		}
+	}
+
+	private TemplateSheet parseSheet(String sheetName, HSSFSheet sheet)
+	{
+		logger.debug("Parsing <" + sheetName + ">");
+		TemplateSheet tSheet = new TemplateSheet(sheetName,sheet);
+
+		int lastRow = sheet.getLastRowNum();
+		for (int r = 0; r <= lastRow; r++)
+		{
+			HSSFRow row = sheet.getRow(r);
+			if (row != null)
+			{
+				processFormulas(tSheet, row);
+				tSheet.setLastColumn(Math.max(row.getLastCellNum(), tSheet
+						.getLastColumn()));
+			}
+		}
+
+		// comments come ordered by row and column
+		StaticTemplate template = null;
+		for (HSSFComment cellComment : HSSFInternals.getCellComments(sheet))
+		{
+			int r = cellComment.getRow();
+			int c = cellComment.getColumn();
+			boolean templateEndFound = false;
+			HSSFRichTextString hstring = cellComment.getString();
+			if (hstring != null)
+			{
+				String comm = hstring.toString();
+				if (comm != null)
+				{
+					if (logger.isTraceEnabled())
+					{
+						String ct = comm.replace('\n', ' ').trim();
+						logger.trace("comment @(" + r + "," + c + "): '" + ct + "'");
+					}
+					DirectiveLexer.Directives directives = DirectiveLexer.lex(comm);
+					String[] names = null;
+					if ((names = directives.getTemplateBegin()) != null)
+					{
+						if (logger.isTraceEnabled())
+						{
+							logger.trace("@template_begin @(" + r + "," + c + ")");
+						}
+						template = tSheet.createTemplate(r, c, names);
+					}
+
+					if (directives.isTemplateEnd())
+					{
+						if (logger.isTraceEnabled())
+						{
+							logger.trace("@template_end @(" + r + "," + c + ")");
+						}
+						if( template != null )
+						{
+							template.setEndReference(new Reference(r, c));
+						}
+						else
+						{
+							logger.warn("@template_end without @template_begin");
+						}
+						templateEndFound = true;
+					}
+
+					Parameter param = directives.getParameter();
+					if (param != null )
+					{
+						if( template != null )
+						{
+							int relRow = r-template.start().row();			
+							int relCol = c-template.start().column();			
+							template.createParameter(param, relRow, relCol);
+						}
+						else
+						{
+							logger.warn("Cannot create parameter '"+param.getName()+"'");
+						}
+					}
+					
+					NamedStyle style = directives.getStyle();
+					if( style != null )
+					{
+						style.setRow(r);
+						style.setColumn(c);
+						tSheet.addStyle(style);
+					}
+				}
+
+				if( templateEndFound )
+				{
+					// reset template
+					template = null;
+				}
+			}
+		}
+
+		processMergeRegions(tSheet, sheet);
+		compileFillPlans(tSheet);
+		return tSheet;
+	}
+
+	static void compileFillPlans(TemplateSheet tSheet)
+	{
+		for (StaticTemplate template : tSheet.templates())
+		{
+			if( template.end() != null )
+			{
+				template.getFillPlan(tSheet);
+			}
+		}
+	}
+
+	private void processFormulas(TemplateSheet tSheet, HSSFRow row)
+	{
+		for (Iterator<?> it = row.cellIterator(); it.hasNext();)
+		{
+			HSSFCell cell = (HSSFCell) it.next();
+			if (cell.getCellType() == HSSFCell.CELL_TYPE_FORMULA)
+			{
+				TemplateFormula formula;
+				// the formula parser looks up and may add workbook records
+				synchronized (workbook)
+				{
+					formula = TemplateFormula.compile(workbook, cell);
+				}
+				tSheet.addFormula(row.getRowNum(), cell.getColumnIndex(), formula);
+			}
+		}
+	}
+
+	private static void processMergeRegions(TemplateSheet tSheet, HSSFSheet sheet)
+	{
+		// identify MergeRegions and assign them to corresponding template sections
+		MergeRegionIndex index = new MergeRegionIndex(sheet);
+		if (index.size() == 0)
+		{
+			return;
+		}
+		for (StaticTemplate template : tSheet.templates())
+		{
+			if (template.end() == null)
+			{
+				continue;
+			}
+			CellRangeAddress mr = index.getRegionContaining(template.end().row(), template.end().column());
+			if (mr != null)
+			{
+				template.setEndReference(new Reference(mr.getLastRow(), mr.getLastColumn()));
+
+				if (logger.isTraceEnabled())
+				{
+					logger.trace("Template " + template.getName() + " extended to ("
+							+ template + ")");
+				}
+			}
+
+			for (CellRangeAddress r : index.getRegionsStartingIn(template.start().row(),
+					template.start().column(), template.end().row(), template.end().column()))
+			{
+				MergeRegion mreg = new MergeRegion(new Reference(r.getFirstRow(), r.getFirstColumn()),
+						new Reference(r.getLastRow(), r.getLastColumn()));
+				if (logger.isTraceEnabled())
+				{
+					logger.trace("Merge region @(" + mreg + ") of " + template.getName());
+				}
+				template.addMergeRegion(mreg);
+			}
+		}
+	}
+
+}
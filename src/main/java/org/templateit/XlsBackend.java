@@ -0,0 +1,318 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFConditionalFormatting;
+import org.apache.poi.hssf.usermodel.HSSFInternals;
+import org.apache.poi.hssf.usermodel.HSSFPrintSetup;
+import org.apache.poi.hssf.usermodel.HSSFRichTextString;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFSheetConditionalFormatting;
+import org.apache.poi.hssf.usermodel.HSSFStreamingWorkbook;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.CellRangeAddress;
+import org.apache.poi.hssf.util.PaneInformation;
+
+/**
+ * Backend generating the sheets in the output workbook itself, the default one.
+ * The workbook is written as a BIFF8 (.xls) file.
+ * 
+ * @author Dmitriy Kumshayev
+ */
+final class XlsBackend implements OutputBackend
+{
+	private static final Logger logger = Logger.getLogger(XlsBackend.class);
+
+	/** number of rows of a BIFF8 sheet */
+	static final int MAX_ROWS = 65536;
+
+	private final HSSFWorkbook workbook;
+	private final OutputStream out;
+	private final HSSFCellStyle[] cellStyles;
+
+	/**
+	 * @param workbook - the output workbook, an {@link HSSFStreamingWorkbook}
+	 *   writes the rows of the sheets to temporary files
+	 */
+	XlsBackend(HSSFWorkbook workbook, OutputStream out)
+	{
+		this.workbook = workbook;
+		this.out = out;
+		this.cellStyles = new HSSFCellStyle[workbook.getNumCellStyles()];
+	}
+
+	public SheetOutput createSheet(TemplateSheet tSheet, String sheetName)
+	{
+		return new XlsSheet(tSheet, workbook.createSheet(sheetName));
+	}
+
+	public int getMaxRows()
+	{
+		return MAX_ROWS;
+	}
+
+	public void write() throws IOException
+	{
+		workbook.write(out);
+	}
+
+	public void close()
+	{
+		if( workbook instanceof HSSFStreamingWorkbook )
+		{
+			((HSSFStreamingWorkbook) workbook).close();
+		}
+	}
+
+	/**
+	 * @param idx - index of a cell style in the template workbook
+	 * @return the same cell style of the output workbook
+	 */
+	private HSSFCellStyle getCellStyle(short idx)
+	{
+		HSSFCellStyle style = cellStyles[idx];
+		if( style == null )
+		{
+			style = workbook.getCellStyleAt(idx);
+			cellStyles[idx] = style;
+		}
+		return style;
+	}
+
+	private final class XlsSheet implements SheetOutput
+	{
+		private final TemplateSheet tSheet;
+
+		private final HSSFSheet newSheet;
+
+		private HSSFRow newRow;
+
+		private HSSFCell newCell;
+
+		private XlsSheet(TemplateSheet tSheet, HSSFSheet newSheet)
+		{
+			this.tSheet = tSheet;
+			this.newSheet = newSheet;
+			copySheetSettings();
+			copyPaneInformation();
+			copyConditionalFormatting();
+			copyPrintSetup();
+		}
+
+		public void createRow(int row, short height)
+		{
+			if( workbook instanceof HSSFStreamingWorkbook )
+			{
+				newRow = ((HSSFStreamingWorkbook) workbook).createRow(newSheet, row);
+			}
+			else
+			{
+				newRow = newSheet.createRow(row);
+			}
+			newRow.setHeight(height);
+		}
+
+		public void setRowBreak(int row)
+		{
+			newSheet.setRowBreak(row);
+		}
+
+		public void createCell(int column, int type, short styleIndex)
+		{
+			newCell = newRow.createCell(column);
+			newCell.setCellType(type);
+			newCell.setCellStyle(getCellStyle(styleIndex));
+		}
+
+		public void setCellValue(boolean value)
+		{
+			newCell.setCellValue(value);
+		}
+
+		public void setCellValue(double value)
+		{
+			newCell.setCellValue(value);
+		}
+
+		@SuppressWarnings("deprecation")
+		public void setCellValue(String value)
+		{
+			newCell.setCellValue(value);
+		}
+
+		public void setCellValue(HSSFRichTextString value)
+		{
+			newCell.setCellValue(HSSFInternals.copy(value));
+		}
+
+		public void setCellFormula(TemplateFormula formula, int roff, int coff)
+		{
+			formula.setCellFormula(newCell, workbook, roff, coff);
+			if (logger.isTraceEnabled())
+			{
+				logger.trace("Formula " + formula.getFormula() + " ===(" + roff + "," + coff + ")===> "
+						+ newCell.getCellFormula() + " @(" + newCell.getRowIndex() + "," + newCell.getColumnIndex() + ")");
+			}
+		}
+
+		public void addMergedRegion(int firstRow, int lastRow, int firstColumn, int lastColumn)
+		{
+			newSheet.addMergedRegion(new CellRangeAddress(firstRow, lastRow, firstColumn, lastColumn));
+		}
+
+		private void copyConditionalFormatting()
+		{
+			HSSFSheet sheet = tSheet.sheet();
+			HSSFSheetConditionalFormatting sheetCf = sheet
+					.getSheetConditionalFormatting();
+			HSSFSheetConditionalFormatting newSheetcf = newSheet
+					.getSheetConditionalFormatting();
+
+			int n = sheetCf.getNumConditionalFormattings();
+			for (int i = 0; i != n; i++)
+			{
+				HSSFConditionalFormatting cf = sheetCf.getConditionalFormattingAt(i);
+				if (cf != null)
+				{
+					newSheetcf.addConditionalFormatting(cf);
+				}
+			}
+		}
+
+		private void copySheetSettings()
+		{
+			HSSFSheet sheet = tSheet.sheet();
+			newSheet.setDisplayFormulas(sheet.isDisplayFormulas());
+			newSheet.setDisplayGridlines(sheet.isDisplayGridlines());
+			newSheet.setDisplayRowColHeadings(sheet.isDisplayRowColHeadings());
+			newSheet.setGridsPrinted(sheet.isGridsPrinted());
+			newSheet.setPrintGridlines(sheet.isPrintGridlines());
+			
+			int fc = tSheet.getFirstColumn();
+			int lc = tSheet.getLastColumn();
+			
+			for (int c = fc; c <= lc; c++)
+			{
+				int nc = c - fc;
+				newSheet.setColumnWidth(nc, sheet.getColumnWidth(c));
+				if (sheet.isColumnBroken((short) c))
+				{
+					newSheet.setColumnBreak((short) nc);
+				}
+				if (sheet.isColumnHidden(c))
+				{
+					newSheet.setColumnHidden(nc, true);
+				}
+			}
+		}
+
+		private void copyPaneInformation()
+		{
+			PaneInformation paneInfo = tSheet.sheet().getPaneInformation();
+			if (paneInfo != null)
+			{
+				short vSplitPos = paneInfo.getVerticalSplitPosition();
+				short hSplitPos = paneInfo.getHorizontalSplitPosition();
+				short vSplitLeftColumn = paneInfo.getVerticalSplitLeftColumn();
+				short hSplitTopRow = paneInfo.getHorizontalSplitTopRow();
+				byte activePane = paneInfo.getActivePane();
+				if (paneInfo.isFreezePane())
+				{
+					newSheet.createFreezePane(vSplitPos, hSplitPos, vSplitLeftColumn,
+							hSplitTopRow);
+				}
+				else
+				{
+					newSheet.createSplitPane(vSplitPos, hSplitPos, vSplitLeftColumn,
+							hSplitTopRow, activePane);
+				}
+			}
+		}
+
+		private void copyPrintSetup()
+		{
+			HSSFPrintSetup ps = tSheet.sheet().getPrintSetup();
+			if( ps != null )
+			{
+				// Have to surround the code below with try/catch block
+				// since POI throws NPE in cases when the sheet
+				// does not contain Print Setup Record.
+				// POI also does not provide any means to determine if
+				// PrintSetupRecord is present except throwing NPE.
+				// TODO: patch POI to fix NPE at HSSFPrintSetup.getXXX methods
+				
+				try
+				{
+					short nCopies = ps.getCopies();
+					boolean draft = ps.getDraft();
+					short fitHeight = ps.getFitHeight();
+					short fitWidth = ps.getFitWidth();
+					double footerMargin = ps.getFooterMargin();
+					double headerMargin = ps.getHeaderMargin();
+					short hResolution = ps.getHResolution();
+					boolean landscape = ps.getLandscape();
+					boolean leftToRight = ps.getLeftToRight();
+					boolean noColor = ps.getNoColor();
+					boolean noOrientation = ps.getNoOrientation();
+					boolean notes = ps.getNotes();
+					short options = ps.getOptions();
+					short pageStart = ps.getPageStart();
+					short paperSize = ps.getPaperSize();
+					short scale = ps.getScale();
+					boolean usePage = ps.getUsePage();
+					boolean validSettings = ps.getValidSettings();
+					short vResolution = ps.getVResolution();
+					
+					HSSFPrintSetup newPs = newSheet.getPrintSetup();
+					newPs.setCopies(nCopies);
+					newPs.setDraft(draft);
+					newPs.setFitHeight(fitHeight);
+					newPs.setFitWidth(fitWidth);
+					newPs.setFooterMargin(footerMargin);
+					newPs.setHeaderMargin(headerMargin);
+					newPs.setHResolution(hResolution);
+					newPs.setLandscape(landscape);
+					newPs.setLeftToRight(leftToRight);
+					newPs.setNoColor(noColor);
+					newPs.setNoOrientation(noOrientation);
+					newPs.setNotes(notes);
+					newPs.setOptions(options);
+					newPs.setPageStart(pageStart);
+					newPs.setPaperSize(paperSize);
+					newPs.setScale(scale);
+					newPs.setUsePage(usePage);
+					newPs.setValidSettings(validSettings);
+					newPs.setVResolution(vResolution);
+				}
+				catch (NullPointerException e) 
+				{
+					if( logger.isTraceEnabled())
+					{
+						logger.warn("Print Setup information is missing");
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,993 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.log4j.Logger;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFFont;
+import org.apache.poi.hssf.usermodel.HSSFInternals;
+import org.apache.poi.hssf.usermodel.HSSFPrintSetup;
+import org.apache.poi.hssf.usermodel.HSSFRichTextString;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.CellRangeAddress;
+import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.hssf.util.PaneInformation;
+import org.templateit.util.FormulaUtil;
+
+/**
+ * Backend writing the workbook in the SpreadsheetML (.xlsx) format of Excel 2007.
+ * <br>
+ * The package is written to the output stream as it is generated: each generated sheet
+ * is a zip entry of its own, written while the sheet is generated. The last rows of the
+ * sheet are kept in a window of row buffers, the oldest row is written out when a new row
+ * does not fit into the window. The other parts (workbook, styles, sheets kept from the
+ * template) are written by {@link #write()}. Strings are written inline in the cells,
+ * so there is no shared string table to keep in memory, and formulas are written
+ * without values, the workbook is recalculated when it is opened.
+ * <br>
+ * Cell styles, fonts and colors are translated from the output workbook, the cell
+ * style of a cell has the same index as in the workbook. Conditional formatting
+ * of the template sheets is not translated.
+ * <br>
+ * The generated sheets are also created empty in the output workbook, so formulas
+ * referring to them are parsed and sheet names are checked as for .xls.
+ *
+ * @author Dmitriy Kumshayev
+ */
+final class XlsxBackend implements OutputBackend
+{
+	private static final Logger logger = Logger.getLogger(XlsxBackend.class);
+
+	/** number of rows kept in memory by default */
+	static final int WINDOW_SIZE = 100;
+
+	static final int MAX_ROWS = 1048576;
+
+	static final int MAX_COLUMNS = 16384;
+
+	private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+	private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+	private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+	private static final String NS_PACKAGE_RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+	private static final String[] ACTIVE_PANES = {"bottomRight", "topRight", "bottomLeft", "topLeft"};
+
+	private final HSSFWorkbook workbook;
+	private final ZipOutputStream zip;
+	private final Writer writer;
+	private final int windowSize;
+
+	/** number of sheets kept from the template, the first sheets of the workbook */
+	private final int keptSheets;
+	private final List<String> sheetNames = new ArrayList<String>();
+	private XlsxSheet currentSheet;
+	private boolean written = false;
+
+	XlsxBackend(HSSFWorkbook workbook, OutputStream out)
+	{
+		this(workbook, out, WINDOW_SIZE);
+	}
+
+	/**
+	 * @param windowSize - number of rows of a sheet kept in memory
+	 */
+	XlsxBackend(HSSFWorkbook workbook, OutputStream out, int windowSize)
+	{
+		if( windowSize < 1 )
+		{
+			throw new IllegalArgumentException("Window size " + windowSize);
+		}
+		this.workbook = workbook;
+		this.zip = new ZipOutputStream(out);
+		this.writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 65536);
+		this.windowSize = windowSize;
+		this.keptSheets = workbook.getNumberOfSheets();
+		for (int i = 0; i < keptSheets; i++)
+		{
+			sheetNames.add(workbook.getSheetName(i));
+		}
+	}
+
+	public SheetOutput createSheet(TemplateSheet tSheet, String sheetName)
+	{
+		checkNotWritten();
+		workbook.createSheet(sheetName);
+		sheetNames.add(sheetName);
+		try
+		{
+			finishSheet();
+			HSSFSheet sheet = tSheet.sheet();
+			currentSheet = new XlsxSheet(sheetNames.size(), sheet, tSheet.getFirstColumn(), tSheet.getLastColumn());
+			if( sheet.getSheetConditionalFormatting().getNumConditionalFormattings() > 0 )
+			{
+				logger.warn("Conditional formatting of sheet " + sheetName + " is not written to .xlsx");
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		return currentSheet;
+	}
+
+	public int getMaxRows()
+	{
+		return MAX_ROWS;
+	}
+
+	public void write() throws IOException
+	{
+		checkNotWritten();
+		finishSheet();
+		written = true;
+		for (int i = 0; i < keptSheets; i++)
+		{
+			writeKeptSheet(i);
+		}
+		writeEntry("[Content_Types].xml", contentTypes());
+		writeEntry("_rels/.rels", XML_HEADER
+				+ "<Relationships xmlns=\"" + NS_PACKAGE_RELATIONSHIPS + "\">"
+				+ "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+				+ "</Relationships>");
+		writeEntry("xl/workbook.xml", workbookXml());
+		writeEntry("xl/_rels/workbook.xml.rels", workbookRelationships());
+		zip.putNextEntry(new ZipEntry("xl/styles.xml"));
+		new XlsxStyles(workbook).write(writer);
+		writer.flush();
+		zip.closeEntry();
+		zip.finish();
+	}
+
+	/**
+	 * Nothing to release: the sheets are written to the output stream
+	 * while they are generated.
+	 */
+	public void close()
+	{
+	}
+
+	private void checkNotWritten()
+	{
+		if( written )
+		{
+			throw new IllegalStateException("The workbook is already written");
+		}
+	}
+
+	private void finishSheet() throws IOException
+	{
+		if( currentSheet != null )
+		{
+			currentSheet.finish();
+			currentSheet = null;
+		}
+	}
+
+	/**
+	 * Copies a sheet kept from the template: cells, row heights and merged regions.
+	 */
+	private void writeKeptSheet(int index) throws IOException
+	{
+		HSSFSheet sheet = workbook.getSheetAt(index);
+		int lastColumn = 0;
+		for (Iterator<?> it = sheet.rowIterator(); it.hasNext();)
+		{
+			lastColumn = Math.max(lastColumn, ((HSSFRow) it.next()).getLastCellNum() - 1);
+		}
+		XlsxSheet out = new XlsxSheet(index + 1, sheet, 0, lastColumn);
+		for (Iterator<?> it = sheet.rowIterator(); it.hasNext();)
+		{
+			HSSFRow row = (HSSFRow) it.next();
+			out.createRow(row.getRowNum(), row.getHeight());
+			for (Iterator<?> cells = row.cellIterator(); cells.hasNext();)
+			{
+				HSSFCell cell = (HSSFCell) cells.next();
+				int type = cell.getCellType();
+				out.createCell(cell.getColumnIndex(), type, cell.getCellStyle().getIndex());
+				switch (type)
+				{
+					case HSSFCell.CELL_TYPE_BOOLEAN:	out.setCellValue(cell.getBooleanCellValue());		break;
+					case HSSFCell.CELL_TYPE_NUMERIC:	out.setCellValue(cell.getNumericCellValue());		break;
+					case HSSFCell.CELL_TYPE_STRING:		out.setCellValue(cell.getRichStringCellValue());	break;
+					case HSSFCell.CELL_TYPE_FORMULA:	out.setCellFormula(cell.getCellFormula());			break;
+				}
+			}
+		}
+		for (int i = 0; i < sheet.getNumMergedRegions(); i++)
+		{
+			CellRangeAddress region = sheet.getMergedRegion(i);
+			out.addMergedRegion(region.getFirstRow(), region.getLastRow(),
+					region.getFirstColumn(), region.getLastColumn());
+		}
+		int[] rowBreaks = sheet.getRowBreaks();
+		for (int i = 0; rowBreaks != null && i < rowBreaks.length; i++)
+		{
+			out.setRowBreak(rowBreaks[i]);
+		}
+		out.finish();
+	}
+
+	private void writeEntry(String name, String content) throws IOException
+	{
+		zip.putNextEntry(new ZipEntry(name));
+		writer.write(content);
+		writer.flush();
+		zip.closeEntry();
+	}
+
+	private String contentTypes()
+	{
+		StringBuilder sb = new StringBuilder(XML_HEADER);
+		sb.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+		sb.append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+		sb.append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+		sb.append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+		sb.append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+		for (int i = 1; i <= sheetNames.size(); i++)
+		{
+			sb.append("<Override PartName=\"/xl/worksheets/sheet").append(i)
+					.append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+		}
+		sb.append("</Types>");
+		return sb.toString();
+	}
+
+	private String workbookXml()
+	{
+		StringBuilder sb = new StringBuilder(XML_HEADER);
+		sb.append("<workbook xmlns=\"").append(NS_MAIN).append("\" xmlns:r=\"").append(NS_RELATIONSHIPS).append("\">");
+		if( HSSFInternals.isUsing1904DateWindowing(workbook) )
+		{
+			sb.append("<workbookPr date1904=\"1\"/>");
+		}
+		sb.append("<bookViews><workbookView activeTab=\"0\"/></bookViews>");
+		sb.append("<sheets>");
+		for (int i = 1; i <= sheetNames.size(); i++)
+		{
+			sb.append("<sheet name=\"");
+			escape(sb, sheetNames.get(i - 1));
+			sb.append("\" sheetId=\"").append(i).append("\" r:id=\"rId").append(i).append("\"/>");
+		}
+		sb.append("</sheets>");
+		sb.append("<calcPr calcId=\"0\" fullCalcOnLoad=\"1\"/>");
+		sb.append("</workbook>");
+		return sb.toString();
+	}
+
+	private String workbookRelationships()
+	{
+		StringBuilder sb = new StringBuilder(XML_HEADER);
+		sb.append("<Relationships xmlns=\"").append(NS_PACKAGE_RELATIONSHIPS).append("\">");
+		int n = sheetNames.size();
+		for (int i = 1; i <= n; i++)
+		{
+			sb.append("<Relationship Id=\"rId").append(i)
+					.append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet")
+					.append(i).append(".xml\"/>");
+		}
+		sb.append("<Relationship Id=\"rId").append(n + 1)
+				.append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>");
+		sb.append("</Relationships>");
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the text escaped for XML content and attribute values. Characters
+	 * not allowed in XML are escaped as _xHHHH_, as Excel escapes them.
+	 */
+	static void escape(StringBuilder sb, String text)
+	{
+		int n = text.length();
+		for (int i = 0; i < n; i++)
+		{
+			char ch = text.charAt(i);
+			switch (ch)
+			{
+				case '<':	sb.append("&lt;");		break;
+				case '>':	sb.append("&gt;");		break;
+				case '&':	sb.append("&amp;");		break;
+				case '"':	sb.append("&quot;");	break;
+				case '_':
+				{
+					// a literal _xHHHH_ is escaped not to be read as an escaped character
+					sb.append(isEscapedCharacter(text, i) ? "_x005F_" : "_");
+				}
+				break;
+				default:
+				{
+					if( ch < 0x20 && ch != '\t' && ch != '\n' && ch != '\r' || ch == 0xFFFE || ch == 0xFFFF )
+					{
+						sb.append("_x").append(String.format("%04X", (int) ch)).append('_');
+					}
+					else
+					{
+						sb.append(ch);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean isEscapedCharacter(String text, int i)
+	{
+		if( i + 6 >= text.length() || text.charAt(i + 1) != 'x' || text.charAt(i + 6) != '_' )
+		{
+			return false;
+		}
+		for (int k = i + 2; k < i + 6; k++)
+		{
+			if( Character.digit(text.charAt(k), 16) < 0 )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Appends a number the shortest way: integers without a decimal point.
+	 */
+	static void appendNumber(StringBuilder sb, double value)
+	{
+		if( value == Math.rint(value) && Math.abs(value) < 1e15 )
+		{
+			sb.append((long) value);
+		}
+		else
+		{
+			sb.append(value);
+		}
+	}
+
+	/**
+	 * @return ARGB of a palette color, <code>null</code> for the automatic color
+	 */
+	static String rgb(HSSFWorkbook workbook, short index)
+	{
+		if( index == HSSFColor.AUTOMATIC.index || index == HSSFFont.COLOR_NORMAL )
+		{
+			return null;
+		}
+		HSSFColor color = workbook.getCustomPalette().getColor(index);
+		if( color == null )
+		{
+			return null;
+		}
+		short[] triplet = color.getTriplet();
+		return String.format("FF%02X%02X%02X", triplet[0], triplet[1], triplet[2]);
+	}
+
+	/**
+	 * Appends the properties of a font as children of a font or run properties element.
+	 *
+	 * @param nameElement - element of the font name: <em>name</em> in a font,
+	 *   <em>rFont</em> in run properties
+	 */
+	static void appendFont(StringBuilder sb, HSSFWorkbook workbook, HSSFFont font, String nameElement)
+	{
+		if( font.getBoldweight() >= HSSFFont.BOLDWEIGHT_BOLD )
+		{
+			sb.append("<b/>");
+		}
+		if( font.getItalic() )
+		{
+			sb.append("<i/>");
+		}
+		if( font.getStrikeout() )
+		{
+			sb.append("<strike/>");
+		}
+		switch (font.getUnderline())
+		{
+			case HSSFFont.U_SINGLE:				sb.append("<u/>");								break;
+			case HSSFFont.U_DOUBLE:				sb.append("<u val=\"double\"/>");				break;
+			case HSSFFont.U_SINGLE_ACCOUNTING:	sb.append("<u val=\"singleAccounting\"/>");		break;
+			case HSSFFont.U_DOUBLE_ACCOUNTING:	sb.append("<u val=\"doubleAccounting\"/>");		break;
+		}
+		switch (font.getTypeOffset())
+		{
+			case HSSFFont.SS_SUPER:		sb.append("<vertAlign val=\"superscript\"/>");	break;
+			case HSSFFont.SS_SUB:		sb.append("<vertAlign val=\"subscript\"/>");	break;
+		}
+		sb.append("<sz val=\"");
+		appendNumber(sb, font.getFontHeight() / 20.0);
+		sb.append("\"/>");
+		String rgb = rgb(workbook, font.getColor());
+		if( rgb != null )
+		{
+			sb.append("<color rgb=\"").append(rgb).append("\"/>");
+		}
+		sb.append('<').append(nameElement).append(" val=\"");
+		escape(sb, font.getFontName());
+		sb.append("\"/>");
+	}
+
+	/**
+	 * Sheet written to its own zip entry. The element before the rows are written
+	 * when the sheet is created, the elements after the rows when it is finished.
+	 */
+	private final class XlsxSheet implements SheetOutput
+	{
+		private final HSSFSheet settings;
+
+		private final int firstColumn;
+
+		private final int lastColumn;
+
+		/** rows of the window, the row of the sequence number n is rows[n % rows.length] */
+		private final XlsxRow[] rows;
+
+		/** sequence numbers of the first row in the window and of the next row */
+		private long first = 0, next = 0;
+
+		private XlsxRow row;
+
+		private int lastRow = -1;
+
+		private final List<int[]> mergedRegions = new ArrayList<int[]>();
+
+		private int[] rowBreaks = new int[0];
+
+		private final StringBuilder sb = new StringBuilder(4096);
+
+		/** names of the columns */
+		private String[] columnNames = new String[32];
+
+		/**
+		 * @param number - number of the sheet in the workbook starting from 1
+		 * @param settings - sheet the settings are copied from
+		 * @param firstColumn - first column of the settings sheet, the first column of the new sheet
+		 */
+		private XlsxSheet(int number, HSSFSheet settings, int firstColumn, int lastColumn) throws IOException
+		{
+			this.settings = settings;
+			this.firstColumn = firstColumn;
+			this.lastColumn = lastColumn;
+			this.rows = new XlsxRow[windowSize];
+			zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + number + ".xml"));
+			sb.append(XML_HEADER);
+			sb.append("<worksheet xmlns=\"").append(NS_MAIN).append("\" xmlns:r=\"").append(NS_RELATIONSHIPS).append("\">");
+			if( settings.getFitToPage() )
+			{
+				sb.append("<sheetPr><pageSetUpPr fitToPage=\"1\"/></sheetPr>");
+			}
+			appendSheetView(number == 1);
+			sb.append("<sheetFormatPr defaultRowHeight=\"");
+			appendNumber(sb, settings.getDefaultRowHeight() / 20.0);
+			sb.append("\"/>");
+			if( lastColumn >= firstColumn )
+			{
+				sb.append("<cols>");
+				for (int c = firstColumn; c <= lastColumn; c++)
+				{
+					int nc = c - firstColumn + 1;
+					sb.append("<col min=\"").append(nc).append("\" max=\"").append(nc).append("\" width=\"");
+					appendNumber(sb, settings.getColumnWidth(c) / 256.0);
+					sb.append("\" customWidth=\"1\"");
+					if( settings.isColumnHidden(c) )
+					{
+						sb.append(" hidden=\"1\"");
+					}
+					sb.append("/>");
+				}
+				sb.append("</cols>");
+			}
+			sb.append("<sheetData>");
+			flush();
+		}
+
+		private void appendSheetView(boolean selected)
+		{
+			sb.append("<sheetViews><sheetView workbookViewId=\"0\"");
+			if( selected )
+			{
+				sb.append(" tabSelected=\"1\"");
+			}
+			if( !settings.isDisplayGridlines() )
+			{
+				sb.append(" showGridLines=\"0\"");
+			}
+			if( !settings.isDisplayRowColHeadings() )
+			{
+				sb.append(" showRowColHeaders=\"0\"");
+			}
+			if( settings.isDisplayFormulas() )
+			{
+				sb.append(" showFormulas=\"1\"");
+			}
+			PaneInformation pane = settings.getPaneInformation();
+			if( pane == null || (pane.getVerticalSplitPosition() == 0 && pane.getHorizontalSplitPosition() == 0) )
+			{
+				sb.append("/></sheetViews>");
+				return;
+			}
+			sb.append("><pane");
+			int xSplit = pane.getVerticalSplitPosition();
+			int ySplit = pane.getHorizontalSplitPosition();
+			if( xSplit > 0 )
+			{
+				sb.append(" xSplit=\"").append(xSplit).append('"');
+			}
+			if( ySplit > 0 )
+			{
+				sb.append(" ySplit=\"").append(ySplit).append('"');
+			}
+			sb.append(" topLeftCell=\"");
+			appendCellName(pane.getHorizontalSplitTopRow(), pane.getVerticalSplitLeftColumn());
+			sb.append('"');
+			String activePane;
+			if( pane.isFreezePane() )
+			{
+				activePane = xSplit > 0 && ySplit > 0 ? "bottomRight" : ySplit > 0 ? "bottomLeft" : "topRight";
+			}
+			else
+			{
+				activePane = ACTIVE_PANES[pane.getActivePane() & 3];
+			}
+			sb.append(" activePane=\"").append(activePane).append('"');
+			sb.append(" state=\"").append(pane.isFreezePane() ? "frozen" : "split").append("\"/>");
+			sb.append("<selection pane=\"").append(activePane).append("\"/>");
+			sb.append("</sheetView></sheetViews>");
+		}
+
+		public void createRow(int rownum, short height)
+		{
+			if( rownum <= lastRow )
+			{
+				throw new IllegalStateException("Row " + rownum + " is created after row " + lastRow);
+			}
+			if( rownum >= MAX_ROWS )
+			{
+				throw new IllegalArgumentException("Maximum row number is " + (MAX_ROWS - 1));
+			}
+			if( next - first == rows.length )
+			{
+				writeRow(rows[(int) (first++ % rows.length)]);
+			}
+			int slot = (int) (next++ % rows.length);
+			if( rows[slot] == null )
+			{
+				rows[slot] = new XlsxRow();
+			}
+			row = rows[slot];
+			row.reset(rownum, height);
+			lastRow = rownum;
+		}
+
+		public void setRowBreak(int rownum)
+		{
+			int i = Arrays.binarySearch(rowBreaks, rownum);
+			if( i < 0 )
+			{
+				i = -i - 1;
+				int[] breaks = new int[rowBreaks.length + 1];
+				System.arraycopy(rowBreaks, 0, breaks, 0, i);
+				breaks[i] = rownum;
+				System.arraycopy(rowBreaks, i, breaks, i + 1, rowBreaks.length - i);
+				rowBreaks = breaks;
+			}
+		}
+
+		public void createCell(int column, int type, short styleIndex)
+		{
+			if( column >= MAX_COLUMNS )
+			{
+				throw new IllegalArgumentException("Maximum column number is " + (MAX_COLUMNS - 1));
+			}
+			row.createCell(column, type, styleIndex);
+		}
+
+		public void setCellValue(boolean value)
+		{
+			row.setValue(XlsxRow.BOOLEAN, value ? 1 : 0, null);
+		}
+
+		public void setCellValue(double value)
+		{
+			row.setValue(XlsxRow.NUMBER, value, null);
+		}
+
+		public void setCellValue(String value)
+		{
+			row.setValue(XlsxRow.STRING, 0, value);
+		}
+
+		public void setCellValue(HSSFRichTextString value)
+		{
+			if( value.numFormattingRuns() == 0 )
+			{
+				row.setValue(XlsxRow.STRING, 0, value.getString());
+			}
+			else
+			{
+				row.setValue(XlsxRow.RICH_TEXT, 0, value);
+			}
+		}
+
+		public void setCellFormula(TemplateFormula formula, int roff, int coff)
+		{
+			setCellFormula(FormulaUtil.offsetRelativeReferences(formula.getFormula(), roff, coff));
+		}
+
+		private void setCellFormula(String formula)
+		{
+			row.formulas[row.nCells - 1] = formula;
+		}
+
+		public void addMergedRegion(int firstRow, int lastRow, int firstColumn, int lastColumn)
+		{
+			mergedRegions.add(new int[] {firstRow, lastRow, firstColumn, lastColumn});
+		}
+
+		/**
+		 * Writes the rows of the window and the elements after the rows, closes the zip entry.
+		 */
+		private void finish() throws IOException
+		{
+			while (first < next)
+			{
+				writeRow(rows[(int) (first++ % rows.length)]);
+			}
+			sb.append("</sheetData>");
+			if( !mergedRegions.isEmpty() )
+			{
+				sb.append("<mergeCells count=\"").append(mergedRegions.size()).append("\">");
+				for (int[] region : mergedRegions)
+				{
+					sb.append("<mergeCell ref=\"");
+					appendCellName(region[0], region[2]);
+					sb.append(':');
+					appendCellName(region[1], region[3]);
+					sb.append("\"/>");
+				}
+				sb.append("</mergeCells>");
+			}
+			if( settings.isPrintGridlines() )
+			{
+				sb.append("<printOptions gridLines=\"1\" gridLinesSet=\"1\"/>");
+			}
+			appendPageSetup();
+			if( rowBreaks.length > 0 )
+			{
+				sb.append("<rowBreaks count=\"").append(rowBreaks.length)
+						.append("\" manualBreakCount=\"").append(rowBreaks.length).append("\">");
+				for (int brk : rowBreaks)
+				{
+					sb.append("<brk id=\"").append(brk).append("\" max=\"").append(MAX_COLUMNS - 1).append("\" man=\"1\"/>");
+				}
+				sb.append("</rowBreaks>");
+			}
+			List<Integer> columnBreaks = new ArrayList<Integer>();
+			for (int c = firstColumn; c <= lastColumn; c++)
+			{
+				if( settings.isColumnBroken((short) c) )
+				{
+					columnBreaks.add(c - firstColumn);
+				}
+			}
+			if( !columnBreaks.isEmpty() )
+			{
+				sb.append("<colBreaks count=\"").append(columnBreaks.size())
+						.append("\" manualBreakCount=\"").append(columnBreaks.size()).append("\">");
+				for (int brk : columnBreaks)
+				{
+					sb.append("<brk id=\"").append(brk).append("\" max=\"").append(MAX_ROWS - 1).append("\" man=\"1\"/>");
+				}
+				sb.append("</colBreaks>");
+			}
+			sb.append("</worksheet>");
+			flush();
+			writer.flush();
+			zip.closeEntry();
+		}
+
+		private void appendPageSetup()
+		{
+			double headerMargin = 0.5;
+			double footerMargin = 0.5;
+			HSSFPrintSetup ps = settings.getPrintSetup();
+			StringBuilder setup = new StringBuilder();
+			try
+			{
+				// the getters throw NPE if the sheet has no print setup record
+				headerMargin = ps.getHeaderMargin();
+				footerMargin = ps.getFooterMargin();
+				setup.append("<pageSetup paperSize=\"").append(ps.getPaperSize()).append('"');
+				setup.append(" scale=\"").append(ps.getScale()).append('"');
+				setup.append(" firstPageNumber=\"").append(ps.getPageStart()).append('"');
+				setup.append(" fitToWidth=\"").append(ps.getFitWidth()).append('"');
+				setup.append(" fitToHeight=\"").append(ps.getFitHeight()).append('"');
+				setup.append(" pageOrder=\"").append(ps.getLeftToRight() ? "overThenDown" : "downThenOver").append('"');
+				if( !ps.getNoOrientation() )
+				{
+					setup.append(" orientation=\"").append(ps.getLandscape() ? "landscape" : "portrait").append('"');
+				}
+				setup.append(" blackAndWhite=\"").append(ps.getNoColor() ? 1 : 0).append('"');
+				setup.append(" draft=\"").append(ps.getDraft() ? 1 : 0).append('"');
+				setup.append(" useFirstPageNumber=\"").append(ps.getUsePage() ? 1 : 0).append('"');
+				setup.append(" copies=\"").append(ps.getCopies()).append("\"/>");
+			}
+			catch (NullPointerException e)
+			{
+				setup.setLength(0);
+			}
+			sb.append("<pageMargins left=\"");
+			appendNumber(sb, settings.getMargin(HSSFSheet.LeftMargin));
+			sb.append("\" right=\"");
+			appendNumber(sb, settings.getMargin(HSSFSheet.RightMargin));
+			sb.append("\" top=\"");
+			appendNumber(sb, settings.getMargin(HSSFSheet.TopMargin));
+			sb.append("\" bottom=\"");
+			appendNumber(sb, settings.getMargin(HSSFSheet.BottomMargin));
+			sb.append("\" header=\"");
+			appendNumber(sb, headerMargin);
+			sb.append("\" footer=\"");
+			appendNumber(sb, footerMargin);
+			sb.append("\"/>");
+			sb.append(setup);
+		}
+
+		private void writeRow(XlsxRow r)
+		{
+			sb.append("<row r=\"").append(r.rownum + 1).append('"');
+			if( r.height >= 0 )
+			{
+				sb.append(" ht=\"");
+				appendNumber(sb, r.height / 20.0);
+				sb.append("\" customHeight=\"1\"");
+			}
+			sb.append('>');
+			for (int i = 0; i < r.nCells; i++)
+			{
+				sb.append("<c r=\"");
+				appendCellName(r.rownum, r.columns[i]);
+				sb.append("\" s=\"").append(r.styles[i]).append('"');
+				String formula = r.formulas[i];
+				byte kind = r.kinds[i];
+				switch (kind)
+				{
+					case XlsxRow.BOOLEAN:	sb.append(" t=\"b\"");									break;
+					case XlsxRow.STRING:
+					case XlsxRow.RICH_TEXT:	sb.append(formula != null ? " t=\"str\"" : " t=\"inlineStr\"");	break;
+				}
+				if( formula == null && kind == XlsxRow.BLANK )
+				{
+					sb.append("/>");
+					continue;
+				}
+				sb.append('>');
+				if( formula != null )
+				{
+					sb.append("<f>");
+					escape(sb, formula);
+					sb.append("</f>");
+				}
+				switch (kind)
+				{
+					case XlsxRow.NUMBER:
+					case XlsxRow.BOOLEAN:
+					{
+						sb.append("<v>");
+						appendNumber(sb, r.numbers[i]);
+						sb.append("</v>");
+					}
+					break;
+					case XlsxRow.STRING:
+					case XlsxRow.RICH_TEXT:
+					{
+						String text = kind == XlsxRow.STRING ? (String) r.values[i]
+								: ((HSSFRichTextString) r.values[i]).getString();
+						if( formula != null )
+						{
+							sb.append("<v>");
+							escape(sb, text);
+							sb.append("</v>");
+						}
+						else if( kind == XlsxRow.STRING )
+						{
+							sb.append("<is>");
+							appendText(text, 0, text.length());
+							sb.append("</is>");
+						}
+						else
+						{
+							appendRichText((HSSFRichTextString) r.values[i]);
+						}
+					}
+					break;
+				}
+				sb.append("</c>");
+			}
+			sb.append("</row>");
+			if( sb.length() >= 32768 )
+			{
+				try
+				{
+					flush();
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+		private void appendRichText(HSSFRichTextString text)
+		{
+			String s = text.getString();
+			int n = text.numFormattingRuns();
+			sb.append("<is>");
+			int start = 0;
+			short font = -1;
+			for (int i = 0; i <= n; i++)
+			{
+				int end = i < n ? Math.min(text.getIndexOfFormattingRun(i), s.length()) : s.length();
+				if( end > start )
+				{
+					sb.append("<r>");
+					if( font >= 0 )
+					{
+						sb.append("<rPr>");
+						appendFont(sb, workbook, workbook.getFontAt(font), "rFont");
+						sb.append("</rPr>");
+					}
+					appendText(s, start, end);
+					sb.append("</r>");
+					start = end;
+				}
+				if( i < n )
+				{
+					font = text.getFontOfFormattingRun(i);
+				}
+			}
+			sb.append("</is>");
+		}
+
+		private void appendText(String s, int start, int end)
+		{
+			sb.append("<t xml:space=\"preserve\">");
+			escape(sb, s.substring(start, end));
+			sb.append("</t>");
+		}
+
+		private void appendCellName(int rownum, int column)
+		{
+			if( column >= columnNames.length )
+			{
+				columnNames = Arrays.copyOf(columnNames, Math.max(column + 1, columnNames.length * 2));
+			}
+			String name = columnNames[column];
+			if( name == null )
+			{
+				StringBuilder b = new StringBuilder(3);
+				FormulaUtil.appendColumnName(b, column);
+				name = b.toString();
+				columnNames[column] = name;
+			}
+			sb.append(name).append(rownum + 1);
+		}
+
+		private void flush() throws IOException
+		{
+			writer.append(sb);
+			sb.setLength(0);
+		}
+	}
+
+	/**
+	 * Row buffer of the window, reused for the rows passing through it.
+	 */
+	private static final class XlsxRow
+	{
+		static final byte BLANK = 0, NUMBER = 1, BOOLEAN = 2, STRING = 3, RICH_TEXT = 4;
+
+		int rownum;
+
+		short height;
+
+		int nCells;
+
+		int[] columns = new int[16];
+
+		short[] styles = new short[16];
+
+		byte[] kinds = new byte[16];
+
+		double[] numbers = new double[16];
+
+		/** String or HSSFRichTextString of the text cells */
+		Object[] values = new Object[16];
+
+		String[] formulas = new String[16];
+
+		void reset(int rownum, short height)
+		{
+			this.rownum = rownum;
+			this.height = height;
+			Arrays.fill(values, 0, nCells, null);
+			Arrays.fill(formulas, 0, nCells, null);
+			this.nCells = 0;
+		}
+
+		/**
+		 * Creates a cell with the default value of the type as HSSFCell.setCellType does.
+		 */
+		void createCell(int column, int type, short styleIndex)
+		{
+			if( nCells > 0 && column <= columns[nCells - 1] )
+			{
+				throw new IllegalStateException("Cell " + column + " is created after cell " + columns[nCells - 1]);
+			}
+			if( nCells == columns.length )
+			{
+				int size = nCells * 2;
+				columns = Arrays.copyOf(columns, size);
+				styles = Arrays.copyOf(styles, size);
+				kinds = Arrays.copyOf(kinds, size);
+				numbers = Arrays.copyOf(numbers, size);
+				values = Arrays.copyOf(values, size);
+				formulas = Arrays.copyOf(formulas, size);
+			}
+			columns[nCells] = column;
+			styles[nCells] = styleIndex;
+			formulas[nCells] = null;
+			switch (type)
+			{
+				case HSSFCell.CELL_TYPE_NUMERIC:	set(nCells, NUMBER, 0, null);	break;
+				case HSSFCell.CELL_TYPE_BOOLEAN:	set(nCells, BOOLEAN, 0, null);	break;
+				case HSSFCell.CELL_TYPE_STRING:		set(nCells, STRING, 0, "");		break;
+				default:							set(nCells, BLANK, 0, null);
+			}
+			nCells++;
+		}
+
+		/**
+		 * Sets the value of the last cell, the formula of a formula cell is kept
+		 * and the value becomes its cached value.
+		 */
+		void setValue(byte kind, double number, Object value)
+		{
+			set(nCells - 1, kind, number, value);
+		}
+
+		private void set(int i, byte kind, double number, Object value)
+		{
+			kinds[i] = kind;
+			numbers[i] = number;
+			values[i] = value;
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFDataFormat;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * Styles part of an .xlsx workbook translated from the cell styles of an HSSF workbook.
+ * Every cell style becomes the cell format of the same index, equal fonts, fills and
+ * borders are written once.
+ *
+ * @author Dmitriy Kumshayev
+ */
+final class XlsxStyles
+{
+	private static final String[] FILL_PATTERNS = {"none", "solid", "mediumGray", "darkGray",
+			"lightGray", "darkHorizontal", "darkVertical", "darkDown", "darkUp", "darkGrid",
+			"darkTrellis", "lightHorizontal", "lightVertical", "lightDown", "lightUp",
+			"lightGrid", "lightTrellis", "gray125", "gray0625"};
+
+	private static final String[] BORDER_STYLES = {"none", "thin", "medium", "dashed", "dotted",
+			"thick", "double", "hair", "mediumDashed", "dashDot", "mediumDashDot", "dashDotDot",
+			"mediumDashDotDot", "slantDashDot"};
+
+	private static final String[] HORIZONTAL_ALIGNMENTS = {"general", "left", "center", "right",
+			"fill", "justify", "centerContinuous"};
+
+	private static final String[] VERTICAL_ALIGNMENTS = {"top", "center", "bottom", "justify"};
+
+	/** first number format id which is not built in */
+	private static final int FIRST_CUSTOM_FORMAT = 164;
+
+	private final HSSFWorkbook workbook;
+	private final HSSFDataFormat formats;
+
+	private final Map<Short,Integer> fonts = new LinkedHashMap<Short,Integer>();
+	private final Map<String,Integer> fills = new LinkedHashMap<String,Integer>();
+	private final Map<String,Integer> borders = new LinkedHashMap<String,Integer>();
+	/** format strings of the number formats which are not built in by their ids */
+	private final Map<Integer,String> numberFormats = new LinkedHashMap<Integer,String>();
+	/** xlsx ids of the .xls number formats which are not built in in .xlsx */
+	private final Map<Short,Integer> formatIds = new LinkedHashMap<Short,Integer>();
+	/** next id for the formats which are not built in in .xlsx, above the ids used by the cell styles */
+	private int nextFormatId = FIRST_CUSTOM_FORMAT;
+
+	XlsxStyles(HSSFWorkbook workbook)
+	{
+		this.workbook = workbook;
+		this.formats = workbook.createDataFormat();
+	}
+
+	void write(Writer out) throws IOException
+	{
+		fonts.put((short) 0, 0);
+		fills.put("<fill><patternFill patternType=\"none\"/></fill>", 0);
+		fills.put("<fill><patternFill patternType=\"gray125\"/></fill>", 1);
+		borders.put("<border><left/><right/><top/><bottom/><diagonal/></border>", 0);
+
+		int n = workbook.getNumCellStyles();
+		for (short i = 0; i < n; i++)
+		{
+			nextFormatId = Math.max(nextFormatId, workbook.getCellStyleAt(i).getDataFormat() + 1);
+		}
+		StringBuilder xfs = new StringBuilder(n * 160);
+		for (short i = 0; i < n; i++)
+		{
+			appendCellFormat(xfs, workbook.getCellStyleAt(i));
+		}
+
+		StringBuilder sb = new StringBuilder(xfs.length() + 4096);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+		sb.append("<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+		if( !numberFormats.isEmpty() )
+		{
+			sb.append("<numFmts count=\"").append(numberFormats.size()).append("\">");
+			for (Map.Entry<Integer,String> e : numberFormats.entrySet())
+			{
+				sb.append("<numFmt numFmtId=\"").append(e.getKey()).append("\" formatCode=\"");
+				XlsxBackend.escape(sb, e.getValue());
+				sb.append("\"/>");
+			}
+			sb.append("</numFmts>");
+		}
+		sb.append("<fonts count=\"").append(fonts.size()).append("\">");
+		for (short font : fonts.keySet())
+		{
+			sb.append("<font>");
+			XlsxBackend.appendFont(sb, workbook, workbook.getFontAt(font), "name");
+			sb.append("</font>");
+		}
+		sb.append("</fonts>");
+		sb.append("<fills count=\"").append(fills.size()).append("\">");
+		for (String fill : fills.keySet())
+		{
+			sb.append(fill);
+		}
+		sb.append("</fills>");
+		sb.append("<borders count=\"").append(borders.size()).append("\">");
+		for (String border : borders.keySet())
+		{
+			sb.append(border);
+		}
+		sb.append("</borders>");
+		sb.append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>");
+		sb.append("<cellXfs count=\"").append(n).append("\">");
+		sb.append(xfs);
+		sb.append("</cellXfs>");
+		sb.append("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>");
+		sb.append("</styleSheet>");
+		out.append(sb);
+	}
+
+	private void appendCellFormat(StringBuilder sb, HSSFCellStyle style)
+	{
+		sb.append("<xf numFmtId=\"").append(formatId(style.getDataFormat()));
+		sb.append("\" fontId=\"").append(fontId(style.getFontIndex()));
+		sb.append("\" fillId=\"").append(fillId(style));
+		sb.append("\" borderId=\"").append(borderId(style));
+		sb.append("\" xfId=\"0\" applyNumberFormat=\"1\" applyFont=\"1\" applyFill=\"1\" applyBorder=\"1\" applyAlignment=\"1\" applyProtection=\"1\">");
+		sb.append("<alignment");
+		short horizontal = style.getAlignment();
+		if( horizontal > 0 && horizontal < HORIZONTAL_ALIGNMENTS.length )
+		{
+			sb.append(" horizontal=\"").append(HORIZONTAL_ALIGNMENTS[horizontal]).append('"');
+		}
+		short vertical = style.getVerticalAlignment();
+		if( vertical >= 0 && vertical < VERTICAL_ALIGNMENTS.length && vertical != HSSFCellStyle.VERTICAL_BOTTOM )
+		{
+			sb.append(" vertical=\"").append(VERTICAL_ALIGNMENTS[vertical]).append('"');
+		}
+		short rotation = style.getRotation();
+		if( rotation != 0 )
+		{
+			// getRotation returns -90..90, 255 (vertical text) comes as 90 - 255
+			int r = rotation == 90 - 255 ? 255 : rotation < 0 ? 90 - rotation : rotation;
+			sb.append(" textRotation=\"").append(r).append('"');
+		}
+		if( style.getWrapText() )
+		{
+			sb.append(" wrapText=\"1\"");
+		}
+		if( style.getIndention() > 0 )
+		{
+			sb.append(" indent=\"").append(style.getIndention()).append('"');
+		}
+		sb.append("/>");
+		sb.append("<protection locked=\"").append(style.getLocked() ? 1 : 0)
+				.append("\" hidden=\"").append(style.getHidden() ? 1 : 0).append("\"/>");
+		sb.append("</xf>");
+	}
+
+	/**
+	 * .xls formats built in in .xlsx keep their ids. The others, the currency formats
+	 * of the locale and the reserved ones among them, are written with their format strings.
+	 */
+	private int formatId(short format)
+	{
+		if( (format >= 0 && format <= 4) || (format >= 9 && format <= 22)
+				|| (format >= 37 && format <= 40) || (format >= 45 && format <= 49) )
+		{
+			return format;
+		}
+		Integer id = formatIds.get(format);
+		if( id == null )
+		{
+			String formatString = formats.getFormat(format);
+			if( formatString == null )
+			{
+				return 0;
+			}
+			id = format >= FIRST_CUSTOM_FORMAT ? (int) format : nextFormatId++;
+			formatIds.put(format, id);
+			numberFormats.put(id, formatString);
+		}
+		return id;
+	}
+
+	private int fontId(short font)
+	{
+		Integer id = fonts.get(font);
+		if( id == null )
+		{
+			id = fonts.size();
+			fonts.put(font, id);
+		}
+		return id;
+	}
+
+	private int fillId(HSSFCellStyle style)
+	{
+		short pattern = style.getFillPattern();
+		if( pattern <= 0 || pattern >= FILL_PATTERNS.length )
+		{
+			return 0;
+		}
+		StringBuilder sb = new StringBuilder("<fill><patternFill patternType=\"");
+		sb.append(FILL_PATTERNS[pattern]).append("\">");
+		appendColor(sb, "fgColor", style.getFillForegroundColor());
+		appendColor(sb, "bgColor", style.getFillBackgroundColor());
+		sb.append("</patternFill></fill>");
+		return id(fills, sb.toString());
+	}
+
+	private int borderId(HSSFCellStyle style)
+	{
+		StringBuilder sb = new StringBuilder("<border>");
+		appendBorder(sb, "left", style.getBorderLeft(), style.getLeftBorderColor());
+		appendBorder(sb, "right", style.getBorderRight(), style.getRightBorderColor());
+		appendBorder(sb, "top", style.getBorderTop(), style.getTopBorderColor());
+		appendBorder(sb, "bottom", style.getBorderBottom(), style.getBottomBorderColor());
+		sb.append("<diagonal/></border>");
+		return id(borders, sb.toString());
+	}
+
+	private void appendBorder(StringBuilder sb, String side, short border, short color)
+	{
+		if( border <= 0 || border >= BORDER_STYLES.length )
+		{
+			sb.append('<').append(side).append("/>");
+			return;
+		}
+		sb.append('<').append(side).append(" style=\"").append(BORDER_STYLES[border]).append("\">");
+		appendColor(sb, "color", color);
+		sb.append("</").append(side).append('>');
+	}
+
+	private void appendColor(StringBuilder sb, String element, short color)
+	{
+		String rgb = XlsxBackend.rgb(workbook, color);
+		if( rgb != null )
+		{
+			sb.append('<').append(element).append(" rgb=\"").append(rgb).append("\"/>");
+		}
+		else
+		{
+			sb.append('<').append(element).append(" auto=\"1\"/>");
+		}
+	}
+
+	private static int id(Map<String,Integer> ids, String xml)
+	{
+		Integer id = ids.get(xml);
+		if( id == null )
+		{
+			id = ids.size();
+			ids.put(xml, id);
+		}
+		return id;
+	}
+}
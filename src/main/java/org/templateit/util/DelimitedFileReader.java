@@ -1,98 +1,389 @@
-/*
- * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.templateit.util;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
-
-/**
- * Implementation of Iterator interface. Reads an input file line by line and
- * parses each one as fields separated by a delimiter. For each line the fields
- * are stored in a String array and made accessible via Iterator interface.
- * 
- * @author Dmitriy Kumshayev
- */
-public class DelimitedFileReader implements Iterator<String[]>
-{
-	private String delimiter;
-
-	private BufferedReader reader;
-
-	private String nextLine = null;
-
-	private boolean hasNext = true;
-
-	public DelimitedFileReader(File file) throws FileNotFoundException
-	{
-		this(file, ",");
-	}
-
-	public DelimitedFileReader(File file, String delimiter)	throws FileNotFoundException
-	{
-		reader = new BufferedReader(new FileReader(file));
-		this.delimiter = delimiter;
-	}
-
-	public boolean hasNext()
-	{
-		if (hasNext)
-		{
-			if (nextLine == null)
-			{
-				try
-				{
-					nextLine = reader.readLine();
-				}
-				catch (IOException e)
-				{
-					nextLine = null;
-				}
-
-				if (nextLine == null)
-				{
-					hasNext = false;
-				}
-			}
-		}
-		return hasNext;
-	}
-
-	public String[] next()
-	{
-		if (hasNext())
-		{
-			String[] next = nextLine.split(delimiter);
-			nextLine = null;
-			return next;
-		}
-		else
-		{
-			throw new NoSuchElementException();
-		}
-	}
-
-	public void remove()
-	{
-		throw new UnsupportedOperationException();
-	}
-
-}
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of Iterator interface. Reads an input file line by line and
+ * parses each one as fields separated by a delimiter. For each line the fields
+ * are stored in a String array and made accessible via Iterator interface.
+ * <br>
+ * The delimiter is any non-empty string, it is matched literally. Empty fields,
+ * trailing ones included, are kept. Lines end with LF, CR LF or CR.
+ * <br>
+ * Quoting as in RFC 4180 is turned on with {@link #setQuoting(boolean)}:
+ * a field starting with a double quote then ends with the next single double
+ * quote and may contain delimiters, line breaks and double quotes written twice.
+ * Text following the closing quote is added to the field as it is.
+ * Without quoting double quotes are read as any other char.
+ * <br>
+ * The input is scanned in a char buffer, the fields of a line are cut out
+ * of the buffer directly. {@link #next(String[])} fills the array of
+ * the previous line when the number of fields is the same.
+ * <br>
+ * The file is closed at the end of the input or by {@link #close()}.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public class DelimitedFileReader implements Iterator<String[]>, Closeable
+{
+	private static final int BUFFER_SIZE = 64*1024;
+	private static final char QUOTE = '"';
+
+	private final char[] delimiter;
+
+	private final Reader reader;
+
+	private boolean quoting = false;
+
+	private char[] buf = new char[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+	/** start of the chars in the buffer which must be kept when the buffer is filled */
+	private int mark = 0;
+	private boolean eof = false;
+
+	/** fields of the line read ahead */
+	private String[] fields = new String[16];
+	private int nFields = 0;
+	private boolean lineRead = false;
+
+	private final StringBuilder quoted = new StringBuilder();
+
+	public DelimitedFileReader(File file) throws FileNotFoundException
+	{
+		this(file, ",");
+	}
+
+	/**
+	 * Reads the file in the default charset.
+	 */
+	public DelimitedFileReader(File file, String delimiter)	throws FileNotFoundException
+	{
+		this(file, delimiter, Charset.defaultCharset());
+	}
+
+	public DelimitedFileReader(File file, String delimiter, Charset charset)
+	throws FileNotFoundException
+	{
+		this(new FileInputStream(file), delimiter, charset);
+	}
+
+	public DelimitedFileReader(InputStream in, String delimiter, Charset charset)
+	{
+		this(new InputStreamReader(in, charset), delimiter);
+	}
+
+	public DelimitedFileReader(Reader reader, String delimiter)
+	{
+		if( delimiter == null || delimiter.length() == 0 )
+		{
+			throw new IllegalArgumentException("Empty delimiter");
+		}
+		this.reader = reader;
+		this.delimiter = delimiter.toCharArray();
+	}
+
+	/**
+	 * @param quoting - whether fields starting with a double quote are quoted, false by default
+	 */
+	public void setQuoting(boolean quoting)
+	{
+		this.quoting = quoting;
+	}
+
+	public boolean hasNext()
+	{
+		if( !lineRead )
+		{
+			try
+			{
+				lineRead = readLine();
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+		return lineRead;
+	}
+
+	public String[] next()
+	{
+		return next(null);
+	}
+
+	/**
+	 * Returns the fields of the next line in the given array if the array
+	 * has the length of the number of fields, otherwise in a new array.
+	 *
+	 * @param reuse - array returned by the previous call or null
+	 */
+	public String[] next(String[] reuse)
+	{
+		if (hasNext())
+		{
+			String[] next = reuse != null && reuse.length == nFields ? reuse : new String[nFields];
+			System.arraycopy(fields, 0, next, 0, nFields);
+			Arrays.fill(fields, 0, nFields, null);
+			lineRead = false;
+			return next;
+		}
+		else
+		{
+			throw new NoSuchElementException();
+		}
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() throws IOException
+	{
+		eof = true;
+		reader.close();
+	}
+
+	/**
+	 * @return false at the end of the input
+	 */
+	private boolean readLine() throws IOException
+	{
+		nFields = 0;
+		mark = pos;
+		if( pos == limit && !fill() )
+		{
+			return false;
+		}
+		while( readField() )
+		{
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the field is followed by a delimiter, false at the end of the line
+	 */
+	private boolean readField() throws IOException
+	{
+		mark = pos;
+		if( quoting && (pos < limit || fill()) && buf[pos] == QUOTE )
+		{
+			return readQuotedField();
+		}
+		final char d0 = delimiter[0];
+		while (true)
+		{
+			// scan in locals, this loop is where the time goes
+			final char[] b = buf;
+			final int l = limit;
+			int p = pos;
+			while( p < l )
+			{
+				char ch = b[p];
+				if( ch == d0 || ch == '\n' || ch == '\r' )
+				{
+					break;
+				}
+				p++;
+			}
+			pos = p;
+			if( p == l )
+			{
+				if( !fill() )
+				{
+					addField(new String(buf, mark, pos-mark));
+					return false;
+				}
+				continue;
+			}
+			char ch = b[p];
+			if( ch == d0 && atDelimiter() )
+			{
+				addField(new String(buf, mark, pos-mark));
+				pos += delimiter.length;
+				return true;
+			}
+			if( ch == '\n' || ch == '\r' )
+			{
+				addField(new String(buf, mark, pos-mark));
+				skipLineEnd();
+				return false;
+			}
+			pos++;
+		}
+	}
+
+	/**
+	 * Reads a field starting with a quote and the text following the closing quote.
+	 */
+	private boolean readQuotedField() throws IOException
+	{
+		quoted.setLength(0);
+		pos++;
+		// quoted text
+		while (true)
+		{
+			mark = pos;
+			if( pos == limit && !fill() )
+			{
+				addField(quoted.toString());
+				return false;
+			}
+			int start = pos;
+			while( pos < limit && buf[pos] != QUOTE )
+			{
+				pos++;
+			}
+			quoted.append(buf, start, pos-start);
+			if( pos < limit )
+			{
+				pos++;
+				mark = pos;
+				if( pos == limit && !fill() )
+				{
+					addField(quoted.toString());
+					return false;
+				}
+				if( buf[pos] != QUOTE )
+				{
+					break;
+				}
+				quoted.append(QUOTE);
+				pos++;
+			}
+		}
+		// text after the closing quote
+		while (true)
+		{
+			mark = pos;
+			if( pos == limit && !fill() )
+			{
+				addField(quoted.toString());
+				return false;
+			}
+			char ch = buf[pos];
+			if( ch == delimiter[0] && atDelimiter() )
+			{
+				addField(quoted.toString());
+				pos += delimiter.length;
+				return true;
+			}
+			if( ch == '\n' || ch == '\r' )
+			{
+				addField(quoted.toString());
+				skipLineEnd();
+				return false;
+			}
+			quoted.append(ch);
+			pos++;
+		}
+	}
+
+	/**
+	 * @return true if the delimiter starts at the current position
+	 */
+	private boolean atDelimiter() throws IOException
+	{
+		int n = delimiter.length;
+		while( pos+n > limit )
+		{
+			if( !fill() )
+			{
+				return false;
+			}
+		}
+		for (int i = 1; i < n; i++)
+		{
+			if( buf[pos+i] != delimiter[i] )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void skipLineEnd() throws IOException
+	{
+		char ch = buf[pos++];
+		if( ch == '\r' )
+		{
+			mark = pos;
+			if( (pos < limit || fill()) && buf[pos] == '\n' )
+			{
+				pos++;
+			}
+		}
+	}
+
+	private void addField(String field)
+	{
+		if( nFields == fields.length )
+		{
+			fields = Arrays.copyOf(fields, nFields*2);
+		}
+		fields[nFields++] = field;
+	}
+
+	/**
+	 * Reads more chars into the buffer. The chars from the mark on are kept,
+	 * moved to the start of the buffer.
+	 *
+	 * @return false at the end of the input
+	 */
+	private boolean fill() throws IOException
+	{
+		if( eof )
+		{
+			return false;
+		}
+		if( mark > 0 )
+		{
+			System.arraycopy(buf, mark, buf, 0, limit-mark);
+			pos -= mark;
+			limit -= mark;
+			mark = 0;
+		}
+		else if( limit == buf.length )
+		{
+			buf = Arrays.copyOf(buf, buf.length*2);
+		}
+		int n = reader.read(buf, limit, buf.length-limit);
+		if( n < 0 )
+		{
+			close();
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+}
@@ -1,70 +1,314 @@
-package org.templateit.util;
-
-import org.apache.poi.hssf.model.HSSFFormulaParser;
-import org.apache.poi.hssf.record.formula.AreaPtg;
-import org.apache.poi.hssf.record.formula.Ptg;
-import org.apache.poi.hssf.record.formula.RefPtg;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-
-public class FormulaUtil
-{
-
-	public static String offsetRelativeReferences(HSSFWorkbook wb,
-			String formula, int roff, int coff)
-	{
-		Ptg[] ptgs = HSSFFormulaParser.parse(formula, wb);
-		offsetRelativePtgs(ptgs, roff, coff);
-		String newFormula = HSSFFormulaParser.toFormulaString(wb, ptgs);
-		return newFormula;
-	}
-
-	private static void offsetRelativePtgs(Ptg[] ptgs, int roff, int coff)
-	{
-		for (Ptg ptg : ptgs)
-		{
-			offsetRelativePtg(ptg, roff, coff);
-		}
-	}
-
-	private static void offsetRelativePtg(Ptg ptg, int roff, int coff)
-	{
-		if (ptg instanceof RefPtg)
-		{
-			RefPtg ref = (RefPtg) ptg;
-			if (roff != 0 && ref.isRowRelative())
-			{
-				ref.setRow(ref.getRow() + roff);
-			}
-			if (coff != 0 && ref.isColRelative())
-			{
-				ref.setColumn(ref.getColumn() + coff);
-			}
-		}
-		else if (ptg instanceof AreaPtg)
-		{
-			AreaPtg aptg = (AreaPtg) ptg;
-			if (roff != 0)
-			{
-				if (aptg.isFirstRowRelative())
-				{
-					aptg.setFirstRow(aptg.getFirstRow() + roff);
-				}
-				if (aptg.isLastRowRelative())
-				{
-					aptg.setLastRow(aptg.getLastRow() + roff);
-				}
-			}
-			if (coff != 0)
-			{
-				if (aptg.isFirstColRelative())
-				{
-					aptg.setFirstColumn(aptg.getFirstColumn() + coff);
-				}
-				if (aptg.isLastColRelative())
-				{
-					aptg.setLastColumn(aptg.getLastColumn() + coff);
-				}
-			}
-		}
-	}
-}
+package org.templateit.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.RecordInputStream;
+import org.apache.poi.hssf.record.formula.Area3DPtg;
+import org.apache.poi.hssf.record.formula.AreaPtg;
+import org.apache.poi.hssf.record.formula.DeletedArea3DPtg;
+import org.apache.poi.hssf.record.formula.DeletedRef3DPtg;
+import org.apache.poi.hssf.record.formula.ExpPtg;
+import org.apache.poi.hssf.record.formula.NamePtg;
+import org.apache.poi.hssf.record.formula.NameXPtg;
+import org.apache.poi.hssf.record.formula.Ptg;
+import org.apache.poi.hssf.record.formula.Ref3DPtg;
+import org.apache.poi.hssf.record.formula.RefPtg;
+import org.apache.poi.hssf.record.formula.TblPtg;
+import org.apache.poi.hssf.record.formula.UnknownPtg;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+public class FormulaUtil
+{
+
+	public static String offsetRelativeReferences(HSSFWorkbook wb,
+			String formula, int roff, int coff)
+	{
+		Ptg[] ptgs = HSSFFormulaParser.parse(formula, wb);
+		offsetRelativePtgs(ptgs, roff, coff);
+		String newFormula = HSSFFormulaParser.toFormulaString(wb, ptgs);
+		return newFormula;
+	}
+
+	/**
+	 * Copies the parsed formula and offsets relative references of the copy.
+	 * The source tokens are not modified, so they can be shared.
+	 */
+	public static Ptg[] offsetRelativeReferences(Ptg[] ptgs, int roff, int coff)
+	{
+		Ptg[] copy = new Ptg[ptgs.length];
+		for (int i = 0; i < ptgs.length; i++)
+		{
+			copy[i] = ptgs[i].copy();
+		}
+		offsetRelativePtgs(copy, roff, coff);
+		return copy;
+	}
+
+	/**
+	 * Offsets relative references of the formula text without parsing it against
+	 * a workbook, so the references may point below row 65,536. References to cells
+	 * of other sheets are not offset, as in {@link #offsetRelativeReferences(Ptg[], int, int)}.
+	 * References moved out of the sheet become #REF!.
+	 */
+	public static String offsetRelativeReferences(String formula, int roff, int coff)
+	{
+		StringBuilder sb = new StringBuilder(formula.length() + 8);
+		int n = formula.length();
+		boolean otherSheet = false;
+		// the last relocated reference, for areas
+		int lastStart = -1;
+		int lastEnd = -1;
+		boolean lastValid = false;
+		int i = 0;
+		while (i < n)
+		{
+			char ch = formula.charAt(i);
+			if (ch == '"' || ch == '\'')
+			{
+				// string literal or quoted sheet name, the quote is doubled inside
+				int j = i + 1;
+				while (j < n)
+				{
+					if (formula.charAt(j++) == ch)
+					{
+						if (j == n || formula.charAt(j) != ch)
+						{
+							break;
+						}
+						j++;
+					}
+				}
+				sb.append(formula, i, j);
+				i = j;
+				continue;
+			}
+			if (!isNamePart(ch) && ch != '$')
+			{
+				sb.append(ch);
+				if (ch != ':')
+				{
+					otherSheet = ch == '!';
+				}
+				i++;
+				continue;
+			}
+			int j = i;
+			boolean colAbsolute = formula.charAt(j) == '$';
+			if (colAbsolute)
+			{
+				j++;
+			}
+			int letters = j;
+			while (j < n && Character.isLetter(formula.charAt(j)) && formula.charAt(j) < 128)
+			{
+				j++;
+			}
+			int letterCount = j - letters;
+			boolean rowAbsolute = j < n && formula.charAt(j) == '$';
+			if (rowAbsolute)
+			{
+				j++;
+			}
+			int digits = j;
+			while (j < n && Character.isDigit(formula.charAt(j)))
+			{
+				j++;
+			}
+			boolean reference = letterCount >= 1 && letterCount <= 3 && j > digits
+					&& (j == n || (!isNamePart(formula.charAt(j)) && formula.charAt(j) != '('
+							&& formula.charAt(j) != '!'));
+			if (!reference)
+			{
+				// a name, a function or a sheet name: copy the whole word
+				j = Math.max(j, i + 1);
+				while (j < n && (isNamePart(formula.charAt(j)) || formula.charAt(j) == '$'))
+				{
+					j++;
+				}
+				sb.append(formula, i, j);
+				otherSheet = false;
+				i = j;
+				continue;
+			}
+			if (otherSheet)
+			{
+				sb.append(formula, i, j);
+				i = j;
+				continue;
+			}
+			int col = 0;
+			for (int k = letters; k < letters + letterCount; k++)
+			{
+				col = col * 26 + (Character.toUpperCase(formula.charAt(k)) - 'A' + 1);
+			}
+			col--;
+			int row = Integer.parseInt(formula.substring(digits, j)) - 1;
+			if (!colAbsolute)
+			{
+				col += coff;
+			}
+			if (!rowAbsolute)
+			{
+				row += roff;
+			}
+			boolean valid = col >= 0 && col <= 16383 && row >= 0 && row <= 1048575;
+			boolean secondCorner = lastEnd >= 0 && sb.length() == lastEnd + 1 && sb.charAt(lastEnd) == ':';
+			int start = sb.length();
+			if (secondCorner && !(valid && lastValid))
+			{
+				// an area with a corner moved out of the sheet is #REF! as a whole
+				start = lastStart;
+				sb.setLength(start);
+				sb.append("#REF!");
+				valid = false;
+			}
+			else if (!valid)
+			{
+				sb.append("#REF!");
+			}
+			else
+			{
+				if (colAbsolute)
+				{
+					sb.append('$');
+				}
+				appendColumnName(sb, col);
+				if (rowAbsolute)
+				{
+					sb.append('$');
+				}
+				sb.append(row + 1);
+			}
+			lastStart = start;
+			lastEnd = sb.length();
+			lastValid = valid;
+			i = j;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the name of the 0-based column: A, B, ..., Z, AA, AB, ...
+	 */
+	public static void appendColumnName(StringBuilder sb, int column)
+	{
+		int start = sb.length();
+		for (int c = column + 1; c > 0; c = (c - 1) / 26)
+		{
+			sb.insert(start, (char) ('A' + (c - 1) % 26));
+		}
+	}
+
+	private static boolean isNamePart(char ch)
+	{
+		return Character.isLetterOrDigit(ch) || ch == '_' || ch == '.' || ch == '\\';
+	}
+
+	/**
+	 * Tells whether the parsed formula has the same meaning in any workbook.
+	 * References to other sheets and names are workbook specific: they are
+	 * stored as indexes into the tables of the workbook the formula was parsed for.
+	 */
+	public static boolean isWorkbookIndependent(Ptg[] ptgs)
+	{
+		for (Ptg ptg : ptgs)
+		{
+			if (ptg instanceof Ref3DPtg || ptg instanceof Area3DPtg
+					|| ptg instanceof DeletedRef3DPtg || ptg instanceof DeletedArea3DPtg
+					|| ptg instanceof NamePtg || ptg instanceof NameXPtg
+					|| ptg instanceof ExpPtg || ptg instanceof TblPtg
+					|| ptg instanceof UnknownPtg)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the parsed formula in the encoding of the BIFF8 formula record:
+	 * size of the tokens without array constants, size of the encoded bytes and the bytes.
+	 */
+	public static void writeTokens(Ptg[] ptgs, DataOutput out) throws IOException
+	{
+		byte[] data = new byte[Ptg.getEncodedSize(ptgs)];
+		Ptg.serializePtgs(ptgs, data, 0);
+		out.writeShort(Ptg.getEncodedSizeWithoutArrayData(ptgs));
+		out.writeShort(data.length);
+		out.write(data);
+	}
+
+	/**
+	 * Reads the parsed formula written by {@link #writeTokens(Ptg[], DataOutput)}.
+	 */
+	public static Ptg[] readTokens(DataInput in) throws IOException
+	{
+		int size = in.readUnsignedShort();
+		int length = in.readUnsignedShort();
+		// tokens are decoded from a record stream, so wrap them into a formula record
+		byte[] record = new byte[length+4];
+		record[0] = (byte) FormulaRecord.sid;
+		record[1] = (byte) (FormulaRecord.sid >> 8);
+		record[2] = (byte) length;
+		record[3] = (byte) (length >> 8);
+		in.readFully(record, 4, length);
+		RecordInputStream ris = new RecordInputStream(new ByteArrayInputStream(record));
+		ris.nextRecord();
+		return Ptg.readTokens(size, ris);
+	}
+
+	private static void offsetRelativePtgs(Ptg[] ptgs, int roff, int coff)
+	{
+		for (Ptg ptg : ptgs)
+		{
+			offsetRelativePtg(ptg, roff, coff);
+		}
+	}
+
+	private static void offsetRelativePtg(Ptg ptg, int roff, int coff)
+	{
+		if (ptg instanceof RefPtg)
+		{
+			RefPtg ref = (RefPtg) ptg;
+			if (roff != 0 && ref.isRowRelative())
+			{
+				ref.setRow(ref.getRow() + roff);
+			}
+			if (coff != 0 && ref.isColRelative())
+			{
+				ref.setColumn(ref.getColumn() + coff);
+			}
+		}
+		else if (ptg instanceof AreaPtg)
+		{
+			AreaPtg aptg = (AreaPtg) ptg;
+			if (roff != 0)
+			{
+				if (aptg.isFirstRowRelative())
+				{
+					aptg.setFirstRow(aptg.getFirstRow() + roff);
+				}
+				if (aptg.isLastRowRelative())
+				{
+					aptg.setLastRow(aptg.getLastRow() + roff);
+				}
+			}
+			if (coff != 0)
+			{
+				if (aptg.isFirstColRelative())
+				{
+					aptg.setFirstColumn(aptg.getFirstColumn() + coff);
+				}
+				if (aptg.isLastColRelative())
+				{
+					aptg.setLastColumn(aptg.getLastColumn() + coff);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * {@link DelimitedFileReader} of a memory mapped file, for very large
+ * data files. The file is mapped in windows of 256 MB and decoded
+ * by a CharsetDecoder into the scan buffer, without read system calls
+ * and the char buffer of InputStreamReader. Fields are cut out of the scan buffer as
+ * by DelimitedFileReader, no String is made of a whole line.
+ * <br>
+ * It is an Iterator of String arrays, so it is passed to
+ * TemplateProcessor.process as DelimitedFileReader is.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public class MappedDelimitedReader extends DelimitedFileReader
+{
+	/**
+	 * Reads the file in the default charset.
+	 */
+	public MappedDelimitedReader(File file, String delimiter) throws IOException
+	{
+		this(file, delimiter, Charset.defaultCharset());
+	}
+
+	public MappedDelimitedReader(File file, String delimiter, Charset charset) throws IOException
+	{
+		super(new MappedFileReader(file, charset), delimiter);
+	}
+}
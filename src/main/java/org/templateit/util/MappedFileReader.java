@@ -0,0 +1,152 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader of a memory mapped file. Large files are mapped in windows one
+ * after another. The bytes are copied from the window in blocks to a heap
+ * buffer and decoded into the buffer of the caller, there is no read
+ * system call and no intermediate char buffer. The JDK decoders are much
+ * faster on heap buffers than on a mapped one, the block copy costs less
+ * than it saves.
+ * <br>
+ * Malformed input is replaced as by InputStreamReader.
+ *
+ * @author Dmitriy Kumshayev
+ */
+final class MappedFileReader extends Reader
+{
+	static final int WINDOW_SIZE = 256*1024*1024;
+	private static final int BUFFER_SIZE = 64*1024;
+
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+	private final CharsetDecoder decoder;
+	/** position of the window in the file */
+	private long windowStart = 0;
+	private MappedByteBuffer window;
+	/** bytes copied from the window to be decoded */
+	private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+	private boolean flushed = false;
+	/** second char of a pair decoded for a caller asking for a single char */
+	private final CharBuffer pending = CharBuffer.allocate(2);
+
+	public MappedFileReader(File file, Charset charset) throws IOException
+	{
+		this(file, charset, WINDOW_SIZE);
+	}
+
+	MappedFileReader(File file, Charset charset, int windowSize) throws IOException
+	{
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.size = channel.size();
+		this.windowSize = windowSize;
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.pending.flip();
+		this.bytes.flip();
+		map(0);
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException
+	{
+		if( len == 0 )
+		{
+			return 0;
+		}
+		if( pending.hasRemaining() )
+		{
+			cbuf[off] = pending.get();
+			return 1;
+		}
+		CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+		while( out.position() == off )
+		{
+			boolean last = !window.hasRemaining() && windowStart + window.limit() == size;
+			CoderResult result = decoder.decode(bytes, out, last);
+			if( out.position() > off )
+			{
+				break;
+			}
+			if( result.isOverflow() )
+			{
+				// a surrogate pair does not fit into a single char
+				pending.clear();
+				decoder.decode(bytes, pending, last);
+				pending.flip();
+				cbuf[off] = pending.get();
+				return 1;
+			}
+			if( last )
+			{
+				if( !flushed )
+				{
+					flushed = true;
+					decoder.flush(out);
+				}
+				return out.position() > off ? out.position() - off : -1;
+			}
+			copyBytes();
+		}
+		return out.position() - off;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * Copies the next bytes of the window after the bytes not decoded yet,
+	 * maps the next window at the end of the window.
+	 */
+	private void copyBytes() throws IOException
+	{
+		if( !window.hasRemaining() )
+		{
+			map(windowStart + window.limit());
+		}
+		bytes.compact();
+		int n = Math.min(bytes.remaining(), window.remaining());
+		window.get(bytes.array(), bytes.position(), n);
+		bytes.position(bytes.position() + n);
+		bytes.flip();
+	}
+
+	private void map(long start) throws IOException
+	{
+		windowStart = start;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Iterator reading its source ahead on a thread of its own, so reading and
+ * decoding the input overlap with the work done on the elements.
+ * <br>
+ * The elements read ahead are kept in a queue of the given depth, the reader
+ * waits while the queue is full. An exception thrown by the source is thrown
+ * by hasNext or next of this iterator after the elements read before it.
+ * {@link #close()} stops the reader, it must be called when the elements are
+ * not read to the end, for example when their processing fails. It waits for the
+ * reader to stop, so the source may be closed after it.
+ * <br>
+ * The source must not reuse the objects it returns.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public class PipelinedIterator<T> implements Iterator<T>, Closeable
+{
+	/** null element of the source */
+	private static final Object NULL = new Object();
+
+	/** end of the source */
+	private static final Object END = new Object();
+
+	/** longest wait for the reader to stop */
+	private static final long CLOSE_TIMEOUT = 10000;
+
+	private final BlockingQueue<Object> queue;
+
+	private final Thread reader;
+
+	private Object next = null;
+
+	private boolean closed = false;
+
+	public PipelinedIterator(Iterator<? extends T> source, int depth)
+	{
+		if( depth < 1 )
+		{
+			throw new IllegalArgumentException("Queue depth " + depth);
+		}
+		this.queue = new ArrayBlockingQueue<Object>(depth);
+		this.reader = new Thread(new Reader(source, queue), "TemplateIt reader");
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	public boolean hasNext()
+	{
+		if( next == null )
+		{
+			if( closed )
+			{
+				return false;
+			}
+			try
+			{
+				next = queue.take();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the input", e);
+			}
+			if( next instanceof Failure )
+			{
+				Throwable cause = ((Failure) next).cause;
+				close();
+				if( cause instanceof RuntimeException )
+				{
+					throw (RuntimeException) cause;
+				}
+				if( cause instanceof Error )
+				{
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+			if( next == END )
+			{
+				closed = true;
+			}
+		}
+		return next != END;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T next()
+	{
+		if( !hasNext() )
+		{
+			throw new NoSuchElementException();
+		}
+		Object element = next;
+		next = null;
+		return element == NULL ? null : (T) element;
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops the reader and drops the elements read ahead. Waits up to 10 seconds
+	 * for the reader to leave the source, a source blocked longer than that
+	 * is left to the reader.
+	 */
+	public void close()
+	{
+		if( !closed )
+		{
+			closed = true;
+			next = END;
+			reader.interrupt();
+		}
+		long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+		try
+		{
+			while( reader.isAlive() )
+			{
+				// the reader may be waiting for room in the queue
+				queue.clear();
+				long wait = deadline - System.currentTimeMillis();
+				if( wait <= 0 )
+				{
+					break;
+				}
+				reader.join(Math.min(wait, 100));
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		queue.clear();
+	}
+
+	private static class Reader implements Runnable
+	{
+		private final Iterator<?> source;
+
+		private final BlockingQueue<Object> queue;
+
+		private Reader(Iterator<?> source, BlockingQueue<Object> queue)
+		{
+			this.source = source;
+			this.queue = queue;
+		}
+
+		public void run()
+		{
+			try
+			{
+				try
+				{
+					while( source.hasNext() )
+					{
+						Object element = source.next();
+						queue.put(element != null ? element : NULL);
+					}
+					queue.put(END);
+				}
+				catch (InterruptedException e)
+				{
+					// closed by the consumer
+				}
+				catch (Throwable e)
+				{
+					queue.put(new Failure(e));
+				}
+			}
+			catch (InterruptedException e)
+			{
+				// closed by the consumer
+			}
+		}
+	}
+
+	private static class Failure
+	{
+		private final Throwable cause;
+
+		private Failure(Throwable cause)
+		{
+			this.cause = cause;
+		}
+	}
+}
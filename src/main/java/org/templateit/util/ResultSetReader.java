@@ -0,0 +1,236 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of Iterator interface. Reads the rows of a JDBC result set
+ * as rows of a template: each row of the result set becomes a row of the template
+ * with the values of the given columns as the template parameters.
+ * The columns are looked up once, when the reader is created.
+ * <br>
+ * The values are passed as the driver returns them (numbers, dates, text),
+ * so they are not formatted to text and parsed back. The rows are read from the
+ * cursor one by one as the driver fetches them, the result set is never held in memory.
+ * <br>
+ * With {@link #setSheet(String, String)} the rows are framed by #sheet and #end,
+ * rows added by {@link #addHeaderRow(Object...)} go before the rows of the result set:
+ * <pre>
+ *    ResultSetReader rows = new ResultSetReader(rs, "item", "NAME", "PRICE", "UPDATED");
+ *    rows.setSheet("PriceList", "PriceList as of 20-Jan-2009");
+ *    rows.addHeaderRow("header");
+ *    tp.process(rows, out);
+ * </pre>
+ * The result set is closed at the end of the rows or by {@link #close()}.
+ * SQL exceptions thrown while reading are rethrown as RuntimeException.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public class ResultSetReader implements Iterator<Object[]>, Closeable
+{
+	private final ResultSet resultSet;
+
+	private final String templateName;
+
+	/** result set columns of the template parameters */
+	private final int[] columns;
+
+	/** rows to return before the next row of the result set */
+	private final ArrayDeque<Object[]> pending = new ArrayDeque<Object[]>();
+
+	/** #sheet row or null */
+	private Object[] sheetRow = null;
+
+	private boolean started = false;
+
+	private boolean eof = false;
+
+	private Object[] next = null;
+
+	/**
+	 * @param templateName - template of the rows
+	 * @param columns - labels of the columns with the values of the template parameters
+	 *   in the order of the parameters, all columns of the result set if none
+	 */
+	public ResultSetReader(ResultSet resultSet, String templateName, String... columns)
+	throws SQLException
+	{
+		this.resultSet = resultSet;
+		this.templateName = templateName;
+		if( columns.length > 0 )
+		{
+			this.columns = new int[columns.length];
+			for (int i = 0; i < columns.length; i++)
+			{
+				this.columns[i] = resultSet.findColumn(columns[i]);
+			}
+		}
+		else
+		{
+			this.columns = new int[resultSet.getMetaData().getColumnCount()];
+			for (int i = 0; i < this.columns.length; i++)
+			{
+				this.columns[i] = i+1;
+			}
+		}
+	}
+
+	/**
+	 * Starts the rows with #sheet and ends them with #end.
+	 * 
+	 * @param templateSheet - name of the template sheet
+	 * @param sheetName - name of the generated sheet, the name of the template sheet if null
+	 */
+	public void setSheet(String templateSheet, String sheetName)
+	{
+		checkNotStarted();
+		this.sheetRow = new Object[] {"#sheet", templateSheet, sheetName};
+	}
+
+	/**
+	 * Adds a row to return before the rows of the result set, a row of a header template
+	 * or an operation.
+	 */
+	public void addHeaderRow(Object... row)
+	{
+		checkNotStarted();
+		pending.addLast(row);
+	}
+
+	/**
+	 * Gives the driver a hint of the number of rows to fetch from the database at once.
+	 * 
+	 * @see ResultSet#setFetchSize(int)
+	 */
+	public void setFetchSize(int rows) throws SQLException
+	{
+		resultSet.setFetchSize(rows);
+	}
+
+	public boolean hasNext()
+	{
+		if( next == null )
+		{
+			if( !started )
+			{
+				started = true;
+				if( sheetRow != null )
+				{
+					pending.addFirst(sheetRow);
+				}
+			}
+			try
+			{
+				next = read();
+			}
+			catch (SQLException e)
+			{
+				throw new RuntimeException("Failed to read the result set", e);
+			}
+		}
+		return next != null;
+	}
+
+	public Object[] next()
+	{
+		if (hasNext())
+		{
+			Object[] row = next;
+			next = null;
+			return row;
+		}
+		else
+		{
+			throw new NoSuchElementException();
+		}
+	}
+
+	public void remove()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() throws IOException
+	{
+		started = true;
+		pending.clear();
+		next = null;
+		try
+		{
+			closeResultSet();
+		}
+		catch (SQLException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return null at the end of the rows
+	 */
+	private Object[] read() throws SQLException
+	{
+		if( !pending.isEmpty() )
+		{
+			return pending.poll();
+		}
+		if( eof )
+		{
+			return null;
+		}
+		if( resultSet.next() )
+		{
+			Object[] row = new Object[columns.length+1];
+			row[0] = templateName;
+			for (int i = 0; i < columns.length; i++)
+			{
+				row[i+1] = resultSet.getObject(columns[i]);
+			}
+			return row;
+		}
+		closeResultSet();
+		if( sheetRow != null )
+		{
+			pending.add(new Object[] {"#end"});
+		}
+		return pending.poll();
+	}
+
+	private void closeResultSet() throws SQLException
+	{
+		if( !eof )
+		{
+			eof = true;
+			resultSet.close();
+		}
+	}
+
+	private void checkNotStarted()
+	{
+		if( started )
+		{
+			throw new IllegalStateException("The rows are already read");
+		}
+	}
+}
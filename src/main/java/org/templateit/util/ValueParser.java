@@ -0,0 +1,684 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.math.BigDecimal;
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Recognizes numbers and dates in text values without using exceptions
+ * for control flow.
+ * <br>
+ * Numbers are accepted in the syntax of {@link Double#parseDouble(String)}.
+ * Dates are accepted in the following formats, with the same lenient rules
+ * {@link java.text.SimpleDateFormat} applies to them (fields out of range
+ * roll over, text following the date is ignored):
+ * <pre>
+ *    MM/dd/yyyy HH:mm:ss
+ *    MM/dd/yyyy HH:mm
+ *    MM/dd/yyyy
+ *    dd-MMM-yyyy HH:mm:ss
+ *    dd-MMM-yyyy HH:mm
+ *    dd-MMM-yyyy
+ * </pre>
+ * Month names are those of the default locale, daylight saving gaps are
+ * those of the default time zone, both taken when the class is loaded.
+ * Dates are calculated in the proleptic Gregorian calendar and converted
+ * to Excel serial numbers the same way
+ * {@link org.apache.poi.hssf.usermodel.HSSFDateUtil} does, without Calendar.
+ * <br>
+ * All methods return {@link Double#NaN} if the text is not recognized.
+ * The class holds no mutable state and can be used from several threads.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public final class ValueParser
+{
+	private static final long SECONDS_PER_DAY = 86400L;
+	private static final double MILLISECONDS_PER_DAY = 8.64E7;
+
+	private static final Locale LOCALE = Locale.getDefault(Locale.Category.FORMAT);
+	private static final String[] MONTHS = DateFormatSymbols.getInstance(LOCALE).getMonths();
+	private static final String[] SHORT_MONTHS = DateFormatSymbols.getInstance(LOCALE).getShortMonths();
+	private static final String NAN = DecimalFormatSymbols.getInstance(LOCALE).getNaN();
+	private static final String INFINITY = DecimalFormatSymbols.getInstance(LOCALE).getInfinity();
+	private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+	private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+	private static final ZoneRules ZONE_RULES = ZoneId.systemDefault().getRules();
+
+	private ValueParser()
+	{
+	}
+
+	/**
+	 * @return the value of a finite number or NaN
+	 */
+	public static double parseNumber(CharSequence text)
+	{
+		if( text != null && isNumber(text) )
+		{
+			double value = Double.parseDouble(text.toString());
+			if( !Double.isInfinite(value) )
+			{
+				return value;
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Checks the text against the syntax accepted by {@link Double#parseDouble(String)}
+	 * except <em>NaN</em> and <em>Infinity</em> which are not considered numbers.
+	 */
+	public static boolean isNumber(CharSequence text)
+	{
+		int start = 0;
+		int end = text.length();
+		// Double.parseDouble trims the value
+		while( start < end && text.charAt(start) <= ' ' )
+		{
+			start++;
+		}
+		while( end > start && text.charAt(end-1) <= ' ' )
+		{
+			end--;
+		}
+		int i = start;
+		if( i < end && (text.charAt(i) == '+' || text.charAt(i) == '-') )
+		{
+			i++;
+		}
+		if( i+1 < end && text.charAt(i) == '0' && (text.charAt(i+1) == 'x' || text.charAt(i+1) == 'X') )
+		{
+			return isHexNumber(text, i+2, end);
+		}
+
+		int digits = 0;
+		while( i < end && isDigit(text.charAt(i)) )
+		{
+			i++;
+			digits++;
+		}
+		if( i < end && text.charAt(i) == '.' )
+		{
+			i++;
+			while( i < end && isDigit(text.charAt(i)) )
+			{
+				i++;
+				digits++;
+			}
+		}
+		if( digits == 0 )
+		{
+			return false;
+		}
+		if( i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E') )
+		{
+			i = skipExponent(text, i+1, end);
+			if( i < 0 )
+			{
+				return false;
+			}
+		}
+		return isEndOfNumber(text, i, end);
+	}
+
+	private static boolean isHexNumber(CharSequence text, int i, int end)
+	{
+		int digits = 0;
+		while( i < end && isHexDigit(text.charAt(i)) )
+		{
+			i++;
+			digits++;
+		}
+		if( i < end && text.charAt(i) == '.' )
+		{
+			i++;
+			while( i < end && isHexDigit(text.charAt(i)) )
+			{
+				i++;
+				digits++;
+			}
+		}
+		// binary exponent is mandatory
+		if( digits == 0 || i >= end || (text.charAt(i) != 'p' && text.charAt(i) != 'P') )
+		{
+			return false;
+		}
+		i = skipExponent(text, i+1, end);
+		return i >= 0 && isEndOfNumber(text, i, end);
+	}
+
+	/**
+	 * @return position after the exponent digits or -1 if there are none
+	 */
+	private static int skipExponent(CharSequence text, int i, int end)
+	{
+		if( i < end && (text.charAt(i) == '+' || text.charAt(i) == '-') )
+		{
+			i++;
+		}
+		int start = i;
+		while( i < end && isDigit(text.charAt(i)) )
+		{
+			i++;
+		}
+		return i > start ? i : -1;
+	}
+
+	/**
+	 * A number may only be followed by a float/double type suffix.
+	 */
+	private static boolean isEndOfNumber(CharSequence text, int i, int end)
+	{
+		if( i < end )
+		{
+			char c = text.charAt(i);
+			return i+1 == end && (c == 'f' || c == 'F' || c == 'd' || c == 'D');
+		}
+		return true;
+	}
+
+	private static boolean isDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isHexDigit(char c)
+	{
+		return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+	}
+
+	/**
+	 * Recognizes a date in one of the supported formats.
+	 *
+	 * @return Excel serial date number, -1 for dates before the first
+	 * date of the date system or NaN if the text is not a date
+	 */
+	public static double parseDate(CharSequence text, boolean use1904windowing)
+	{
+		if( text == null )
+		{
+			return Double.NaN;
+		}
+		int end = text.length();
+		int[] field = new int[2]; // value, position after the value
+		if( !parseField(text, 0, end, field) )
+		{
+			return Double.NaN;
+		}
+		int pos = field[1];
+		if( pos >= end )
+		{
+			return Double.NaN;
+		}
+		int month;
+		int day;
+		char separator = text.charAt(pos);
+		if( separator == '/' )
+		{
+			// MM/dd/yyyy
+			month = field[0];
+			if( !parseField(text, pos+1, end, field) )
+			{
+				return Double.NaN;
+			}
+			day = field[0];
+			pos = field[1];
+		}
+		else if( separator == '-' )
+		{
+			// dd-MMM-yyyy
+			day = field[0];
+			pos = parseMonthName(text, pos+1, end, field);
+			if( pos < 0 )
+			{
+				return Double.NaN;
+			}
+			month = field[0];
+		}
+		else
+		{
+			return Double.NaN;
+		}
+		if( pos >= end || text.charAt(pos) != separator || !parseField(text, pos+1, end, field) )
+		{
+			return Double.NaN;
+		}
+		int year = field[0];
+		pos = field[1];
+
+		// optional time: " HH:mm" or " HH:mm:ss"
+		int hour = 0;
+		int minute = 0;
+		int second = 0;
+		if( pos < end && text.charAt(pos) == ' ' && parseField(text, pos+1, end, field) )
+		{
+			int h = field[0];
+			pos = field[1];
+			if( pos < end && text.charAt(pos) == ':' && parseField(text, pos+1, end, field) )
+			{
+				hour = h;
+				minute = field[0];
+				pos = field[1];
+				if( pos < end && text.charAt(pos) == ':' && parseField(text, pos+1, end, field) )
+				{
+					second = field[0];
+				}
+			}
+		}
+		return toExcelDate(year, month, day, hour, minute, second, use1904windowing);
+	}
+
+	/**
+	 * Parses a date in the given format. The text must be entirely consumed.
+	 *
+	 * @return Excel serial date number, -1 for dates before the first
+	 * date of the date system or NaN if the text is not a date
+	 */
+	public static double parseDate(CharSequence text, DateTimeFormatter format, boolean use1904windowing)
+	{
+		if( text == null )
+		{
+			return Double.NaN;
+		}
+		// reject mismatching text without DateTimeParseException
+		ParsePosition position = new ParsePosition(0);
+		if( format.parseUnresolved(text, position) == null || position.getIndex() != text.length() )
+		{
+			return Double.NaN;
+		}
+		LocalDate date;
+		LocalTime time;
+		try
+		{
+			TemporalAccessor parsed = format.parse(text);
+			date = parsed.query(TemporalQueries.localDate());
+			time = parsed.query(TemporalQueries.localTime());
+		}
+		catch (DateTimeException e)
+		{
+			// fields out of range
+			return Double.NaN;
+		}
+		if( date == null )
+		{
+			return Double.NaN;
+		}
+		long millisOfDay = time != null ? time.toNanoOfDay()/1000000 : 0;
+		return toExcelDate(date.toEpochDay(), millisOfDay, use1904windowing);
+	}
+
+	/**
+	 * Recognizes <em>true</em> and <em>false</em> ignoring case.
+	 *
+	 * @return the value or <code>null</code> if the text is not a boolean
+	 */
+	public static Boolean parseBoolean(CharSequence text)
+	{
+		if( text != null )
+		{
+			String s = text.toString().trim();
+			if( s.equalsIgnoreCase("true") )
+			{
+				return Boolean.TRUE;
+			}
+			if( s.equalsIgnoreCase("false") )
+			{
+				return Boolean.FALSE;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses an integer date field the way SimpleDateFormat does
+	 * (its DecimalFormat): leading spaces and tabs are skipped,
+	 * a minus sign and an exponent are allowed, values which fit in long
+	 * are truncated to int, larger ones are clamped.
+	 *
+	 * @param field receives the value and the position following the value
+	 * @return false if there is no number at the position
+	 */
+	private static boolean parseField(CharSequence text, int pos, int end, int[] field)
+	{
+		while( pos < end && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t') )
+		{
+			pos++;
+		}
+		if( startsWith(text, pos, end, NAN) )
+		{
+			field[0] = 0;
+			field[1] = pos+NAN.length();
+			return true;
+		}
+		boolean negative = false;
+		if( pos < end && text.charAt(pos) == '-' )
+		{
+			negative = true;
+			pos++;
+		}
+		if( startsWith(text, pos, end, INFINITY) )
+		{
+			field[0] = negative ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+			field[1] = pos+INFINITY.length();
+			return true;
+		}
+		int start = pos;
+		long value = 0;
+		int significant = 0;
+		int digit;
+		while( pos < end && (digit = Character.digit(text.charAt(pos), 10)) >= 0 )
+		{
+			if( significant > 0 || digit > 0 )
+			{
+				significant++;
+			}
+			value = value*10 + digit;
+			pos++;
+		}
+		if( pos == start )
+		{
+			return false;
+		}
+		int digitsEnd = pos;
+		int exponent = 0;
+		boolean hasExponent = false;
+		if( pos+1 < end && text.charAt(pos) == 'E' )
+		{
+			int i = pos+1;
+			boolean negativeExponent = text.charAt(i) == '-';
+			if( negativeExponent )
+			{
+				i++;
+			}
+			int exponentStart = i;
+			long e = 0;
+			while( i < end && (digit = Character.digit(text.charAt(i), 10)) >= 0 )
+			{
+				e = Math.min(e*10 + digit, 100000);
+				i++;
+			}
+			if( i > exponentStart )
+			{
+				hasExponent = true;
+				exponent = (int) (negativeExponent ? -e : e);
+				pos = i;
+			}
+		}
+		if( significant <= 18 && !hasExponent )
+		{
+			field[0] = (int) (negative ? -value : value);
+		}
+		else
+		{
+			field[0] = toIntValue(text, start, digitsEnd, negative, exponent);
+		}
+		field[1] = pos;
+		return true;
+	}
+
+	private static boolean startsWith(CharSequence text, int pos, int end, String prefix)
+	{
+		if( end-pos < prefix.length() )
+		{
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			if( text.charAt(pos+i) != prefix.charAt(i) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Slow path of {@link #parseField} for long numbers and exponents
+	 */
+	private static int toIntValue(CharSequence text, int start, int end, boolean negative, int exponent)
+	{
+		StringBuilder digits = new StringBuilder(end-start+1);
+		if( negative )
+		{
+			digits.append('-');
+		}
+		for (int i = start; i < end; i++)
+		{
+			digits.append((char) ('0' + Character.digit(text.charAt(i), 10)));
+		}
+		BigDecimal value = new BigDecimal(digits.toString()).scaleByPowerOfTen(exponent);
+		if( value.signum() == 0 )
+		{
+			return 0;
+		}
+		BigDecimal integral = value.stripTrailingZeros();
+		if( integral.scale() <= 0 && integral.precision() - integral.scale() <= 19
+				&& integral.compareTo(LONG_MIN) >= 0 && integral.compareTo(LONG_MAX) <= 0 )
+		{
+			return (int) integral.longValue();
+		}
+		return (int) value.doubleValue();
+	}
+
+	/**
+	 * Matches full or abbreviated month name ignoring case,
+	 * longest full name first.
+	 *
+	 * @param field receives 1-based month number
+	 * @return position following the name or -1
+	 */
+	private static int parseMonthName(CharSequence text, int pos, int end, int[] field)
+	{
+		int length = matchName(text, pos, end, MONTHS, field);
+		if( length == 0 )
+		{
+			length = matchName(text, pos, end, SHORT_MONTHS, field);
+		}
+		return length > 0 ? pos+length : -1;
+	}
+
+	private static int matchName(CharSequence text, int pos, int end, String[] names, int[] field)
+	{
+		int bestLength = 0;
+		for (int i = 0; i < names.length; i++)
+		{
+			int length = names[i].length();
+			if( length > bestLength && pos+length <= end && regionMatchesIgnoreCase(text, pos, names[i]) )
+			{
+				field[0] = i+1;
+				bestLength = length;
+			}
+		}
+		return bestLength;
+	}
+
+	/**
+	 * Same comparison as {@link String#regionMatches(boolean, int, String, int, int)}
+	 */
+	private static boolean regionMatchesIgnoreCase(CharSequence text, int pos, String name)
+	{
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c1 = text.charAt(pos+i);
+			char c2 = name.charAt(i);
+			if( c1 != c2 )
+			{
+				char u1 = Character.toUpperCase(c1);
+				char u2 = Character.toUpperCase(c2);
+				if( u1 != u2 && Character.toLowerCase(u1) != Character.toLowerCase(u2) )
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Converts a date value to an Excel serial date. java.util.Date
+	 * is taken in the default time zone, Calendar in its own time zone.
+	 *
+	 * @param value - java.util.Date, Calendar, LocalDate or LocalDateTime
+	 * @return Excel serial date number, -1 for dates before the first
+	 * date of the date system or NaN if the value is not a date
+	 */
+	public static double toExcelDate(Object value, boolean use1904windowing)
+	{
+		LocalDateTime dateTime;
+		if( value instanceof LocalDate )
+		{
+			return toExcelDate(((LocalDate) value).toEpochDay(), 0, use1904windowing);
+		}
+		else if( value instanceof LocalDateTime )
+		{
+			dateTime = (LocalDateTime) value;
+		}
+		else if( value instanceof Date )
+		{
+			dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(((Date) value).getTime()),
+					ZoneId.systemDefault());
+		}
+		else if( value instanceof Calendar )
+		{
+			Calendar calendar = (Calendar) value;
+			dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(calendar.getTimeInMillis()),
+					calendar.getTimeZone().toZoneId());
+		}
+		else
+		{
+			return Double.NaN;
+		}
+		return toExcelDate(dateTime.toLocalDate().toEpochDay(),
+				dateTime.toLocalTime().toNanoOfDay()/1000000, use1904windowing);
+	}
+
+	/**
+	 * Converts possibly out of range (lenient) date fields to an Excel serial date.
+	 */
+	public static double toExcelDate(long year, long month, long day,
+			long hour, long minute, long second, boolean use1904windowing)
+	{
+		// roll months over into years, days and time over into the date
+		year += Math.floorDiv(month-1, 12);
+		month = Math.floorMod(month-1, 12)+1;
+		long seconds = (daysFromCivil(year, (int) month, 1) + day - 1) * SECONDS_PER_DAY
+				+ hour*3600 + minute*60 + second;
+		seconds = skipDaylightSavingGap(seconds);
+		return toExcelDate(Math.floorDiv(seconds, SECONDS_PER_DAY),
+				Math.floorMod(seconds, SECONDS_PER_DAY)*1000, use1904windowing);
+	}
+
+	/**
+	 * Same as {@link org.apache.poi.hssf.usermodel.HSSFDateUtil#getExcelDate(java.util.Date, boolean)}
+	 *
+	 * @param epochDay - days since 1970-01-01
+	 * @param millisOfDay - time of the day
+	 */
+	public static double toExcelDate(long epochDay, long millisOfDay, boolean use1904windowing)
+	{
+		long year = yearOfEpochDay(epochDay);
+		if( year < (use1904windowing ? 1904 : 1900) )
+		{
+			return -1.0;
+		}
+		int dayOfYear = (int) (epochDay - daysFromCivil(year, 1, 1)) + 1;
+		// int arithmetic of HSSFDateUtil.absoluteDay
+		int yr = (int) year;
+		int yr1 = yr - 1;
+		int leapDays = yr1 / 4 - yr1 / 100 + yr1 / 400 - 460;
+		int absoluteDay = dayOfYear + 365 * (yr - (use1904windowing ? 1904 : 1900)) + leapDays;
+
+		double fraction = millisOfDay / MILLISECONDS_PER_DAY;
+		double value = fraction + (double) absoluteDay;
+		if( !use1904windowing && value >= 60.0 )
+		{
+			// Excel treats 1900 as a leap year
+			value += 1.0;
+		}
+		else if( use1904windowing )
+		{
+			value -= 1.0;
+		}
+		return value;
+	}
+
+	/**
+	 * Local time which does not exist because of a daylight saving transition
+	 * is moved forward by the length of the gap, as lenient Calendar does.
+	 *
+	 * @param seconds - local date and time as seconds since 1970-01-01T00:00
+	 */
+	private static long skipDaylightSavingGap(long seconds)
+	{
+		if( !ZONE_RULES.isFixedOffset() && Math.abs(seconds) < 1L<<45 )
+		{
+			LocalDateTime ldt = LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+			ZoneOffsetTransition transition = ZONE_RULES.getTransition(ldt);
+			if( transition != null && transition.isGap() )
+			{
+				return seconds + transition.getDuration().getSeconds();
+			}
+		}
+		return seconds;
+	}
+
+	/**
+	 * @return proleptic Gregorian year of the day
+	 */
+	private static long yearOfEpochDay(long epochDay)
+	{
+		long z = epochDay + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long doe = z - era*146097;
+		long yoe = (doe - doe/1460 + doe/36524 - doe/146096)/365;
+		long doy = doe - (365*yoe + yoe/4 - yoe/100);
+		long mp = (5*doy + 2)/153;
+		return yoe + era*400 + (mp >= 10 ? 1 : 0);
+	}
+
+	/**
+	 * @return days since 1970-01-01 of the proleptic Gregorian date
+	 */
+	private static long daysFromCivil(long year, int month, int day)
+	{
+		year -= month <= 2 ? 1 : 0;
+		long era = Math.floorDiv(year, 400);
+		long yoe = year - era*400;
+		long doy = (153*(month + (month > 2 ? -3 : 9)) + 2)/5 + day - 1;
+		long doe = yoe*365 + yoe/4 - yoe/100 + doy;
+		return era*146097 + doe - 719468;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+
+/**
+ * Renders a manifest of the examples in a temporary directory.
+ */
+public class BatchRendererTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+	private static final String[] NAMES = {"PriceList", "SalesReceipt", "recon"};
+
+	private File directory;
+
+	@Override
+	protected void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("batch").toFile();
+		for (String name : NAMES)
+		{
+			copy(name + "Template.xls");
+			copy(name + ".csv");
+		}
+		PrintWriter manifest = new PrintWriter(new File(directory, "manifest.txt"), "UTF-8");
+		for (int i = 0; i < 4; i++)
+		{
+			for (String name : NAMES)
+			{
+				manifest.println(name + "Template.xls\t" + name + ".csv\t" + name + i);
+			}
+		}
+		manifest.println();
+		manifest.println("MissingTemplate.xls\tPriceList.csv\tMissing");
+		manifest.close();
+	}
+
+	@Override
+	protected void tearDown()
+	{
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testReadManifest() throws IOException
+	{
+		List<BatchRenderer.Entry> entries = BatchRenderer.readManifest(new File(directory, "manifest.txt"));
+		Assert.assertEquals(13, entries.size());
+		BatchRenderer.Entry entry = entries.get(1);
+		Assert.assertEquals(new File(directory, "SalesReceiptTemplate.xls"), entry.getTemplate());
+		Assert.assertEquals(new File(directory, "SalesReceipt.csv"), entry.getData());
+		Assert.assertEquals(new File(directory, "SalesReceipt0.pdf"), entry.getOutput(OutputFormat.pdf));
+	}
+
+	public void testRender() throws Exception
+	{
+		BatchRenderer renderer = new BatchRenderer(3, EnumSet.of(OutputFormat.xls, OutputFormat.pdf));
+		BatchRenderer.Result result = renderer.render(BatchRenderer.readManifest(new File(directory, "manifest.txt")));
+		Assert.assertEquals(13, result.getEntries());
+		Assert.assertEquals(1, result.getFailed());
+		Assert.assertEquals(24, result.getDocuments());
+		Assert.assertTrue(result.toString(), result.toString().startsWith("13 entries (1 failed), 24 documents"));
+
+		long bytes = 0;
+		for (String name : NAMES)
+		{
+			byte[] expected = render(name);
+			for (int i = 0; i < 4; i++)
+			{
+				Assert.assertArrayEquals(name + i, expected, Files.readAllBytes(new File(directory, name + i + ".xls").toPath()));
+				bytes += new File(directory, name + i + ".xls").length() + new File(directory, name + i + ".pdf").length();
+			}
+		}
+		Assert.assertEquals(bytes, result.getBytes());
+		Assert.assertFalse(new File(directory, "Missing.xls").exists());
+	}
+
+	public void testPdfOnly() throws Exception
+	{
+		BatchRenderer renderer = new BatchRenderer(2, EnumSet.of(OutputFormat.pdf));
+		BatchRenderer.Result result = renderer.render(BatchRenderer.readManifest(new File(directory, "manifest.txt")));
+		Assert.assertEquals(12, result.getDocuments());
+		Assert.assertTrue(new File(directory, "recon3.pdf").length() > 0);
+		Assert.assertFalse(new File(directory, "recon3.xls").exists());
+	}
+
+	private byte[] render(String name) throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES + name + "Template.xls"));
+		return TestData.process(tp, TestData.read(name));
+	}
+
+	private void copy(String name) throws IOException
+	{
+		Files.copy(new File(RESOURCES + name).toPath(), new File(directory, name).toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+}
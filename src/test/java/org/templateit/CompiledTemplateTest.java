@@ -0,0 +1,211 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Assert;
+
+public class CompiledTemplateTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	public void testReuseCompiledTemplate() throws IOException
+	{
+		CompiledTemplate ct = CompiledTemplate.compile(new File(RESOURCES+"recon"+"Template.xls"));
+		byte[] first = render(ct, "recon");
+		byte[] second = render(ct, "recon");
+
+		HSSFWorkbook wb1 = new HSSFWorkbook(new ByteArrayInputStream(first));
+		HSSFWorkbook wb2 = new HSSFWorkbook(new ByteArrayInputStream(second));
+		Assert.assertEquals(1, wb1.getNumberOfSheets());
+		Assert.assertEquals(wb1.getNumberOfSheets(), wb2.getNumberOfSheets());
+		Assert.assertEquals("Not in MUREX", wb2.getSheetName(0));
+
+		// #select and #template of the first render must not leak into the second one
+		HSSFSheet s1 = wb1.getSheetAt(0);
+		HSSFSheet s2 = wb2.getSheetAt(0);
+		Assert.assertEquals(s1.getLastRowNum(), s2.getLastRowNum());
+		for (int r = 0; r <= s1.getLastRowNum(); r++)
+		{
+			Assert.assertEquals(s1.getRow(r).getLastCellNum(), s2.getRow(r).getLastCellNum());
+		}
+	}
+
+	public void testTemplateSheetsAreNotCopied() throws IOException
+	{
+		CompiledTemplate ct = CompiledTemplate.compile(new File(RESOURCES+"SalesReceipt"+"Template.xls"));
+		HSSFWorkbook wb = ct.createWorkbook();
+		Assert.assertEquals(0, wb.getNumberOfSheets());
+		Assert.assertNotNull(ct.getTemplateSheet("SalesReceipt"+CompiledTemplate.SUFFIX));
+	}
+
+	public void testFillPlansAreCompiled() throws IOException
+	{
+		CompiledTemplate ct = CompiledTemplate.compile(new File(RESOURCES+"PriceList"+"Template.xls"));
+		TemplateSheet tSheet = ct.getTemplateSheet("PriceList"+CompiledTemplate.SUFFIX);
+		StaticTemplate item = tSheet.getStaticTemplate("item");
+		FillPlan plan = item.getFillPlan(tSheet);
+		Assert.assertSame(plan, item.getFillPlan(tSheet));
+		Assert.assertEquals(item.height(), plan.height());
+		Assert.assertEquals(item.width(), plan.width());
+		for (int c = 0; c < plan.width(); c++)
+		{
+			Assert.assertEquals(item.getParameterIndex(0, c), plan.getCell(0, c).paramIndex);
+		}
+	}
+
+	/**
+	 * Formula tokens are parsed once per compiled template and 
+	 * every generated cell must get its own relocated copy.
+	 */
+	public void testFormulasAreRelocated() throws IOException
+	{
+		CompiledTemplate ct = CompiledTemplate.compile(new File(RESOURCES+"SalesReceipt"+"Template.xls"));
+		render(ct, "SalesReceipt");
+		HSSFSheet sheet = new HSSFWorkbook(new ByteArrayInputStream(render(ct, "SalesReceipt"))).getSheetAt(0);
+		Pattern amount = Pattern.compile("F(\\d+)\\*B(\\d+)");
+		int amounts = 0;
+		for (Iterator<?> rows = sheet.rowIterator(); rows.hasNext();)
+		{
+			HSSFRow row = (HSSFRow) rows.next();
+			for (Iterator<?> cells = row.cellIterator(); cells.hasNext();)
+			{
+				HSSFCell cell = (HSSFCell) cells.next();
+				if (cell.getCellType() == HSSFCell.CELL_TYPE_FORMULA)
+				{
+					Matcher m = amount.matcher(cell.getCellFormula());
+					if (m.matches())
+					{
+						Assert.assertEquals(String.valueOf(row.getRowNum()+1), m.group(1));
+						Assert.assertEquals(m.group(1), m.group(2));
+						amounts++;
+					}
+				}
+			}
+		}
+		Assert.assertTrue(amounts > 1);
+	}
+
+	/**
+	 * A compiled template read from the compiled file renders the same workbook
+	 * as the template compiled from the template workbook.
+	 */
+	public void testLoadCompiledFile() throws IOException
+	{
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			File template = copyToTempFile(new File(RESOURCES+name+"Template.xls"));
+			File compiledFile = new File(template.getPath()+CompiledTemplate.FILE_SUFFIX);
+			try
+			{
+				byte[] expected = render(CompiledTemplate.compile(template), name);
+
+				Assert.assertArrayEquals(expected, render(CompiledTemplate.load(template), name));
+				Assert.assertTrue(compiledFile.isFile());
+				byte[] stored = Files.readAllBytes(compiledFile.toPath());
+
+				Assert.assertArrayEquals(expected, render(CompiledTemplate.load(template), name));
+				Assert.assertArrayEquals(stored, Files.readAllBytes(compiledFile.toPath()));
+			}
+			finally
+			{
+				template.delete();
+				compiledFile.delete();
+			}
+		}
+	}
+
+	public void testCompiledFileIsReplacedWhenTemplateChanges() throws IOException
+	{
+		File template = copyToTempFile(new File(RESOURCES+"PriceList"+"Template.xls"));
+		File compiledFile = new File(template.getPath()+CompiledTemplate.FILE_SUFFIX);
+		try
+		{
+			CompiledTemplate.load(template);
+			byte[] stored = Files.readAllBytes(compiledFile.toPath());
+
+			Files.copy(new File(RESOURCES+"SalesReceipt"+"Template.xls").toPath(), template.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			CompiledTemplate ct = CompiledTemplate.load(template);
+			Assert.assertNotNull(ct.getTemplateSheet("SalesReceipt"+CompiledTemplate.SUFFIX));
+			Assert.assertNull(ct.getTemplateSheet("PriceList"+CompiledTemplate.SUFFIX));
+			Assert.assertFalse(Arrays.equals(stored, Files.readAllBytes(compiledFile.toPath())));
+
+			// a damaged compiled file is replaced as well
+			Files.write(compiledFile.toPath(), Arrays.copyOf(stored, stored.length/2));
+			ct = CompiledTemplate.load(template);
+			Assert.assertNotNull(ct.getTemplateSheet("SalesReceipt"+CompiledTemplate.SUFFIX));
+			Assert.assertNotNull(CompiledTemplate.load(template).getTemplateSheet("SalesReceipt"+CompiledTemplate.SUFFIX));
+		}
+		finally
+		{
+			template.delete();
+			compiledFile.delete();
+		}
+	}
+
+	/**
+	 * Lazily parsed template renders the same workbook, 
+	 * the template sheets the data does not use are not parsed.
+	 */
+	public void testLazyParsing() throws IOException
+	{
+		File template = new File(RESOURCES+"recon"+"Template.xls");
+		byte[] expected = render(CompiledTemplate.compile(template), "recon");
+
+		TemplateProcessor tp = new TemplateProcessor(template);
+		tp.setLazyParsing(true);
+		Assert.assertEquals(0, tp.getCompiledTemplate().getParsedSheetsNumber());
+		Assert.assertArrayEquals(expected, TestData.process(tp, TestData.read("recon")));
+		Assert.assertEquals(1, tp.getCompiledTemplate().getParsedSheetsNumber());
+
+		CompiledTemplate ct = CompiledTemplate.compile(template, Collections.<String>emptySet(), true);
+		Assert.assertNull(ct.getTemplateSheet("Missing"+CompiledTemplate.SUFFIX));
+		Assert.assertEquals(0, ct.getParsedSheetsNumber());
+		Assert.assertArrayEquals(expected, render(ct, "recon"));
+		Assert.assertArrayEquals(expected, render(ct, "recon"));
+		Assert.assertEquals(1, ct.getParsedSheetsNumber());
+	}
+
+	private static File copyToTempFile(File file) throws IOException
+	{
+		File copy = File.createTempFile("template", ".xls");
+		Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return copy;
+	}
+
+	private static byte[] render(CompiledTemplate ct, String name) throws IOException
+	{
+		return TestData.process(new TemplateProcessor(ct), TestData.read(name));
+	}
+}
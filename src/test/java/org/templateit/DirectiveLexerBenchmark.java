@@ -0,0 +1,159 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFComment;
+import org.apache.poi.hssf.usermodel.HSSFInternals;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.templateit.util.DelimitedFileReader;
+
+/**
+ * Compares {@link DirectiveLexer} with the {@link OpMatcher} regular expressions
+ * on the comments and the data rows of the examples.
+ * <br>
+ * Not a unit test, run it from the project directory with the test classpath:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.templateit.DirectiveLexerBenchmark
+ * </pre>
+ * 
+ * @author Dmitriy Kumshayev
+ */
+public class DirectiveLexerBenchmark
+{
+	private static final String RESOURCES = "src/test/resources/";
+	private static final String[] EXAMPLES = {"PriceList", "SalesReceipt", "recon"};
+	private static final int ROUNDS = 2000;
+
+	public static void main(String[] args) throws IOException
+	{
+		List<String> comments = new ArrayList<String>();
+		List<String> ops = new ArrayList<String>();
+		for (String name : EXAMPLES)
+		{
+			HSSFWorkbook wb = new HSSFWorkbook(new FileInputStream(RESOURCES+name+"Template.xls"));
+			for (int i = 0; i < wb.getNumberOfSheets(); i++)
+			{
+				for (HSSFComment comment : HSSFInternals.getCellComments(wb.getSheetAt(i)))
+				{
+					comments.add(comment.getString().getString());
+				}
+			}
+			DelimitedFileReader reader = new DelimitedFileReader(new File(RESOURCES+name+".csv"), "\t");
+			while (reader.hasNext())
+			{
+				String[] row = reader.next();
+				if (row.length > 0)
+				{
+					ops.add(row[0]);
+				}
+			}
+		}
+		System.out.println(comments.size()+" comments, "+ops.size()+" data rows");
+
+		for (int i = 0; i < 5; i++)
+		{
+			report("OpMatcher comments", measureOpMatcher(comments), comments.size());
+			report("lexer comments", measureLexer(comments), comments.size());
+			report("OpMatcher op codes", measureTemplateName(ops), ops.size());
+			report("lexer op codes", measureIsName(ops), ops.size());
+		}
+	}
+
+	private static long measureOpMatcher(List<String> comments)
+	{
+		int found = 0;
+		long start = System.nanoTime();
+		for (int r = 0; r < ROUNDS; r++)
+		{
+			for (String comment : comments)
+			{
+				found += OpMatcher.matchTemplateBegin(comment) != null ? 1 : 0;
+				found += OpMatcher.matchTemplateEnd(comment) ? 1 : 0;
+				found += OpMatcher.matchTemplateParameter(comment) != null ? 1 : 0;
+				found += OpMatcher.matchStyle(comment) != null ? 1 : 0;
+			}
+		}
+		return check(System.nanoTime()-start, found);
+	}
+
+	private static long measureLexer(List<String> comments)
+	{
+		int found = 0;
+		long start = System.nanoTime();
+		for (int r = 0; r < ROUNDS; r++)
+		{
+			for (String comment : comments)
+			{
+				DirectiveLexer.Directives d = DirectiveLexer.lex(comment);
+				found += d.getTemplateBegin() != null ? 1 : 0;
+				found += d.isTemplateEnd() ? 1 : 0;
+				found += d.getParameter() != null ? 1 : 0;
+				found += d.getStyle() != null ? 1 : 0;
+			}
+		}
+		return check(System.nanoTime()-start, found);
+	}
+
+	private static long measureTemplateName(List<String> ops)
+	{
+		int found = 0;
+		long start = System.nanoTime();
+		for (int r = 0; r < ROUNDS; r++)
+		{
+			for (String op : ops)
+			{
+				found += OpMatcher.matchTemplateName(op) ? 1 : 0;
+			}
+		}
+		return check(System.nanoTime()-start, found);
+	}
+
+	private static long measureIsName(List<String> ops)
+	{
+		int found = 0;
+		long start = System.nanoTime();
+		for (int r = 0; r < ROUNDS; r++)
+		{
+			for (String op : ops)
+			{
+				found += DirectiveLexer.isName(op) ? 1 : 0;
+			}
+		}
+		return check(System.nanoTime()-start, found);
+	}
+
+	private static long check(long nanos, int found)
+	{
+		// use the result, so the calls cannot be eliminated
+		if( found == Integer.MIN_VALUE )
+		{
+			System.out.println(found);
+		}
+		return nanos;
+	}
+
+	private static void report(String name, long nanos, int n)
+	{
+		System.out.println(String.format("%-20s %8.1f ns/call", name, (double) nanos/ROUNDS/n));
+	}
+}
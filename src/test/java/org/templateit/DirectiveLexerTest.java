@@ -0,0 +1,109 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+
+public class DirectiveLexerTest extends TestCase
+{
+	private static final String[] FRAGMENTS =
+	{
+		"@template_begin", "@tbegin", "@template_end", "@tend", "@style", "@", "#",
+		"(", ")", ",", ":", " ", "\n", "\t", "a", "b1", "c_", "1", "0", "9", "date",
+		"number", "text", "dd/MM/yyyy", "MMM d, yyyy", "true", "false", "x",
+		"@style( s ,true", "@style(s", ", false)", "@tbegin(t", "@template_begin(t ", ", p:date(", ", q : number", "#p:",
+	};
+
+	public void testDirectives()
+	{
+		DirectiveLexer.Directives d = DirectiveLexer.lex(
+				"@template_begin(item, name:text, d:date(MMM d, yyyy))\n#name\n@style(A, true)");
+		Assert.assertEquals(Arrays.asList("item", "name:text", "d:date(MMM d, yyyy)"),
+				Arrays.asList(d.getTemplateBegin()));
+		Assert.assertFalse(d.isTemplateEnd());
+		Assert.assertEquals("name", d.getParameter().getName());
+		Assert.assertEquals("A", d.getStyle().getName());
+		Assert.assertTrue(d.getStyle().hasParam());
+
+		d = DirectiveLexer.lex("#2:date(dd/MM/yyyy) @tend");
+		Assert.assertNull(d.getTemplateBegin());
+		Assert.assertTrue(d.isTemplateEnd());
+		Assert.assertEquals("2", d.getParameter().getName());
+		Assert.assertEquals(ParameterType.date, d.getParameter().getType());
+		Assert.assertNotNull(d.getParameter().getFormat());
+		Assert.assertNull(d.getStyle());
+	}
+
+	public void testIsName()
+	{
+		Assert.assertTrue(DirectiveLexer.isName("item"));
+		Assert.assertTrue(DirectiveLexer.isName("i_1"));
+		Assert.assertFalse(DirectiveLexer.isName("#sheet"));
+		Assert.assertFalse(DirectiveLexer.isName("1item"));
+		Assert.assertFalse(DirectiveLexer.isName("item 1"));
+		Assert.assertFalse(DirectiveLexer.isName(""));
+		Assert.assertFalse(DirectiveLexer.isName(null));
+	}
+
+	/**
+	 * Random comments, the lexer must find the directives {@link OpMatcher} finds.
+	 */
+	public void testAgainstOpMatcher()
+	{
+		Random random = new Random(11);
+		for (int i = 0; i < 20000; i++)
+		{
+			StringBuilder sb = new StringBuilder();
+			int n = random.nextInt(16);
+			for (int j = 0; j < n; j++)
+			{
+				sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			String text = sb.toString();
+			DirectiveLexer.Directives d = DirectiveLexer.lex(text);
+
+			String[] begin = OpMatcher.matchTemplateBegin(text);
+			Assert.assertEquals(text, begin != null ? Arrays.asList(begin) : null,
+					d.getTemplateBegin() != null ? Arrays.asList(d.getTemplateBegin()) : null);
+			Assert.assertEquals(text, OpMatcher.matchTemplateEnd(text), d.isTemplateEnd());
+
+			Parameter p = OpMatcher.matchTemplateParameter(text);
+			Assert.assertEquals(text, p == null, d.getParameter() == null);
+			if (p != null)
+			{
+				Assert.assertEquals(text, p.getName(), d.getParameter().getName());
+				Assert.assertEquals(text, p.getType(), d.getParameter().getType());
+				Assert.assertEquals(text, p.getFormat() == null, d.getParameter().getFormat() == null);
+			}
+
+			NamedStyle style = OpMatcher.matchStyle(text);
+			Assert.assertEquals(text, style == null, d.getStyle() == null);
+			if (style != null)
+			{
+				Assert.assertEquals(text, style.getName(), d.getStyle().getName());
+				Assert.assertEquals(text, style.hasParam(), d.getStyle().hasParam());
+			}
+
+			Assert.assertEquals(text, OpMatcher.matchTemplateName(text), DirectiveLexer.isName(text));
+		}
+	}
+}
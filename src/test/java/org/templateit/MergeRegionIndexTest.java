@@ -0,0 +1,94 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.util.CellRangeAddress;
+import org.junit.Assert;
+
+public class MergeRegionIndexTest extends TestCase
+{
+	public void testQueries()
+	{
+		List<CellRangeAddress> regions = new ArrayList<CellRangeAddress>();
+		regions.add(new CellRangeAddress(0, 0, 0, 2));
+		regions.add(new CellRangeAddress(5, 10, 1, 1));
+		regions.add(new CellRangeAddress(2, 3, 4, 6));
+		MergeRegionIndex index = new MergeRegionIndex(regions);
+
+		Assert.assertSame(regions.get(1), index.getRegionStartingAt(5, 1));
+		Assert.assertNull(index.getRegionStartingAt(5, 2));
+		Assert.assertSame(regions.get(1), index.getRegionContaining(10, 1));
+		Assert.assertSame(regions.get(2), index.getRegionContaining(3, 5));
+		Assert.assertNull(index.getRegionContaining(4, 5));
+		Assert.assertEquals(2, index.getRegionsStartingIn(0, 0, 4, 5).size());
+		Assert.assertSame(regions.get(0), index.getRegionsStartingIn(0, 0, 4, 5).get(0));
+	}
+
+	/**
+	 * Random regions, the index must answer as checking all regions does.
+	 */
+	public void testAgainstLinearScan()
+	{
+		Random random = new Random(17);
+		List<CellRangeAddress> regions = new ArrayList<CellRangeAddress>();
+		for (int i = 0; i < 200; i++)
+		{
+			int r = random.nextInt(50);
+			int c = random.nextInt(20);
+			regions.add(new CellRangeAddress(r, r+random.nextInt(5), c, c+random.nextInt(5)));
+		}
+		MergeRegionIndex index = new MergeRegionIndex(regions);
+		for (int r = 0; r < 60; r++)
+		{
+			for (int c = 0; c < 30; c++)
+			{
+				CellRangeAddress startingAt = null;
+				CellRangeAddress containing = null;
+				for (CellRangeAddress region : regions)
+				{
+					if (region.getFirstRow() == r && region.getFirstColumn() == c)
+					{
+						startingAt = region;
+					}
+					if (containing == null && region.getFirstRow() <= r && r <= region.getLastRow()
+							&& region.getFirstColumn() <= c && c <= region.getLastColumn())
+					{
+						containing = region;
+					}
+				}
+				Assert.assertSame(startingAt, index.getRegionStartingAt(r, c));
+				Assert.assertSame(containing, index.getRegionContaining(r, c));
+			}
+		}
+		List<CellRangeAddress> startingIn = new ArrayList<CellRangeAddress>();
+		for (CellRangeAddress region : regions)
+		{
+			if (10 <= region.getFirstRow() && region.getFirstRow() <= 30
+					&& 5 <= region.getFirstColumn() && region.getFirstColumn() <= 15)
+			{
+				startingIn.add(region);
+			}
+		}
+		Assert.assertEquals(startingIn, index.getRegionsStartingIn(10, 5, 30, 15));
+	}
+}
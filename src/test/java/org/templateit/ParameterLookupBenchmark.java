@@ -0,0 +1,117 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * Measures the per-cell cost of parameter index lookups of a template.
+ * The nested hash maps the templates used before are measured as the baseline.
+ * <br>
+ * Not a unit test, run it with the test classpath:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.templateit.ParameterLookupBenchmark
+ * </pre>
+ * 
+ * @author Dmitriy Kumshayev
+ */
+public class ParameterLookupBenchmark
+{
+	private static final int ROWS = 4;
+	private static final int COLUMNS = 30;
+	private static final int LOOKUPS = 20000000;
+
+	public static void main(String[] args)
+	{
+		StaticTemplate t = new StaticTemplate("t", new HSSFWorkbook().createSheet());
+		t.setStartReference(new Reference(0, 0));
+		t.setEndReference(new Reference(ROWS-1, COLUMNS-1));
+		Map<Integer,Map<Integer,Integer>> nestedMaps = new HashMap<Integer, Map<Integer,Integer>>();
+		List<Integer> selectList = new ArrayList<Integer>();
+		// parameters in every other cell of every other row
+		for (int r = 0; r < ROWS; r += 2)
+		{
+			Map<Integer,Integer> byColumn = new HashMap<Integer, Integer>();
+			nestedMaps.put(r, byColumn);
+			for (int c = 0; c < COLUMNS; c += 2)
+			{
+				Parameter p = t.createParameter(""+(t.getParametersNumber()+1), r, c);
+				byColumn.put(c, p.getIndex());
+			}
+		}
+		for (int c = COLUMNS-1; c >= 0; c--)
+		{
+			selectList.add(c);
+		}
+		StaticTemplate selected = t.select(selectList);
+
+		for (int i = 0; i < 5; i++)
+		{
+			report("nested maps", measureNestedMaps(nestedMaps));
+			report("template", measure(t));
+			report("selected template", measure(selected));
+		}
+	}
+
+	private static long measureNestedMaps(Map<Integer,Map<Integer,Integer>> maps)
+	{
+		long sum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++)
+		{
+			int r = (i / COLUMNS) % ROWS;
+			int c = i % COLUMNS;
+			Map<Integer,Integer> byColumn = maps.get(r);
+			Integer idx = byColumn != null ? byColumn.get(c) : null;
+			sum += idx != null ? idx : -1;
+		}
+		return check(System.nanoTime()-start, sum);
+	}
+
+	private static long measure(Template t)
+	{
+		long sum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < LOOKUPS; i++)
+		{
+			int r = (i / COLUMNS) % ROWS;
+			int c = i % COLUMNS;
+			sum += t.getParameterIndex(r, c);
+		}
+		return check(System.nanoTime()-start, sum);
+	}
+
+	private static long check(long nanos, long sum)
+	{
+		// use the sum, so the lookups cannot be eliminated
+		if( sum == Long.MIN_VALUE )
+		{
+			System.out.println(sum);
+		}
+		return nanos;
+	}
+
+	private static void report(String name, long nanos)
+	{
+		System.out.println(String.format("%-20s %6.2f ns/lookup", name, (double) nanos/LOOKUPS));
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Assert;
+
+public class StaticTemplateTest extends TestCase
+{
+	public void testParameterIndex()
+	{
+		StaticTemplate t = createTemplate();
+		Assert.assertEquals(1, t.getParameterIndex(0, 1));
+		Assert.assertEquals(2, t.getParameterIndex(2, 2));
+		Assert.assertEquals(-1, t.getParameterIndex(0, 0));
+		Assert.assertEquals(-1, t.getParameterIndex(1, 1));
+		Assert.assertEquals(-1, t.getParameterIndex(5, 7));
+		Assert.assertEquals("b", t.getParameter(2, 2).getName());
+		Assert.assertNull(t.getParameter(1, 2));
+	}
+
+	/**
+	 * Rows of a #select view without parameters have no parameter indexes.
+	 */
+	public void testSelectedParameterIndex()
+	{
+		StaticTemplate t = createTemplate().select(Arrays.asList(2, 1));
+		Assert.assertEquals(1, t.getParameterIndex(0, 1));
+		Assert.assertEquals(-1, t.getParameterIndex(0, 0));
+		Assert.assertEquals(-1, t.getParameterIndex(1, 0));
+		Assert.assertEquals(-1, t.getParameterIndex(1, 1));
+		Assert.assertEquals(2, t.getParameterIndex(2, 0));
+		Assert.assertEquals("b", t.getParameterAt(2, 0).getName());
+	}
+
+	/**
+	 * 3x3 template with parameter <em>a</em> at (0,1) and <em>b</em> at (2,2)
+	 */
+	private static StaticTemplate createTemplate()
+	{
+		StaticTemplate t = new StaticTemplate("t", new HSSFWorkbook().createSheet());
+		t.setStartReference(new Reference(0, 0));
+		t.setEndReference(new Reference(2, 2));
+		Parameter a = new Parameter();
+		a.setName("a");
+		a.setIndex(1);
+		Parameter b = new Parameter();
+		b.setName("b");
+		b.setIndex(2);
+		t.setParameters(new Parameter[] {a, b});
+		t.createParameter("a", 0, 1);
+		t.createParameter("b", 2, 2);
+		return t;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.templateit.util.DelimitedFileReader;
+
+/**
+ * Measures the throughput of renders of the same template from several threads
+ * through one shared {@link TemplateProcessor}, compared to a single thread.
+ * <br>
+ * Not a unit test, run it with the test classpath:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.templateit.TemplateProcessorConcurrencyBenchmark
+ * </pre>
+ * 
+ * @author Dmitriy Kumshayev
+ */
+public class TemplateProcessorConcurrencyBenchmark
+{
+	private static final String RESOURCES = "src/test/resources/";
+	private static final int RENDERS_PER_THREAD = 40;
+
+	public static void main(String[] args) throws Exception
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"SalesReceiptTemplate.xls"));
+		List<String[]> data = readData(RESOURCES+"SalesReceipt.csv");
+		byte[] expected = render(tp, data);
+
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		// warm up
+		throughput(tp, data, expected, threads);
+
+		double single = throughput(tp, data, expected, 1);
+		double multi = throughput(tp, data, expected, threads);
+
+		System.out.println("SalesReceipt renders/s: 1 thread " + Math.round(single)
+				+ ", " + threads + " threads " + Math.round(multi)
+				+ " (x" + Math.round(multi / single * 100) / 100.0 + " on "
+				+ Runtime.getRuntime().availableProcessors() + " cores)");
+	}
+
+	private static double throughput(final TemplateProcessor tp, final List<String[]> data,
+			final byte[] expected, int threads) throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int t = 0; t < threads; t++)
+			{
+				tasks.add(new Callable<Void>()
+				{
+					public Void call() throws Exception
+					{
+						for (int i = 0; i < RENDERS_PER_THREAD; i++)
+						{
+							if( !Arrays.equals(expected, render(tp, data)) )
+							{
+								throw new IllegalStateException("Concurrent render differs from a single render");
+							}
+						}
+						return null;
+					}
+				});
+			}
+			long start = System.nanoTime();
+			for (Future<Void> f : executor.invokeAll(tasks))
+			{
+				f.get();
+			}
+			long elapsed = System.nanoTime() - start;
+			return threads * RENDERS_PER_THREAD / (elapsed / 1e9);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	private static byte[] render(TemplateProcessor tp, List<String[]> data) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tp.process(data.iterator(), out);
+		return out.toByteArray();
+	}
+
+	private static List<String[]> readData(String fileName) throws IOException
+	{
+		List<String[]> data = new ArrayList<String[]>();
+		DelimitedFileReader reader = new DelimitedFileReader(new File(fileName), "\t");
+		try
+		{
+			while (reader.hasNext())
+			{
+				data.add(reader.next());
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return data;
+	}
+}
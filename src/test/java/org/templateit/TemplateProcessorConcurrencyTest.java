@@ -0,0 +1,91 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.templateit.util.DelimitedFileReader;
+
+/**
+ * Renders the same template from several threads through one shared
+ * {@link TemplateProcessor} and checks every render against a single render.
+ * The throughput is measured by {@link TemplateProcessorConcurrencyBenchmark}.
+ */
+public class TemplateProcessorConcurrencyTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+	private static final int RENDERS_PER_THREAD = 10;
+
+	public void testConcurrentProcess() throws Exception
+	{
+		final TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"SalesReceiptTemplate.xls"));
+		final List<String[]> data = readData(RESOURCES+"SalesReceipt.csv");
+		final byte[] expected = TestData.process(tp, data.iterator());
+
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int t = 0; t < threads; t++)
+			{
+				tasks.add(new Callable<Void>()
+				{
+					public Void call() throws Exception
+					{
+						for (int i = 0; i < RENDERS_PER_THREAD; i++)
+						{
+							Assert.assertTrue(Arrays.equals(expected, TestData.process(tp, data.iterator())));
+						}
+						return null;
+					}
+				});
+			}
+			for (Future<Void> f : executor.invokeAll(tasks))
+			{
+				f.get();
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	private static List<String[]> readData(String fileName) throws IOException
+	{
+		List<String[]> data = new ArrayList<String[]>();
+		DelimitedFileReader reader = new DelimitedFileReader(new File(fileName), "\t");
+		while (reader.hasNext())
+		{
+			data.add(reader.next());
+		}
+		return data;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+
+/**
+ * Compares documents rendered directly to PDF to documents rendered from the written .xls.
+ */
+public class TemplateProcessorPdfTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	public void testExamples() throws Exception
+	{
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+name+"Template.xls"));
+			ByteArrayOutputStream xls = new ByteArrayOutputStream();
+			tp.process(TestData.read(name), xls);
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			new PdfWriter(new ByteArrayInputStream(xls.toByteArray())).writePdf(expected);
+
+			tp.setOutputFormat(OutputFormat.pdf);
+			ClosingStream actual = new ClosingStream();
+			tp.process(TestData.read(name), actual);
+			Assert.assertFalse(name, actual.closed);
+			Assert.assertEquals(name, normalize(expected.toByteArray()), normalize(actual.toByteArray()));
+		}
+	}
+
+	/**
+	 * One workbook written both as .xls and as PDF.
+	 */
+	public void testXlsAndPdf() throws Exception
+	{
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+name+"Template.xls"));
+			ByteArrayOutputStream expectedXls = new ByteArrayOutputStream();
+			tp.process(TestData.read(name), expectedXls);
+			ByteArrayOutputStream expectedPdf = new ByteArrayOutputStream();
+			new PdfWriter(new ByteArrayInputStream(expectedXls.toByteArray())).writePdf(expectedPdf);
+
+			File xls = File.createTempFile(name, ".xls");
+			File pdf = File.createTempFile(name, ".pdf");
+			try
+			{
+				tp.process(TestData.read(name), xls, pdf);
+				Assert.assertArrayEquals(name, expectedXls.toByteArray(), Files.readAllBytes(xls.toPath()));
+				Assert.assertEquals(name, normalize(expectedPdf.toByteArray()), normalize(Files.readAllBytes(pdf.toPath())));
+			}
+			finally
+			{
+				xls.delete();
+				pdf.delete();
+			}
+		}
+	}
+
+	public void testForFile()
+	{
+		Assert.assertEquals(OutputFormat.pdf, OutputFormat.forFile(new File("Report.PDF")));
+		Assert.assertEquals(OutputFormat.xlsx, OutputFormat.forFile(new File("Report.xlsx")));
+		Assert.assertEquals(OutputFormat.xls, OutputFormat.forFile(new File("Report.xls")));
+	}
+
+	/**
+	 * Removes the creation time and the document id.
+	 */
+	private static String normalize(byte[] pdf) throws IOException
+	{
+		return new String(pdf, "ISO-8859-1")
+				.replaceAll("/(CreationDate|ModDate)\\(D:[^)]*\\)", "")
+				.replaceAll("/ID ?\\[<[0-9a-f]+><[0-9a-f]+>\\]", "");
+	}
+
+	private static final class ClosingStream extends ByteArrayOutputStream
+	{
+		private boolean closed = false;
+
+		@Override
+		public void close()
+		{
+			closed = true;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Assert;
+
+/**
+ * Generates more rows than an .xls sheet may have.
+ */
+public class TemplateProcessorRolloverTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+	private static final int ITEMS = 70000;
+
+	public void testRepeatedHeader() throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		tp.setRepeatedTemplates("header");
+		byte[] expected = process(tp, "Prices");
+		tp.setStreamingOutput(true);
+		byte[] streamed = process(tp, "Prices");
+		Assert.assertArrayEquals(expected, streamed);
+
+		HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(expected));
+		Assert.assertEquals(2, wb.getNumberOfSheets());
+		Assert.assertEquals("Prices (2)", wb.getSheetName(1));
+		HSSFSheet first = wb.getSheetAt(0);
+		HSSFSheet second = wb.getSheetAt(1);
+		Assert.assertEquals(65535, first.getLastRowNum());
+		Assert.assertEquals("Item 65534", text(first, 65535));
+		Assert.assertEquals(text(first, 0), text(second, 0));
+		Assert.assertEquals("Item 65535", text(second, 1));
+		Assert.assertEquals(ITEMS - 65535, second.getLastRowNum());
+		Assert.assertEquals("Item " + (ITEMS - 1), text(second, ITEMS - 65535));
+		for (int c = 0; c < 4; c++)
+		{
+			Assert.assertEquals(first.getColumnWidth(c), second.getColumnWidth(c));
+		}
+	}
+
+	public void testLongSheetName() throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		tp.setStreamingOutput(true);
+		String name = "Prices of all items of the year";
+		HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(process(tp, name)));
+		Assert.assertEquals(name, wb.getSheetName(0));
+		Assert.assertEquals("Prices of all items of the (2)", wb.getSheetName(1));
+		Assert.assertEquals("Item 65535", text(wb.getSheetAt(1), 0));
+	}
+
+	/**
+	 * A repeated template which does not fit is generated once on the new sheet.
+	 */
+	public void testRepeatedHeaderOnLimit() throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		tp.setRepeatedTemplates("header");
+		tp.setStreamingOutput(true);
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] {"#sheet", "PriceList", "Prices"});
+		addItems(rows, 0, 65535);
+		addItems(rows, 65535, 10);
+		rows.add(new Object[] {"#end"});
+		HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(TestData.process(tp, rows.iterator())));
+		Assert.assertEquals(2, wb.getNumberOfSheets());
+		HSSFSheet first = wb.getSheetAt(0);
+		HSSFSheet second = wb.getSheetAt(1);
+		Assert.assertEquals(65535, first.getLastRowNum());
+		Assert.assertEquals(text(first, 0), text(second, 0));
+		Assert.assertEquals("Item 65535", text(second, 1));
+		Assert.assertEquals(10, second.getLastRowNum());
+	}
+
+	/**
+	 * A header filling the last row of a sheet stays on it.
+	 */
+	public void testRepeatedHeaderInLastRow() throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		tp.setRepeatedTemplates("header");
+		tp.setStreamingOutput(true);
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] {"#sheet", "PriceList", "Prices"});
+		addItems(rows, 0, 65534);
+		rows.add(new Object[] {"header"});
+		rows.add(new Object[] {"#end"});
+		HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(TestData.process(tp, rows.iterator())));
+		Assert.assertEquals(1, wb.getNumberOfSheets());
+		Assert.assertEquals(text(wb.getSheetAt(0), 0), text(wb.getSheetAt(0), 65535));
+	}
+
+	/**
+	 * Names of the continuation sheets are taken.
+	 */
+	public void testContinuationSheetName() throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		tp.setStreamingOutput(true);
+		List<Object[]> rows = items("Prices");
+		rows.add(new Object[] {"#sheet", "PriceList", "PRICES (2)"});
+		rows.add(new Object[] {"#end"});
+		try
+		{
+			TestData.process(tp, rows.iterator());
+			Assert.fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+			Assert.assertEquals("Sheet name 'PRICES (2)' is taken by the continuation of the full sheet 'Prices'",
+					e.getMessage());
+		}
+	}
+
+	private static String text(HSSFSheet sheet, int row)
+	{
+		return sheet.getRow(row).getCell(0).getRichStringCellValue().getString();
+	}
+
+	private static byte[] process(TemplateProcessor tp, String sheetName) throws IOException
+	{
+		return TestData.process(tp, items(sheetName).iterator());
+	}
+
+	/**
+	 * @return a sheet of a header and the items
+	 */
+	private static List<Object[]> items(String sheetName)
+	{
+		List<Object[]> rows = new ArrayList<Object[]>(ITEMS + 3);
+		rows.add(new Object[] {"#sheet", "PriceList", sheetName});
+		addItems(rows, 0, ITEMS);
+		rows.add(new Object[] {"#end"});
+		return rows;
+	}
+
+	/**
+	 * Adds a header and the items.
+	 */
+	private static void addItems(List<Object[]> rows, int first, int n)
+	{
+		rows.add(new Object[] {"header"});
+		for (int i = first; i < first + n; i++)
+		{
+			rows.add(new Object[] {"item", "Item " + i, String.valueOf(i), "1/12/2009"});
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Assert;
+import org.templateit.TemplateProcessor.RowSink;
+import org.templateit.util.DelimitedFileReader;
+
+/**
+ * Pushes the rows of the examples to a {@link RowSink}.
+ */
+public class TemplateProcessorRowSinkTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	/**
+	 * Rows pushed by the operation methods render exactly as the rows pulled from the file.
+	 */
+	public void testPushedRowsMatchPulledRows() throws IOException
+	{
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+name+"Template.xls"));
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			tp.process(TestData.read(name), expected);
+
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			RowSink sink = tp.open(actual);
+			for (DelimitedFileReader reader = TestData.read(name); reader.hasNext();)
+			{
+				push(sink, reader.next());
+			}
+			sink.end();
+			Assert.assertArrayEquals(name, expected.toByteArray(), actual.toByteArray());
+		}
+	}
+
+	public void testRowsOutsideOfSheet() throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RowSink sink = tp.open(out);
+		try
+		{
+			sink.row("item", "Item 1", 10);
+			Assert.fail();
+		}
+		catch (RuntimeException e)
+		{
+		}
+		// rows of a missing template sheet are not accepted either
+		sink.beginSheet("Missing", null);
+		try
+		{
+			sink.row("item", "Item 1", 10);
+			Assert.fail();
+		}
+		catch (RuntimeException e)
+		{
+		}
+		sink.beginSheet("PriceList", "January");
+		sink.row("item", "Item 1", 10);
+		sink.endSheet();
+		sink.end();
+		try
+		{
+			sink.beginSheet("PriceList", null);
+			Assert.fail();
+		}
+		catch (IllegalStateException e)
+		{
+		}
+
+		HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+		Assert.assertEquals(1, wb.getNumberOfSheets());
+		Assert.assertEquals("January", wb.getSheetName(0));
+		Assert.assertEquals(10, wb.getSheetAt(0).getRow(0).getCell(1).getNumericCellValue(), 0);
+	}
+
+	private static void push(RowSink sink, String[] row)
+	{
+		String op = row[0];
+		if( op.equals("#sheet") )
+		{
+			sink.beginSheet(row[1], row.length > 2 ? row[2] : null);
+		}
+		else if( op.equals("#select") )
+		{
+			int[] rows = new int[row.length-2];
+			for (int i = 0; i < rows.length; i++)
+			{
+				rows[i] = Integer.parseInt(row[i+2]);
+			}
+			sink.select(row[1], rows);
+		}
+		else if( op.equals("#template") )
+		{
+			sink.template(row[1], Integer.parseInt(row[2]), Arrays.copyOfRange(row, 3, row.length));
+		}
+		else if( op.equals("#end") )
+		{
+			sink.endSheet();
+		}
+		else if( op.startsWith("#") )
+		{
+			sink.accept(row);
+		}
+		else
+		{
+			sink.row(op, (Object[]) Arrays.copyOfRange(row, 1, row.length));
+		}
+	}
+}
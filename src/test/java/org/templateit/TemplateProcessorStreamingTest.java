@@ -0,0 +1,97 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFStreamingWorkbook;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Assert;
+
+/**
+ * Compares workbooks written with streaming output to workbooks written from memory.
+ */
+public class TemplateProcessorStreamingTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	public void testExamples() throws IOException
+	{
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+name+"Template.xls"));
+			byte[] expected = TestData.process(tp, TestData.read(name));
+			tp.setStreamingOutput(true);
+			Assert.assertArrayEquals(name, expected, TestData.process(tp, TestData.read(name)));
+		}
+	}
+
+	/**
+	 * Sheets of many row blocks, the last block is partial.
+	 */
+	public void testManyRows() throws IOException
+	{
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (int s = 0; s < 3; s++)
+		{
+			rows.add(new Object[] {"#sheet", "PriceList", "Prices " + s});
+			rows.add(new Object[] {"header"});
+			for (int i = 0; i < 1000*(s+1) + 7; i++)
+			{
+				rows.add(new Object[] {"item", "Item " + (i % 250), String.valueOf(i), "1/12/2009"});
+			}
+			rows.add(new Object[] {"#end"});
+		}
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		byte[] expected = TestData.process(tp, rows.iterator());
+		tp.setStreamingOutput(true);
+		byte[] actual = TestData.process(tp, rows.iterator());
+		Assert.assertArrayEquals(expected, actual);
+
+		HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(actual));
+		HSSFSheet sheet = wb.getSheetAt(2);
+		Assert.assertEquals(3007, sheet.getLastRowNum());
+		Assert.assertEquals("Item 6", sheet.getRow(3007).getCell(0).getRichStringCellValue().getString());
+	}
+
+	public void testRowsInAscendingOrder() throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		HSSFStreamingWorkbook wb = (HSSFStreamingWorkbook) tp.getCompiledTemplate().createWorkbook(true);
+		try
+		{
+			HSSFSheet sheet = wb.createSheet("Rows");
+			wb.createRow(sheet, 5);
+			wb.createRow(sheet, 5);
+			Assert.fail();
+		}
+		catch (IllegalStateException e)
+		{
+		}
+		finally
+		{
+			wb.close();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Assert;
+import org.templateit.util.DelimitedFileReader;
+
+/**
+ * Feeds typed rows (numbers, dates) instead of text.
+ */
+public class TemplateProcessorTypedDataTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	/**
+	 * PriceList rows with numbers and LocalDates must render exactly as
+	 * the same rows read as text from the csv file.
+	 */
+	public void testTypedRowsMatchTextRows() throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		List<String[]> textRows = new ArrayList<String[]>();
+		DelimitedFileReader reader = TestData.read("PriceList");
+		while (reader.hasNext())
+		{
+			textRows.add(reader.next());
+		}
+
+		DateTimeFormatter format = DateTimeFormatter.ofPattern("M/d/yyyy");
+		List<Object[]> typedRows = new ArrayList<Object[]>();
+		for (String[] row : textRows)
+		{
+			Object[] typed = Arrays.copyOf(row, row.length, Object[].class);
+			if( row[0].equals("item") )
+			{
+				typed[2] = Integer.valueOf(row[2]);
+				typed[3] = LocalDate.parse(row[3], format);
+			}
+			typedRows.add(typed);
+		}
+
+		Assert.assertTrue(Arrays.equals(TestData.process(tp, textRows.iterator()), TestData.process(tp, typedRows.iterator())));
+	}
+
+	public void testBooleanAndText() throws IOException
+	{
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] {"#sheet", "PriceList"});
+		rows.add(new Object[] {"item", Boolean.TRUE, 12.5, null});
+		rows.add(new Object[] {"#end"});
+
+		HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(TestData.process(tp, rows.iterator())));
+		HSSFSheet sheet = wb.getSheetAt(0);
+		Assert.assertEquals(HSSFCell.CELL_TYPE_BOOLEAN, sheet.getRow(0).getCell(0).getCellType());
+		Assert.assertEquals(12.5, sheet.getRow(0).getCell(1).getNumericCellValue(), 0);
+		Assert.assertEquals("", sheet.getRow(0).getCell(2).getRichStringCellValue().getString());
+	}
+}
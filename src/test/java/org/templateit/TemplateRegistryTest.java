@@ -0,0 +1,179 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+
+public class TemplateRegistryTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	private File directory;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		directory = Files.createTempDirectory("templates").toFile();
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			copy(name+TemplateRegistry.FILE_SUFFIX, name+TemplateRegistry.FILE_SUFFIX);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		for (File file : directory.listFiles())
+		{
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testTemplatesAreLoadedOnce() throws IOException
+	{
+		TemplateRegistry registry = new TemplateRegistry(directory, Long.MAX_VALUE);
+		try
+		{
+			Assert.assertEquals(0, registry.size());
+			CompiledTemplate ct = registry.get("PriceList");
+			Assert.assertSame(ct, registry.get("PriceList"));
+			Assert.assertNotNull(ct.getTemplateSheet("PriceList"+CompiledTemplate.SUFFIX));
+			Assert.assertEquals(1, registry.size());
+			Assert.assertEquals(ct.getFootprint(), registry.getFootprint());
+			Assert.assertTrue(ct.getFootprint() > 0);
+
+			registry.invalidate("PriceList");
+			Assert.assertEquals(0, registry.getFootprint());
+			Assert.assertNotSame(ct, registry.get("PriceList"));
+		}
+		finally
+		{
+			registry.close();
+		}
+	}
+
+	public void testLeastRecentlyUsedTemplatesAreEvicted() throws IOException
+	{
+		long priceList = footprint("PriceList");
+		long salesReceipt = footprint("SalesReceipt");
+		long recon = footprint("recon");
+		TemplateRegistry registry = new TemplateRegistry(directory, priceList + salesReceipt + recon - 1);
+		try
+		{
+			CompiledTemplate ct = registry.get("PriceList");
+			registry.get("SalesReceipt");
+			Assert.assertSame(ct, registry.get("PriceList"));
+			registry.get("recon");
+
+			// SalesReceipt is the least recently used
+			Assert.assertEquals(2, registry.size());
+			Assert.assertEquals(priceList + recon, registry.getFootprint());
+			Assert.assertSame(ct, registry.get("PriceList"));
+
+			// a template larger than the budget is kept alone
+			TemplateRegistry small = new TemplateRegistry(directory, 1);
+			try
+			{
+				small.get("PriceList");
+				small.get("recon");
+				Assert.assertEquals(1, small.size());
+				Assert.assertEquals(recon, small.getFootprint());
+			}
+			finally
+			{
+				small.close();
+			}
+		}
+		finally
+		{
+			registry.close();
+		}
+	}
+
+	public void testChangedTemplateIsReloaded() throws Exception
+	{
+		TemplateRegistry registry = new TemplateRegistry(directory, Long.MAX_VALUE);
+		try
+		{
+			CompiledTemplate ct = registry.get("PriceList");
+			copy("SalesReceipt"+TemplateRegistry.FILE_SUFFIX, "PriceList"+TemplateRegistry.FILE_SUFFIX);
+			for (int i = 0; i < 100 && registry.size() > 0; i++)
+			{
+				Thread.sleep(100);
+			}
+			CompiledTemplate changed = registry.get("PriceList");
+			Assert.assertNotSame(ct, changed);
+			Assert.assertNotNull(changed.getTemplateSheet("SalesReceipt"+CompiledTemplate.SUFFIX));
+			// the template held by a render is not affected
+			Assert.assertNotNull(ct.getTemplateSheet("PriceList"+CompiledTemplate.SUFFIX));
+		}
+		finally
+		{
+			registry.close();
+		}
+	}
+
+	public void testMissingTemplate() throws IOException
+	{
+		TemplateRegistry registry = new TemplateRegistry(directory, Long.MAX_VALUE);
+		try
+		{
+			try
+			{
+				registry.get("Missing");
+				Assert.fail();
+			}
+			catch (FileNotFoundException e)
+			{
+				Assert.assertEquals(0, registry.size());
+			}
+			try
+			{
+				registry.get("../PriceList");
+				Assert.fail();
+			}
+			catch (IllegalArgumentException e)
+			{
+				Assert.assertEquals(0, registry.size());
+			}
+		}
+		finally
+		{
+			registry.close();
+		}
+	}
+
+	private long footprint(String name) throws IOException
+	{
+		return CompiledTemplate.compile(new File(RESOURCES+name+TemplateRegistry.FILE_SUFFIX)).getFootprint();
+	}
+
+	private void copy(String resource, String fileName) throws IOException
+	{
+		Files.copy(new File(RESOURCES+resource).toPath(), new File(directory, fileName).toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+}
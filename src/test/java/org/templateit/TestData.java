@@ -0,0 +1,57 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.templateit.util.DelimitedFileReader;
+
+/**
+ * Example data of the tests in src/test/resources.
+ *
+ * @author Dmitriy Kumshayev
+ */
+public final class TestData
+{
+	public static final String RESOURCES = "src/test/resources/";
+
+	private TestData()
+	{
+	}
+
+	/**
+	 * @return workbook generated from the rows
+	 */
+	public static byte[] process(TemplateProcessor tp, Iterator<? extends Object[]> rows) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tp.process(rows, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param name - example name, e.g. <em>PriceList</em>
+	 * @return reader of the tab-separated example data <em>name.csv</em>
+	 */
+	public static DelimitedFileReader read(String name) throws IOException
+	{
+		return new DelimitedFileReader(new File(RESOURCES+name+".csv"), "\t");
+	}
+}
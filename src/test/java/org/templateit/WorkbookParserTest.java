@@ -1,39 +1,204 @@
-/*
- * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.templateit;
-
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-
-import junit.framework.TestCase;
-
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-
-public class WorkbookParserTest extends TestCase 
-{
-	public void testParser() throws IOException
-	{
-		File file = new File("src/test/resources/SalesReceiptTemplate.xls");
-		System.out.println(file.getAbsolutePath());
-		FileInputStream in = new FileInputStream(file);
-		HSSFWorkbook workbook = new HSSFWorkbook(in);
-		WorkbookParser p = new WorkbookParser(workbook);
-		p.parse();
-	}
-
-}
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFClientAnchor;
+import org.apache.poi.hssf.usermodel.HSSFComment;
+import org.apache.poi.hssf.usermodel.HSSFInternals;
+import org.apache.poi.hssf.usermodel.HSSFPatriarch;
+import org.apache.poi.hssf.usermodel.HSSFRichTextString;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.util.CellRangeAddress;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Assert;
+
+public class WorkbookParserTest extends TestCase 
+{
+	public void testParser() throws IOException
+	{
+		File file = new File("src/test/resources/SalesReceiptTemplate.xls");
+		System.out.println(file.getAbsolutePath());
+		FileInputStream in = new FileInputStream(file);
+		HSSFWorkbook workbook = new HSSFWorkbook(in);
+		WorkbookParser p = new WorkbookParser(workbook);
+		p.parse();
+	}
+
+	/**
+	 * Comments found walking the sheet records once must be the same
+	 * as comments found probing every cell.
+	 */
+	public void testCellComments() throws IOException
+	{
+		String[] names = {"SalesReceiptTemplate.xls", "PriceListTemplate.xls", "reconTemplate.xls"};
+		for (String name : names)
+		{
+			HSSFWorkbook workbook = new HSSFWorkbook(new FileInputStream("src/test/resources/"+name));
+			for (int i = 0; i < workbook.getNumberOfSheets(); i++)
+			{
+				HSSFSheet sheet = workbook.getSheetAt(i);
+				List<HSSFComment> comments = HSSFInternals.getCellComments(sheet);
+				Iterator<HSSFComment> it = comments.iterator();
+				for (int r = 0; r <= sheet.getLastRowNum(); r++)
+				{
+					for (int c = 0; c < 256; c++)
+					{
+						HSSFComment expected = sheet.getCellComment(r, c);
+						if (expected != null)
+						{
+							Assert.assertTrue(it.hasNext());
+							HSSFComment comment = it.next();
+							Assert.assertEquals(r, comment.getRow());
+							Assert.assertEquals(c, comment.getColumn());
+							Assert.assertEquals(expected.getString().getString(), comment.getString().getString());
+						}
+					}
+				}
+				Assert.assertFalse(it.hasNext());
+			}
+		}
+	}
+
+	/**
+	 * Sheets parsed in parallel must give the same result as sheets parsed one by one.
+	 */
+	public void testParallelParse() throws IOException
+	{
+		HSSFWorkbook workbook = createWorkbook(12);
+		Set<String> names = new HashSet<String>();
+		for (int i = 0; i < workbook.getNumberOfSheets(); i++)
+		{
+			names.add(workbook.getSheetName(i));
+		}
+
+		TemplateWorkbook parallel = new WorkbookParser(workbook).parse(Collections.<String>emptySet());
+		for (String name : names)
+		{
+			// parse the single sheet, excluding all others
+			Set<String> others = new HashSet<String>(names);
+			others.remove(name);
+			TemplateWorkbook single = new WorkbookParser(workbook).parse(others);
+			String expected = describe(single.getTemplateSheet(name));
+			Assert.assertTrue(expected, expected.indexOf("formula") != -1);
+			Assert.assertEquals(expected, describe(parallel.getTemplateSheet(name)));
+		}
+	}
+
+	public void testLazyParse() throws IOException
+	{
+		TemplateWorkbook eager = new WorkbookParser(createWorkbook(12)).parse(Collections.<String>emptySet());
+		TemplateWorkbook lazy = new WorkbookParser(createWorkbook(12)).parseLazily(Collections.<String>emptySet());
+		Assert.assertEquals(0, lazy.getParsedSheetsNumber());
+
+		Assert.assertEquals(describe(eager.getTemplateSheet("S5")), describe(lazy.getTemplateSheet("S5")));
+		Assert.assertSame(lazy.getTemplateSheet("S5"), lazy.getTemplateSheet("S5"));
+		Assert.assertNull(lazy.getTemplateSheet("Missing"));
+		Assert.assertEquals(1, lazy.getParsedSheetsNumber());
+
+		Assert.assertEquals(12, lazy.sheets().size());
+		for (int i = 0; i < 12; i++)
+		{
+			String name = "S"+i;
+			Assert.assertEquals(describe(eager.getTemplateSheet(name)), describe(lazy.getTemplateSheet(name)));
+		}
+	}
+
+	/**
+	 * Each sheet has a template with a parameter, formulas and 
+	 * a merge region which extends the template.
+	 */
+	private static HSSFWorkbook createWorkbook(int nSheets) throws IOException
+	{
+		HSSFWorkbook workbook = new HSSFWorkbook();
+		for (int i = 0; i < nSheets; i++)
+		{
+			HSSFSheet sheet = workbook.createSheet("S"+i);
+			for (int r = 0; r < 3; r++)
+			{
+				HSSFRow row = sheet.createRow(r);
+				for (int c = 0; c < 4; c++)
+				{
+					row.createCell(c).setCellValue(r*10+c+i);
+				}
+			}
+			sheet.getRow(1).getCell(1).setCellFormula("A1*"+(i+2));
+			sheet.getRow(1).getCell(2).setCellFormula("S0!A1+B"+(i+1));
+			sheet.addMergedRegion(new CellRangeAddress(2, 2, 2, 3));
+			HSSFPatriarch patriarch = sheet.createDrawingPatriarch();
+			setComment(patriarch, sheet, 0, 0, "@template_begin(t"+i+", p:number)");
+			setComment(patriarch, sheet, 0, 1, "#p");
+			setComment(patriarch, sheet, 2, 2, "@template_end");
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		workbook.write(out);
+		return new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	private static void setComment(HSSFPatriarch patriarch, HSSFSheet sheet, int r, int c, String text)
+	{
+		HSSFComment comment = patriarch.createComment(new HSSFClientAnchor(0, 0, 0, 0, (short) c, r, (short) (c+2), r+2));
+		comment.setString(new HSSFRichTextString(text));
+		sheet.getRow(r).getCell(c).setCellComment(comment);
+	}
+
+	private static String describe(TemplateSheet tSheet)
+	{
+		List<String> lines = new ArrayList<String>();
+		for (StaticTemplate t : tSheet.templates())
+		{
+			StringBuilder sb = new StringBuilder(t.getName()+" "+t.start()+" "+t.end());
+			for (int i = 1; i <= t.getParametersNumber(); i++)
+			{
+				Parameter p = t.getParameter(i);
+				sb.append(" "+p.getName()+"@"+p.getRow()+","+p.getColumn()+":"+p.getType());
+			}
+			sb.append(" "+t.getMergeRegions());
+			FillPlan plan = t.getFillPlan(tSheet);
+			for (int r = 0; r < plan.height(); r++)
+			{
+				for (int c = 0; c < plan.width(); c++)
+				{
+					FillPlan.CellFill cell = plan.getCell(r, c);
+					sb.append(" "+cell.type+"/"+cell.paramIndex+"/"+cell.value);
+					if (cell.type == HSSFCell.CELL_TYPE_FORMULA)
+					{
+						sb.append(" formula "+cell.formula.getFormula());
+					}
+				}
+			}
+			lines.add(sb.toString());
+		}
+		Collections.sort(lines);
+		return lines.toString();
+	}
+}
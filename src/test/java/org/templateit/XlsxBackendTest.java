@@ -0,0 +1,232 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Assert;
+import org.templateit.util.FormulaUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compares workbooks written as .xlsx to the same workbooks written as .xls.
+ */
+public class XlsxBackendTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+	private static final String MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+	public void testExamples() throws Exception
+	{
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+name+"Template.xls"));
+			HSSFWorkbook expected = new HSSFWorkbook(new ByteArrayInputStream(TestData.process(tp, TestData.read(name))));
+			tp.setOutputFormat(OutputFormat.xlsx);
+			Map<String,Document> parts = unzip(TestData.process(tp, TestData.read(name)));
+
+			Assert.assertTrue(name, parts.containsKey("[Content_Types].xml"));
+			Assert.assertTrue(name, parts.containsKey("xl/styles.xml"));
+			NodeList sheets = parts.get("xl/workbook.xml").getElementsByTagNameNS(MAIN, "sheet");
+			Assert.assertEquals(name, expected.getNumberOfSheets(), sheets.getLength());
+			for (int i = 0; i < sheets.getLength(); i++)
+			{
+				Assert.assertEquals(name, expected.getSheetName(i), ((Element) sheets.item(i)).getAttribute("name"));
+				Document sheet = parts.get("xl/worksheets/sheet"+(i+1)+".xml");
+				assertCells(name+" "+expected.getSheetName(i), expected.getSheetAt(i), sheet);
+			}
+		}
+	}
+
+	/**
+	 * Rows kept in memory do not change the output.
+	 */
+	public void testWindowSize() throws IOException
+	{
+		byte[] expected = write(1000);
+		Assert.assertArrayEquals(expected, write(1));
+		Assert.assertArrayEquals(expected, write(100));
+	}
+
+	/**
+	 * A sheet longer than an .xls sheet can be.
+	 */
+	public void testManyRows() throws Exception
+	{
+		final int items = 70000;
+		Iterator<Object[]> rows = new Iterator<Object[]>()
+		{
+			private int i = -3;
+
+			public boolean hasNext()
+			{
+				return i < items;
+			}
+
+			public Object[] next()
+			{
+				i++;
+				if( i == -2 )
+				{
+					return new Object[] {"#sheet", "PriceList", "Prices"};
+				}
+				if( i == -1 )
+				{
+					return new Object[] {"header"};
+				}
+				return i < items ? new Object[] {"item", "Item " + i, String.valueOf(i), "1/12/2009"}
+						: new Object[] {"#end"};
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		tp.setOutputFormat(OutputFormat.xlsx);
+		Document sheet = unzip(TestData.process(tp, rows)).get("xl/worksheets/sheet1.xml");
+		NodeList rowList = sheet.getElementsByTagNameNS(MAIN, "row");
+		Assert.assertEquals(items + 1, rowList.getLength());
+		Element last = (Element) rowList.item(items);
+		Assert.assertEquals(String.valueOf(items + 1), last.getAttribute("r"));
+		Assert.assertEquals("Item " + (items - 1), last.getElementsByTagNameNS(MAIN, "t").item(0).getTextContent());
+	}
+
+	private static byte[] write(int windowSize) throws IOException
+	{
+		CompiledTemplate ct = CompiledTemplate.compile(new File(RESOURCES+"PriceListTemplate.xls"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XlsxBackend backend = new XlsxBackend(ct.createWorkbook(false), out, windowSize);
+		SheetOutput sheet = backend.createSheet(ct.getTemplateSheet("PriceList"+CompiledTemplate.SUFFIX), "Rows");
+		for (int r = 0; r < 500; r++)
+		{
+			sheet.createRow(r, (short) 255);
+			sheet.createCell(0, HSSFCell.CELL_TYPE_STRING, (short) 15);
+			sheet.setCellValue("Row " + r);
+			sheet.createCell(2, HSSFCell.CELL_TYPE_NUMERIC, (short) 0);
+			sheet.setCellValue(r * 0.5);
+		}
+		sheet.addMergedRegion(10, 12, 0, 1);
+		backend.write();
+		backend.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * String, number and boolean cells have the same values, formula cells have formulas.
+	 */
+	private static void assertCells(String message, HSSFSheet expected, Document sheet)
+	{
+		Map<String,Element> cells = new HashMap<String,Element>();
+		NodeList list = sheet.getElementsByTagNameNS(MAIN, "c");
+		for (int i = 0; i < list.getLength(); i++)
+		{
+			Element c = (Element) list.item(i);
+			cells.put(c.getAttribute("r"), c);
+		}
+		for (Iterator<?> rit = expected.rowIterator(); rit.hasNext();)
+		{
+			HSSFRow row = (HSSFRow) rit.next();
+			for (Iterator<?> cit = row.cellIterator(); cit.hasNext();)
+			{
+				HSSFCell cell = (HSSFCell) cit.next();
+				StringBuilder ref = new StringBuilder();
+				FormulaUtil.appendColumnName(ref, cell.getColumnIndex());
+				ref.append(row.getRowNum() + 1);
+				Element c = cells.get(ref.toString());
+				Assert.assertNotNull(message+" "+ref, c);
+				switch (cell.getCellType())
+				{
+					case HSSFCell.CELL_TYPE_STRING:
+						Assert.assertEquals(message+" "+ref, cell.getRichStringCellValue().getString(), text(c, "t"));
+						break;
+					case HSSFCell.CELL_TYPE_NUMERIC:
+						Assert.assertEquals(message+" "+ref, cell.getNumericCellValue(), Double.parseDouble(text(c, "v")), 0);
+						break;
+					case HSSFCell.CELL_TYPE_BOOLEAN:
+						Assert.assertEquals(message+" "+ref, cell.getBooleanCellValue() ? "1" : "0", text(c, "v"));
+						break;
+					case HSSFCell.CELL_TYPE_FORMULA:
+						Assert.assertEquals(message+" "+ref, 1, c.getElementsByTagNameNS(MAIN, "f").getLength());
+						break;
+				}
+			}
+		}
+	}
+
+	private static String text(Element c, String element)
+	{
+		StringBuilder sb = new StringBuilder();
+		NodeList list = c.getElementsByTagNameNS(MAIN, element);
+		for (int i = 0; i < list.getLength(); i++)
+		{
+			sb.append(list.item(i).getTextContent());
+		}
+		return sb.toString();
+	}
+
+	private static Map<String,Document> unzip(byte[] bytes) throws Exception
+	{
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		Map<String,Document> parts = new LinkedHashMap<String,Document>();
+		ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bytes));
+		for (ZipEntry e = zip.getNextEntry(); e != null; e = zip.getNextEntry())
+		{
+			parts.put(e.getName(), factory.newDocumentBuilder().parse(new Uncloseable(zip)));
+		}
+		return parts;
+	}
+
+	/**
+	 * The parser closes its input, the entries are read from the same zip stream.
+	 */
+	private static final class Uncloseable extends FilterInputStream
+	{
+		Uncloseable(InputStream in)
+		{
+			super(in);
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Measures the throughput of {@link DelimitedFileReader} and
+ * {@link MappedDelimitedReader} against BufferedReader.readLine and
+ * String.split they replace, on a generated
+ * data file with a tab, a pipe and a double pipe delimiter.
+ * <br>
+ * Not a unit test, run it from the project directory with the test classpath,
+ * the argument is the size of the data file in megabytes (1024 by default):
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.templateit.util.DelimitedFileReaderBenchmark 4096
+ * </pre>
+ *
+ * @author Dmitriy Kumshayev
+ */
+public class DelimitedFileReaderBenchmark
+{
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) throws IOException
+	{
+		long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 1024;
+		for (String delimiter : new String[] {"\t", "|", "||"})
+		{
+			File file = File.createTempFile("data", ".csv");
+			try
+			{
+				write(file, delimiter, megabytes*1024*1024);
+				System.out.println(String.format("%d MB, delimiter '%s'", file.length()/1024/1024, delimiter));
+				for (int i = 0; i < ROUNDS; i++)
+				{
+					report("split", file, measureSplit(file, delimiter));
+					report("DelimitedFileReader", file, measureReader(new DelimitedFileReader(file, delimiter)));
+					report("MappedDelimitedReader", file, measureReader(new MappedDelimitedReader(file, delimiter)));
+				}
+			}
+			finally
+			{
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Writes rows of the PriceList example until the file has the size.
+	 */
+	private static void write(File file, String d, long size) throws IOException
+	{
+		Writer out = new BufferedWriter(new FileWriter(file), 1024*1024);
+		try
+		{
+			long written = 0;
+			for (int i = 0; written < size; i++)
+			{
+				String row = "item"+d+"Item "+i+d+(i%1000)/10.0+d+(1+i%12)+"/"+(1+i%28)+"/2009"+d+d+"\n";
+				out.write(row);
+				written += row.length();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static long measureSplit(File file, String delimiter) throws IOException
+	{
+		long fields = 0;
+		long start = System.nanoTime();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try
+		{
+			for (String line; (line = reader.readLine()) != null;)
+			{
+				// the delimiter is a regular expression for String.split
+				fields += line.split(delimiter.replace("|", "\\|")).length;
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return check(System.nanoTime()-start, fields);
+	}
+
+	private static long measureReader(DelimitedFileReader reader) throws IOException
+	{
+		long fields = 0;
+		long start = System.nanoTime();
+		try
+		{
+			String[] row = null;
+			while (reader.hasNext())
+			{
+				row = reader.next(row);
+				fields += row.length;
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return check(System.nanoTime()-start, fields);
+	}
+
+	private static long check(long nanos, long fields)
+	{
+		// use the result, so the calls cannot be eliminated
+		if( fields == Long.MIN_VALUE )
+		{
+			System.out.println(fields);
+		}
+		return nanos;
+	}
+
+	private static void report(String name, File file, long nanos)
+	{
+		System.out.println(String.format("%-22s %8.1f MB/s", name, file.length()/1024.0/1024.0/(nanos/1e9)));
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+
+/**
+ * Compares {@link DelimitedFileReader} with String.split it replaces
+ * and with a straightforward parser of the whole input.
+ */
+public class DelimitedFileReaderTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	public void testFields()
+	{
+		assertRows("a,b,c\n", ",", "[a, b, c]");
+		assertRows("a,,c,,\n,b\n", ",", "[a, , c, , ]", "[, b]");
+		assertRows("a\n\nb", ",", "[a]", "[]", "[b]");
+		assertRows("a|b||c", "|", "[a, b, , c]");
+		assertRows("a||b|c||", "||", "[a, b|c, ]");
+		assertRows("a.b*c", ".", "[a, b*c]");
+		assertRows("a\r\nb\rc\n", "\t", "[a]", "[b]", "[c]");
+		assertRows("", ",");
+	}
+
+	public void testQuotedFields()
+	{
+		assertRows("\"a,b\",c\n", ",", "[a,b, c]");
+		assertRows("\"a \"\"b\"\"\",\"\"\n", ",", "[a \"b\", ]");
+		assertRows("\"line1\nline2\r\n\",x\n", ",", "[line1\nline2\r\n, x]");
+		assertRows("\"a\"b,c\"d\"\n", ",", "[ab, c\"d\"]");
+		assertRows("\"unclosed,\nfield", ",", "[unclosed,\nfield]");
+		assertRows("\"a\"", ",", "[a]");
+
+		// quotes are plain chars unless quoting is turned on
+		DelimitedFileReader reader = new DelimitedFileReader(new StringReader("\"a,b\",c"), ",");
+		Assert.assertEquals("[\"a, b\", c]", Arrays.toString(reader.next()));
+	}
+
+	public void testCharset() throws IOException
+	{
+		byte[] bytes = "caf\u00e9;na\u00efve\n".getBytes(StandardCharsets.UTF_8);
+		DelimitedFileReader reader = new DelimitedFileReader(new ByteArrayInputStream(bytes), ";",
+				StandardCharsets.UTF_8);
+		Assert.assertEquals("[caf\u00e9, na\u00efve]", Arrays.toString(reader.next()));
+		Assert.assertFalse(reader.hasNext());
+		reader.close();
+	}
+
+	public void testReuse()
+	{
+		DelimitedFileReader reader = new DelimitedFileReader(new StringReader("a,b\nc,d\ne\n"), ",");
+		String[] row = reader.next(null);
+		Assert.assertSame(row, reader.next(row));
+		Assert.assertEquals("[c, d]", Arrays.toString(row));
+		String[] last = reader.next(row);
+		Assert.assertNotSame(row, last);
+		Assert.assertEquals("[e]", Arrays.toString(last));
+	}
+
+	/**
+	 * The examples have no trailing empty fields and no quotes,
+	 * so they are read as String.split reads them.
+	 */
+	public void testExamples() throws IOException
+	{
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			File file = new File(RESOURCES+name+".csv");
+			BufferedReader lines = new BufferedReader(new FileReader(file));
+			DelimitedFileReader reader = new DelimitedFileReader(file, "\t");
+			for (String line; (line = lines.readLine()) != null;)
+			{
+				Assert.assertArrayEquals(line.split("\t"), reader.next());
+			}
+			Assert.assertFalse(reader.hasNext());
+			lines.close();
+		}
+	}
+
+	/**
+	 * Random input read in small chunks, so fields, delimiters, quotes
+	 * and line ends are split by the buffer ends.
+	 */
+	public void testRandomInput()
+	{
+		Random random = new Random(20090120);
+		String[] delimiters = {",", "\t", "||", "<->"};
+		String[] fragments = {"a", "bc", "|", "||", "<", "<-", "-", ">", ",", "\t", "\"", "\"\"",
+				"\n", "\r", "\r\n", " ", "\u00e9"};
+		for (int i = 0; i < 5000; i++)
+		{
+			String delimiter = delimiters[random.nextInt(delimiters.length)];
+			StringBuilder sb = new StringBuilder();
+			for (int n = random.nextInt(30); n > 0; n--)
+			{
+				sb.append(fragments[random.nextInt(fragments.length)]);
+			}
+			String text = sb.toString();
+			List<String> expected = parse(text, delimiter);
+			List<String> actual = rows(quoting(new DelimitedFileReader(new ChunkReader(text, random), delimiter)));
+			Assert.assertEquals(text, expected, actual);
+		}
+	}
+
+	private static void assertRows(String text, String delimiter, String... rows)
+	{
+		Assert.assertEquals(Arrays.asList(rows), rows(quoting(new DelimitedFileReader(new StringReader(text), delimiter))));
+		Assert.assertEquals(Arrays.asList(rows), parse(text, delimiter));
+	}
+
+	private static DelimitedFileReader quoting(DelimitedFileReader reader)
+	{
+		reader.setQuoting(true);
+		return reader;
+	}
+
+	private static List<String> rows(DelimitedFileReader reader)
+	{
+		List<String> rows = new ArrayList<String>();
+		while (reader.hasNext())
+		{
+			rows.add(Arrays.toString(reader.next()));
+		}
+		return rows;
+	}
+
+	/**
+	 * Reference parser of the whole input
+	 */
+	private static List<String> parse(String text, String delimiter)
+	{
+		List<String> rows = new ArrayList<String>();
+		int i = 0;
+		int n = text.length();
+		while (i < n)
+		{
+			List<String> fields = new ArrayList<String>();
+			boolean lineEnd = false;
+			while (!lineEnd)
+			{
+				StringBuilder field = new StringBuilder();
+				if (i < n && text.charAt(i) == '"')
+				{
+					for (i++; i < n; i++)
+					{
+						if (text.charAt(i) == '"')
+						{
+							if (i+1 < n && text.charAt(i+1) == '"')
+							{
+								field.append('"');
+								i++;
+								continue;
+							}
+							i++;
+							break;
+						}
+						field.append(text.charAt(i));
+					}
+				}
+				while (true)
+				{
+					if (i == n)
+					{
+						lineEnd = true;
+						break;
+					}
+					if (text.startsWith(delimiter, i))
+					{
+						i += delimiter.length();
+						break;
+					}
+					char ch = text.charAt(i);
+					if (ch == '\n' || ch == '\r')
+					{
+						i += ch == '\r' && i+1 < n && text.charAt(i+1) == '\n' ? 2 : 1;
+						lineEnd = true;
+						break;
+					}
+					field.append(ch);
+					i++;
+				}
+				fields.add(field.toString());
+			}
+			rows.add(fields.toString());
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the text in chunks of 1 to 4 chars.
+	 */
+	private static class ChunkReader extends Reader
+	{
+		private final String text;
+		private final Random random;
+		private int pos = 0;
+
+		private ChunkReader(String text, Random random)
+		{
+			this.text = text;
+			this.random = random;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len)
+		{
+			if (pos == text.length())
+			{
+				return -1;
+			}
+			int n = Math.min(Math.min(len, 1+random.nextInt(4)), text.length()-pos);
+			text.getChars(pos, pos+n, cbuf, off);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+
+/**
+ * Tests relocation of formula text.
+ */
+public class FormulaUtilTest extends TestCase
+{
+	public void testRelativeReferences()
+	{
+		Assert.assertEquals("B2+C3", FormulaUtil.offsetRelativeReferences("A1+B2", 1, 1));
+		Assert.assertEquals("SUM(B2:C4)", FormulaUtil.offsetRelativeReferences("SUM(A1:B3)", 1, 1));
+		Assert.assertEquals("A70001", FormulaUtil.offsetRelativeReferences("A1", 70000, 0));
+		Assert.assertEquals("AA1", FormulaUtil.offsetRelativeReferences("Z1", 0, 1));
+	}
+
+	public void testAbsoluteReferences()
+	{
+		Assert.assertEquals("$A$1+B$1+$A2", FormulaUtil.offsetRelativeReferences("$A$1+A$1+$A1", 1, 1));
+	}
+
+	public void testNotReferences()
+	{
+		Assert.assertEquals("\"A1\"&B2", FormulaUtil.offsetRelativeReferences("\"A1\"&A1", 1, 1));
+		Assert.assertEquals("LOG10(B2)-1", FormulaUtil.offsetRelativeReferences("LOG10(A1)-1", 1, 1));
+		Assert.assertEquals("MyName+B2", FormulaUtil.offsetRelativeReferences("MyName+A1", 1, 1));
+	}
+
+	public void testOtherSheets()
+	{
+		Assert.assertEquals("'My Sheet'!A1+Sheet2!B2:C3+D4",
+				FormulaUtil.offsetRelativeReferences("'My Sheet'!A1+Sheet2!B2:C3+C3", 1, 1));
+		Assert.assertEquals("'It''s'!A1+B2", FormulaUtil.offsetRelativeReferences("'It''s'!A1+A1", 1, 1));
+	}
+
+	public void testOutOfSheet()
+	{
+		Assert.assertEquals("#REF!+B1", FormulaUtil.offsetRelativeReferences("A1+B2", -1, 0));
+		Assert.assertEquals("SUM(#REF!)", FormulaUtil.offsetRelativeReferences("SUM(A1:B3)", -1, 0));
+		Assert.assertEquals("SUM(#REF!)", FormulaUtil.offsetRelativeReferences("SUM(A2:B1048576)", 1, 0));
+		Assert.assertEquals("#REF!", FormulaUtil.offsetRelativeReferences("XFD1", 0, 1));
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.templateit.TemplateProcessor;
+import org.templateit.TestData;
+
+/**
+ * Compares {@link MappedDelimitedReader} with {@link DelimitedFileReader}.
+ */
+public class MappedDelimitedReaderTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	/** 1, 2, 3 and 4 byte chars in UTF-8 */
+	private static final String TEXT = "a,caf\u00e9\n\u20ac 1,\"x\r\ny\",\ud834\udd1e\r\n,\u00e9\u00e9\u00e9\n\u20ac";
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception
+	{
+		file = File.createTempFile("data", ".csv");
+	}
+
+	@Override
+	protected void tearDown() throws Exception
+	{
+		file.delete();
+	}
+
+	public void testExamples() throws IOException
+	{
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			File data = new File(RESOURCES+name+".csv");
+			Assert.assertEquals(rows(new DelimitedFileReader(data, "\t")),
+					rows(new MappedDelimitedReader(data, "\t")));
+		}
+	}
+
+	/**
+	 * Chars are split by the ends of the mapped windows.
+	 */
+	public void testWindows() throws IOException
+	{
+		Files.write(file.toPath(), TEXT.getBytes(StandardCharsets.UTF_8));
+		List<String> expected = rows(quoting(new DelimitedFileReader(new StringReader(TEXT), ",")));
+		for (int windowSize = 1; windowSize < 10; windowSize++)
+		{
+			MappedFileReader reader = new MappedFileReader(file, StandardCharsets.UTF_8, windowSize);
+			Assert.assertEquals(expected, rows(quoting(new DelimitedFileReader(reader, ","))));
+		}
+		Assert.assertEquals(expected, rows(quoting(new MappedDelimitedReader(file, ",", StandardCharsets.UTF_8))));
+	}
+
+	/**
+	 * A surrogate pair is returned in two reads of a single char.
+	 */
+	public void testSingleChars() throws IOException
+	{
+		Files.write(file.toPath(), TEXT.getBytes(StandardCharsets.UTF_8));
+		MappedFileReader reader = new MappedFileReader(file, StandardCharsets.UTF_8, 3);
+		StringBuilder sb = new StringBuilder();
+		char[] buf = new char[1];
+		for (int n; (n = reader.read(buf, 0, 1)) > 0;)
+		{
+			Assert.assertEquals(1, n);
+			sb.append(buf[0]);
+		}
+		reader.close();
+		Assert.assertEquals(TEXT, sb.toString());
+	}
+
+	public void testMalformedInput() throws IOException
+	{
+		Files.write(file.toPath(), new byte[] {'a', (byte)0xc3, ',', 'b', (byte)0xe2, (byte)0x82});
+		Assert.assertEquals(Arrays.asList("[a\ufffd, b\ufffd]"),
+				rows(new MappedDelimitedReader(file, ",", StandardCharsets.UTF_8)));
+	}
+
+	public void testEmptyFile() throws IOException
+	{
+		Assert.assertEquals(new ArrayList<String>(), rows(new MappedDelimitedReader(file, ",")));
+	}
+
+	public void testProcess() throws IOException
+	{
+		File data = new File(RESOURCES+"SalesReceipt.csv");
+		Charset charset = Charset.defaultCharset();
+		Assert.assertArrayEquals(render(new DelimitedFileReader(data, "\t", charset)),
+				render(new MappedDelimitedReader(data, "\t", charset)));
+	}
+
+	private static byte[] render(Iterator<String[]> rows) throws IOException
+	{
+		return TestData.process(new TemplateProcessor(new File(RESOURCES+"SalesReceiptTemplate.xls")), rows);
+	}
+
+	private static DelimitedFileReader quoting(DelimitedFileReader reader)
+	{
+		reader.setQuoting(true);
+		return reader;
+	}
+
+	private static List<String> rows(DelimitedFileReader reader) throws IOException
+	{
+		List<String> rows = new ArrayList<String>();
+		while (reader.hasNext())
+		{
+			rows.add(Arrays.toString(reader.next()));
+		}
+		reader.close();
+		return rows;
+	}
+}
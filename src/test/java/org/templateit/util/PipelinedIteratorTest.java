@@ -0,0 +1,221 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.templateit.TemplateProcessor;
+import org.templateit.TestData;
+
+public class PipelinedIteratorTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	public void testElements()
+	{
+		List<String> elements = Arrays.asList("a", null, "b", "c");
+		PipelinedIterator<String> it = new PipelinedIterator<String>(elements.iterator(), 1);
+		List<String> read = new ArrayList<String>();
+		while (it.hasNext())
+		{
+			read.add(it.next());
+		}
+		Assert.assertEquals(elements, read);
+		Assert.assertFalse(it.hasNext());
+		try
+		{
+			it.next();
+			Assert.fail();
+		}
+		catch (NoSuchElementException e)
+		{
+		}
+	}
+
+	/**
+	 * The reader waits while the queue is full.
+	 */
+	public void testBackpressure() throws InterruptedException
+	{
+		Source source = new Source(Integer.MAX_VALUE, null);
+		PipelinedIterator<Integer> it = new PipelinedIterator<Integer>(source, 3);
+		Assert.assertEquals(Integer.valueOf(0), it.next());
+		Thread.sleep(200);
+		// 3 in the queue and 1 waiting to be put
+		Assert.assertEquals(5, source.count);
+		it.close();
+		Assert.assertFalse(it.hasNext());
+		assertReaderStops();
+	}
+
+	/**
+	 * The source is left by the reader when close returns, even if it ignores the interrupt.
+	 */
+	public void testCloseWaitsForReader() throws InterruptedException
+	{
+		SlowSource source = new SlowSource();
+		PipelinedIterator<Integer> it = new PipelinedIterator<Integer>(source, 1);
+		Assert.assertEquals(Integer.valueOf(0), it.next());
+		it.close();
+		Assert.assertFalse(source.inside);
+		int count = source.count;
+		Thread.sleep(300);
+		Assert.assertEquals(count, source.count);
+		assertReaderStops();
+	}
+
+	public void testFailure() throws InterruptedException
+	{
+		UncheckedIOException failure = new UncheckedIOException(new IOException("disk"));
+		PipelinedIterator<Integer> it = new PipelinedIterator<Integer>(new Source(3, failure), 10);
+		Assert.assertEquals(Integer.valueOf(0), it.next());
+		Assert.assertEquals(Integer.valueOf(1), it.next());
+		Assert.assertEquals(Integer.valueOf(2), it.next());
+		try
+		{
+			it.hasNext();
+			Assert.fail();
+		}
+		catch (UncheckedIOException e)
+		{
+			Assert.assertSame(failure, e);
+		}
+		Assert.assertFalse(it.hasNext());
+		assertReaderStops();
+	}
+
+	/**
+	 * The pipelined processor renders the same workbook, the reader stops when the processing fails.
+	 */
+	public void testProcess() throws IOException, InterruptedException
+	{
+		for (String name : new String[] {"PriceList", "SalesReceipt", "recon"})
+		{
+			TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+name+"Template.xls"));
+			byte[] expected = TestData.process(tp, TestData.read(name));
+			tp.setPipelineDepth(2);
+			Assert.assertArrayEquals(name, expected, TestData.process(tp, TestData.read(name)));
+		}
+
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		tp.setPipelineDepth(2);
+		List<String[]> rows = new ArrayList<String[]>();
+		for (int i = 0; i < 1000; i++)
+		{
+			rows.add(new String[] {"item"});
+		}
+		try
+		{
+			// only #sheet is allowed outside of a sheet
+			tp.process(rows.iterator(), new ByteArrayOutputStream());
+			Assert.fail();
+		}
+		catch (RuntimeException e)
+		{
+		}
+		assertReaderStops();
+	}
+
+	private static void assertReaderStops() throws InterruptedException
+	{
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+		{
+			if( thread.getName().equals("TemplateIt reader") )
+			{
+				thread.join(5000);
+				Assert.assertFalse(thread.isAlive());
+			}
+		}
+	}
+
+	/**
+	 * Counts the elements read, fails after the given number of elements.
+	 */
+	private static class Source implements Iterator<Integer>
+	{
+		private final int size;
+		private final RuntimeException failure;
+		private volatile int count = 0;
+
+		private Source(int size, RuntimeException failure)
+		{
+			this.size = size;
+			this.failure = failure;
+		}
+
+		public boolean hasNext()
+		{
+			if( count == size && failure != null )
+			{
+				throw failure;
+			}
+			return count < size;
+		}
+
+		public Integer next()
+		{
+			return count++;
+		}
+
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Takes 100 ms for every element whatever interrupts come.
+	 */
+	private static class SlowSource implements Iterator<Integer>
+	{
+		private volatile boolean inside = false;
+		private volatile int count = 0;
+
+		public boolean hasNext()
+		{
+			inside = true;
+			long end = System.currentTimeMillis() + 100;
+			while( System.currentTimeMillis() < end )
+			{
+				Thread.yield();
+			}
+			inside = false;
+			return true;
+		}
+
+		public Integer next()
+		{
+			return count++;
+		}
+
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Assert;
+import org.templateit.TemplateProcessor;
+
+/**
+ * Reads a stub result set, a table of rows behind the JDBC interfaces.
+ */
+public class ResultSetReaderTest extends TestCase
+{
+	private static final String RESOURCES = "src/test/resources/";
+
+	private static final String[] LABELS = {"ID", "NAME", "PRICE", "UPDATED"};
+
+	/**
+	 * PriceList rows from a result set render exactly as the rows of the csv file.
+	 */
+	public void testPriceList() throws Exception
+	{
+		StubResultSet table = new StubResultSet(LABELS,
+				new Object[] {1, "Item 1", new BigDecimal("10"), Date.valueOf("2009-01-12")},
+				new Object[] {2, "Item 2", 15, Date.valueOf("2009-01-13")},
+				new Object[] {3, "Item 3", 20L, Date.valueOf("2009-01-14")});
+		ResultSetReader rows = new ResultSetReader(table.proxy(), "item", "NAME", "PRICE", "UPDATED");
+		rows.setSheet("PriceList", "PriceList as of 20-Jan-2009");
+		rows.addHeaderRow("header");
+		rows.setFetchSize(500);
+		Assert.assertEquals(500, table.fetchSize);
+
+		TemplateProcessor tp = new TemplateProcessor(new File(RESOURCES+"PriceListTemplate.xls"));
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		tp.process(new DelimitedFileReader(new File(RESOURCES+"PriceList.csv"), "\t"), expected);
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		tp.process(rows, actual);
+		Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+		Assert.assertTrue(table.closed);
+	}
+
+	public void testAllColumns() throws Exception
+	{
+		StubResultSet table = new StubResultSet(new String[] {"A", "B"},
+				new Object[] {1, null}, new Object[] {"x", "y"});
+		Assert.assertEquals(Arrays.asList("[t, 1, null]", "[t, x, y]"),
+				rows(new ResultSetReader(table.proxy(), "t")));
+		Assert.assertTrue(table.closed);
+
+		table = new StubResultSet(new String[] {"A", "B"}, new Object[] {1, 2});
+		ResultSetReader reader = new ResultSetReader(table.proxy(), "t", "B", "A");
+		reader.setSheet("Sheet1", null);
+		Assert.assertEquals(Arrays.asList("[#sheet, Sheet1, null]", "[t, 2, 1]", "[#end]"), rows(reader));
+		try
+		{
+			reader.addHeaderRow("header");
+			Assert.fail();
+		}
+		catch (IllegalStateException e)
+		{
+		}
+	}
+
+	public void testFailures() throws Exception
+	{
+		StubResultSet table = new StubResultSet(LABELS);
+		try
+		{
+			new ResultSetReader(table.proxy(), "item", "MISSING");
+			Assert.fail();
+		}
+		catch (SQLException e)
+		{
+		}
+
+		table.failure = new SQLException("connection lost");
+		ResultSetReader reader = new ResultSetReader(table.proxy(), "item");
+		try
+		{
+			reader.hasNext();
+			Assert.fail();
+		}
+		catch (RuntimeException e)
+		{
+			Assert.assertSame(table.failure, e.getCause());
+		}
+		reader.close();
+		Assert.assertTrue(table.closed);
+		Assert.assertFalse(reader.hasNext());
+	}
+
+	private static List<String> rows(ResultSetReader reader)
+	{
+		List<String> rows = new ArrayList<String>();
+		while (reader.hasNext())
+		{
+			rows.add(Arrays.toString(reader.next()));
+		}
+		return rows;
+	}
+
+	/**
+	 * Forward only result set of a table of rows.
+	 */
+	private static class StubResultSet implements InvocationHandler
+	{
+		private final String[] labels;
+		private final Object[][] rows;
+		private int row = -1;
+		private int fetchSize = 0;
+		private boolean closed = false;
+		private SQLException failure = null;
+
+		private StubResultSet(String[] labels, Object[]... rows)
+		{
+			this.labels = labels;
+			this.rows = rows;
+		}
+
+		private ResultSet proxy()
+		{
+			return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] {ResultSet.class}, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+		{
+			String name = method.getName();
+			if( closed && !name.equals("close") )
+			{
+				throw new SQLException("Result set is closed");
+			}
+			if( name.equals("next") )
+			{
+				if( failure != null )
+				{
+					throw failure;
+				}
+				return ++row < rows.length;
+			}
+			if( name.equals("getObject") && args.length == 1 && args[0] instanceof Integer )
+			{
+				return rows[row][(Integer) args[0] - 1];
+			}
+			if( name.equals("findColumn") )
+			{
+				int i = Arrays.asList(labels).indexOf(args[0]);
+				if( i < 0 )
+				{
+					throw new SQLException("Column " + args[0] + " not found");
+				}
+				return i + 1;
+			}
+			if( name.equals("getMetaData") )
+			{
+				return Proxy.newProxyInstance(getClass().getClassLoader(),
+						new Class<?>[] {ResultSetMetaData.class}, new InvocationHandler()
+				{
+					public Object invoke(Object proxy, Method method, Object[] args)
+					{
+						if( method.getName().equals("getColumnCount") )
+						{
+							return labels.length;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+			}
+			if( name.equals("setFetchSize") )
+			{
+				fetchSize = (Integer) args[0];
+				return null;
+			}
+			if( name.equals("close") )
+			{
+				closed = true;
+				return null;
+			}
+			throw new UnsupportedOperationException(name);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright(C) 2008-2009 Dmitriy Kumshayev. <dq@mail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.templateit.util;
+
+import java.text.DateFormatSymbols;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFDateUtil;
+import org.junit.Assert;
+
+/**
+ * Compares {@link ValueParser} with Double.parseDouble and SimpleDateFormat
+ * it replaces.
+ */
+public class ValueParserTest extends TestCase
+{
+	private static final String[] PATTERNS = {
+		"MM/dd/yyyy HH:mm:ss",
+		"MM/dd/yyyy HH:mm",
+		"MM/dd/yyyy",
+		"dd-MMM-yyyy HH:mm:ss",
+		"dd-MMM-yyyy HH:mm",
+		"dd-MMM-yyyy"
+	};
+
+	private static final String[] NUMBERS = {
+		"0", "12", " 12 ", "-0.5", "+7", ".5", "5.", "1e3", "1.5E-3", "12d", "3f",
+		"0x1p3", "0X1.8P1", "1e999", "NaN", "-Infinity", "", " ", "abc", "1.2.3",
+		"1e", "e1", ".", "-", "0x1", "1/12/2009", "12-Jan-2009", "1,000"
+	};
+
+	private static final String[] DATES = {
+		"1/12/2009", "01/12/2009 10:30", "1/12/2009 10:30:15", "12-Jan-2009",
+		"12-JANUARY-2009 7:05", "12-january-2009 7:05:59", "13/45/2009", "0/0/2009",
+		"12-jan-2009 25:61:61", "1/12/2009 10:30:", "1/12/2009xyz", "1/12/2009  10:30",
+		" 1/12/2009", "1/-12/2009", "12- Jan-2009", "12-Janx-2009", "1/1/1900",
+		"2/28/1900", "2/29/1900", "3/1/1900", "12/31/1899", "1/1/1904", "12/31/1903 23:59:59",
+		"1/12/09", "1/12/0", "1/12/-5", "1/12/99999", "1/12/2009 1E1:30", "1E1/12/2009",
+		"NaN/12/2009", "1/12/", "1/12", "1/", "1-", "-Jan-2009", "12:30", "abc"
+	};
+
+	public void testParseNumber()
+	{
+		for (String value : NUMBERS)
+		{
+			double expected = Double.NaN;
+			try
+			{
+				expected = Double.parseDouble(value);
+			}
+			catch (NumberFormatException e)
+			{
+			}
+			if( Double.isInfinite(expected) )
+			{
+				expected = Double.NaN;
+			}
+			Assert.assertEquals(value, Double.valueOf(expected), Double.valueOf(ValueParser.parseNumber(value)));
+		}
+	}
+
+	public void testParseDate()
+	{
+		for (String value : DATES)
+		{
+			for (boolean use1904windowing : new boolean[]{false, true})
+			{
+				Assert.assertEquals(value, Double.valueOf(parseDate(value, use1904windowing)),
+						Double.valueOf(ValueParser.parseDate(value, use1904windowing)));
+			}
+		}
+	}
+
+	public void testMonthNames()
+	{
+		DateFormatSymbols symbols = DateFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+		for (int m = 0; m < 12; m++)
+		{
+			for (String name : new String[]{symbols.getMonths()[m], symbols.getShortMonths()[m]})
+			{
+				String value = "15-" + name.toUpperCase() + "-2009 12:00";
+				Assert.assertEquals(value, Double.valueOf(parseDate(value, false)),
+						Double.valueOf(ValueParser.parseDate(value, false)));
+			}
+		}
+	}
+
+	public void testParseDateWithFormat()
+	{
+		DateTimeFormatter format = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+		Assert.assertEquals(39825.0, ValueParser.parseDate("12/01/2009", format, false), 0);
+		Assert.assertEquals(38363.0, ValueParser.parseDate("12/01/2009", format, true), 0);
+		Assert.assertTrue(Double.isNaN(ValueParser.parseDate("12/1/2009", format, false)));
+		Assert.assertTrue(Double.isNaN(ValueParser.parseDate("12/01/2009 10:30", format, false)));
+		Assert.assertTrue(Double.isNaN(ValueParser.parseDate("12/13/2009", format, false)));
+
+		format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+		Assert.assertEquals(39825.4375, ValueParser.parseDate("2009-01-12 10:30", format, false), 0);
+		Assert.assertEquals(-1.0, ValueParser.parseDate("1899-01-12 10:30", format, false), 0);
+	}
+
+	public void testParseBoolean()
+	{
+		Assert.assertEquals(Boolean.TRUE, ValueParser.parseBoolean("TRUE"));
+		Assert.assertEquals(Boolean.FALSE, ValueParser.parseBoolean(" false "));
+		Assert.assertNull(ValueParser.parseBoolean("yes"));
+		Assert.assertNull(ValueParser.parseBoolean(""));
+	}
+
+	private static double parseDate(String value, boolean use1904windowing)
+	{
+		for (String pattern : PATTERNS)
+		{
+			try
+			{
+				return HSSFDateUtil.getExcelDate(new SimpleDateFormat(pattern).parse(value), use1904windowing);
+			}
+			catch (ParseException e)
+			{
+			}
+		}
+		return Double.NaN;
+	}
+}